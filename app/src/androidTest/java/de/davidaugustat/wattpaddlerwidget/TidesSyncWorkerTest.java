@@ -0,0 +1,138 @@
+package de.davidaugustat.wattpaddlerwidget;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.work.Configuration;
+import androidx.work.ListenableWorker;
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
+import androidx.work.WorkerFactory;
+import androidx.work.WorkerParameters;
+import androidx.work.testing.SynchronousExecutor;
+import androidx.work.testing.TestDriver;
+import androidx.work.testing.WorkManagerTestInitHelper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.davidaugustat.wattpaddlerwidget.data.Location;
+import de.davidaugustat.wattpaddlerwidget.data.TidesInfoBuilder;
+import de.davidaugustat.wattpaddlerwidget.logic.SharedPreferencesHelper;
+import de.davidaugustat.wattpaddlerwidget.logic.SyncScheduler;
+import de.davidaugustat.wattpaddlerwidget.logic.TidesStore;
+import de.davidaugustat.wattpaddlerwidget.logic.TidesSyncWorker;
+
+@RunWith(AndroidJUnit4.class)
+public class TidesSyncWorkerTest {
+
+    private static final LocalDate START_DATE = LocalDate.of(2022, 8, 1);
+    private static final int[] WIDGET_IDS = {9001, 9002, 9003};
+
+    private Context context;
+    private final AtomicInteger workerRuns = new AtomicInteger();
+    private final AtomicInteger networkCalls = new AtomicInteger();
+    private volatile LocalDate currentDate = START_DATE;
+    private volatile boolean offline = false;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+
+        Configuration configuration = new Configuration.Builder()
+                .setMinimumLoggingLevel(Log.DEBUG)
+                .setExecutor(new SynchronousExecutor())
+                .setWorkerFactory(new FakeWorkerFactory())
+                .build();
+        WorkManagerTestInitHelper.initializeTestWorkManager(context, configuration);
+
+        // Two widgets show the same location:
+        SharedPreferencesHelper.saveLocation(new Location("DE__502P", "Husum"), WIDGET_IDS[0], context);
+        SharedPreferencesHelper.saveLocation(new Location("DE__502P", "Husum"), WIDGET_IDS[1], context);
+        SharedPreferencesHelper.saveLocation(new Location("DE__505P", "Büsum"), WIDGET_IDS[2], context);
+        TidesStore.getInstance(context).collectGarbage(Collections.emptySet(), START_DATE);
+    }
+
+    @After
+    public void tearDown() {
+        SharedPreferencesHelper.deleteLocations(WIDGET_IDS, context);
+        TidesStore.getInstance(context).collectGarbage(Collections.emptySet(), START_DATE);
+    }
+
+    @Test
+    public void testSimulatedWeek() throws Exception {
+        SyncScheduler.schedulePeriodicSync(context);
+        UUID workId = WorkManager.getInstance(context)
+                .getWorkInfosForUniqueWork(SyncScheduler.PERIODIC_WORK_NAME).get().get(0).getId();
+        TestDriver testDriver = WorkManagerTestInitHelper.getTestDriver(context);
+
+        testDriver.setAllConstraintsMet(workId);
+        testDriver.setInitialDelayMet(workId);
+        for (int day = 1; day < 7; day++) {
+            currentDate = START_DATE.plusDays(day);
+            testDriver.setPeriodDelayMet(workId);
+        }
+
+        // One wakeup per day. On the first day, the whole window of both locations is fetched,
+        // afterwards only the day that has moved into the window:
+        int windowDays = Constants.PREFETCH_WINDOW_DAYS;
+        assertEquals(7, workerRuns.get());
+        assertEquals(2 * windowDays + 2 * 6, networkCalls.get());
+    }
+
+    @Test
+    public void testRetriesAfterNetworkError() throws Exception {
+        offline = true;
+        SyncScheduler.requestSync(context);
+        WorkInfo workInfo = WorkManager.getInstance(context)
+                .getWorkInfosForUniqueWork(SyncScheduler.ONE_TIME_WORK_NAME).get().get(0);
+        TestDriver testDriver = WorkManagerTestInitHelper.getTestDriver(context);
+        testDriver.setAllConstraintsMet(workInfo.getId());
+
+        workInfo = WorkManager.getInstance(context).getWorkInfoById(workInfo.getId()).get();
+        assertEquals(WorkInfo.State.ENQUEUED, workInfo.getState());
+        assertEquals(1, workInfo.getRunAttemptCount());
+        // The remaining requests are skipped after the first network error:
+        assertEquals(1, networkCalls.get());
+    }
+
+    private TidesSyncWorker.TidesSource getFakeTidesSource() {
+        return (location, date) -> {
+            networkCalls.incrementAndGet();
+            if (offline) {
+                throw new IOException("offline");
+            }
+            TidesInfoBuilder builder = new TidesInfoBuilder(location, date.toString());
+            builder.addTideTime(date.toString(), "05:01", "H");
+            builder.addTideTime(date.toString(), "11:30", "N");
+            return builder.build();
+        };
+    }
+
+    private class FakeWorkerFactory extends WorkerFactory {
+        @Override
+        public ListenableWorker createWorker(@NonNull Context appContext,
+                                             @NonNull String workerClassName,
+                                             @NonNull WorkerParameters workerParameters) {
+            workerRuns.incrementAndGet();
+            Clock clock = Clock.fixed(currentDate.atTime(20, 0)
+                    .atZone(ZoneId.systemDefault()).toInstant(), ZoneId.systemDefault());
+            return new TidesSyncWorker(appContext, workerParameters, getFakeTidesSource(), clock);
+        }
+    }
+}
@@ -6,7 +6,46 @@ public class Constants {
     public static final String LOCATION_ID_KEY_PREFIX = "location_id_";
     public static final String WIDGET_REFRESH_BUTTON_ACTION = "WIDGET_REFRESH_BUTTON_ACTION";
     public static final String APP_WIDGET_ID_EXTRA = "APP_WIDGET_ID_EXTRA";
+    public static final String APP_WIDGET_IDS_EXTRA = "APP_WIDGET_IDS_EXTRA";
+    public static final String NEW_WIDGET_EXTRA = "NEW_WIDGET_EXTRA";
     public static final int INVALID_APP_WIDGET_ID = -1;
     public static final boolean SHOW_DEBUG = false;
     public static final String WATTPADDLER_APP_PACKAGE_NAME = "com.embarcadero.Wattpaddler";
+    public static final String WIDGET_DAY_CHANGE_ACTION = "WIDGET_DAY_CHANGE_ACTION";
+
+    /**
+     * If true, the tides of the next {@link #PREFETCH_WINDOW_DAYS} days are kept in local storage
+     * for every location, so that the widget can roll over to the next day without network access.
+     * The data is synced in the background and automatic widget updates render from local data
+     * (see FreshnessPolicy).
+     */
+    public static final boolean PREFETCH_ENABLED = true;
+    public static final int PREFETCH_WINDOW_DAYS = 7;
+
+    /**
+     * The daily background sync runs within the hours before this hour of the day.
+     */
+    public static final int SYNC_WINDOW_END_HOUR = 22;
+    public static final long SYNC_BACKOFF_DELAY_MINUTES = 30;
+    public static final int SYNC_MAX_ATTEMPTS = 5;
+
+    /**
+     * Number of days for which the metrics of the update path are kept (see UpdateMetrics).
+     */
+    public static final int METRICS_WINDOW_DAYS = 7;
+
+    /**
+     * If true, widgets that are at least {@link #TIDE_CURVE_MIN_WIDGET_HEIGHT_DP} high show the
+     * curve of the water level below the tide times (see TideCurveRenderer).
+     */
+    public static final boolean SHOW_TIDE_CURVE = true;
+    public static final int TIDE_CURVE_MIN_WIDGET_HEIGHT_DP = 110;
+    public static final int TIDE_CURVE_HEIGHT_DP = 48;
+
+    /**
+     * Maximum size of a single curve bitmap. Bitmaps are sent to the launcher in parcels of at
+     * most 1 MB, which also carry the rest of the RemoteViews.
+     */
+    public static final int TIDE_CURVE_MAX_BITMAP_BYTES = 160 * 1024;
+    public static final int TIDE_CURVE_CACHE_BYTES = 1024 * 1024;
 }
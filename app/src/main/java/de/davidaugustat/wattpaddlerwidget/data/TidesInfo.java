@@ -1,112 +0,0 @@
-package de.davidaugustat.wattpaddlerwidget.data;
-
-import androidx.core.util.Pair;
-
-import java.time.LocalDate;
-import java.time.LocalDateTime;
-
-import de.davidaugustat.wattpaddlerwidget.logic.DateTimeHelper;
-
-/**
- * Stores the information that is displayed on the widget.
- */
-public class TidesInfo {
-    private final String locationId;
-    private final String locationName;
-    private final LocalDate date;
-    private final TideTime highTide1;
-    private final TideTime highTide2;
-    private final TideTime lowTide1;
-    private final TideTime lowTide2;
-    private final LocalDateTime updatedTime;
-
-    public TidesInfo(Location location, String dateString, Pair<TideTime, TideTime> lowTides,
-                     Pair<TideTime, TideTime> highTides) {
-        this(location.getId(), location.getName(), DateTimeHelper.parseDate(dateString),
-                lowTides.first, lowTides.second, highTides.first, highTides.second, LocalDateTime.now());
-    }
-
-    /**
-     * Internal constructor used for creating a TidesInfo object with all fields specified.
-     * This is especially useful for restoring a TidesInfo object from cache.
-     */
-    public TidesInfo(String locationId, String locationName, LocalDate date,
-                     TideTime lowTide1, TideTime lowTide2,
-                     TideTime highTide1, TideTime highTide2,
-                     LocalDateTime updatedTime) {
-        this.locationId = locationId;
-        this.locationName = locationName;
-        this.date = date;
-        this.lowTide1 = lowTide1;
-        this.lowTide2 = lowTide2;
-        this.highTide1 = highTide1;
-        this.highTide2 = highTide2;
-        this.updatedTime = updatedTime;
-    }
-
-    public String getLocationId() {
-        return locationId;
-    }
-
-    public String getLocationName() {
-        return locationName;
-    }
-
-    public LocalDate getDate() {
-        return date;
-    }
-
-    public String getHighTidesFormatted(String formatString){
-        return String.format(formatString,
-                highTide1.getHumanReadableString(),
-                highTide2.getHumanReadableString());
-    }
-
-    public String getLowTidesFormatted(String formatString){
-        return String.format(formatString,
-                lowTide1.getHumanReadableString(),
-                lowTide2.getHumanReadableString());
-    }
-
-    public TideTime getHighTide1() {
-        return highTide1;
-    }
-
-    public TideTime getHighTide2() {
-        return highTide2;
-    }
-
-    public TideTime getLowTide1() {
-        return lowTide1;
-    }
-
-    public TideTime getLowTide2() {
-        return lowTide2;
-    }
-
-    public LocalDateTime getUpdatedTime() {
-        return updatedTime;
-    }
-
-    public String getDateFormatted(){
-        return DateTimeHelper.getDateInGermanFormatting(date);
-    }
-
-    public String getLastUpdatedTimeFormatted(){
-        return DateTimeHelper.getFormattedPreciseDateTime(updatedTime);
-    }
-
-    @Override
-    public String toString() {
-        return "TidesInfo{" +
-                "locationId='" + locationId + '\'' +
-                ", locationName='" + locationName + '\'' +
-                ", date=" + date +
-                ", highTide1='" + highTide1 + '\'' +
-                ", highTide2='" + highTide2 + '\'' +
-                ", lowTide1='" + lowTide1 + '\'' +
-                ", lowTide2='" + lowTide2 + '\'' +
-                ", updatedTime=" + updatedTime +
-                '}';
-    }
-}
@@ -7,6 +7,9 @@ import androidx.lifecycle.AndroidViewModel;
 
 import java.util.List;
 
+import de.davidaugustat.wattpaddlerwidget.logic.LocationSearchIndex;
+import de.davidaugustat.wattpaddlerwidget.logic.NearestLocationIndex;
+
 /**
  * View model which holds all data for the WidgetConfigurationActivity.
  */
@@ -16,6 +19,9 @@ public class WidgetConfigurationViewModel extends AndroidViewModel {
     private Location selectedLocation;
     private int selectedLocationIndex;
     private List<Location> locations;
+    private LocationSearchIndex searchIndex;
+    private NearestLocationIndex nearestIndex;
+    private String searchQuery = "";
 
     public WidgetConfigurationViewModel(@NonNull Application application) {
         super(application);
@@ -42,11 +48,46 @@ public class WidgetConfigurationViewModel extends AndroidViewModel {
         return locations;
     }
 
-    public void setLocations(List<Location> locations) {
+    /**
+     * Replaces the list of locations. If a location is selected, its index is updated to match the
+     * new list. If the selected location is not contained in the new list anymore, the selection
+     * gets cleared.
+     *
+     * @param searchIndex  Index that was built from the new list
+     * @param nearestIndex Spatial index that was built from the new list
+     */
+    public void setLocations(List<Location> locations, LocationSearchIndex searchIndex,
+                             NearestLocationIndex nearestIndex) {
         this.locations = locations;
+        this.searchIndex = searchIndex;
+        this.nearestIndex = nearestIndex;
+        if (selectedLocation != null) {
+            int index = searchIndex.indexOfId(selectedLocation.getId());
+            if (index == -1) {
+                setSelectedLocation(null, 0);
+            } else {
+                setSelectedLocation(locations.get(index), index);
+            }
+        }
     }
 
     public int getSelectedLocationIndex() {
         return selectedLocationIndex;
     }
+
+    public LocationSearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    public NearestLocationIndex getNearestIndex() {
+        return nearestIndex;
+    }
+
+    public String getSearchQuery() {
+        return searchQuery;
+    }
+
+    public void setSearchQuery(String searchQuery) {
+        this.searchQuery = searchQuery;
+    }
 }
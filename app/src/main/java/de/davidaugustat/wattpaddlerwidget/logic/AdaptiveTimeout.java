@@ -0,0 +1,80 @@
+package de.davidaugustat.wattpaddlerwidget.logic;
+
+/**
+ * Timeout for network requests that adapts to the latencies of previous requests.
+ * <p>
+ * The latencies are collected in a rolling window of two {@link LatencyHistogram}s: when the
+ * current histogram is full, it replaces the previous one and a new current histogram is started.
+ * So the window always covers the last {@link #WINDOW_SIZE} to 2 * {@link #WINDOW_SIZE} requests.
+ * The timeout is the 99th percentile of the window times a factor, limited by a floor and a
+ * ceiling. As long as the window contains too few latencies, the default timeout is used.
+ * <p>
+ * Requests that time out should be recorded with the timeout they had, so that the timeout grows
+ * when the network gets slower.
+ * <p>
+ * This class is thread-safe.
+ */
+public class AdaptiveTimeout {
+
+    static final int WINDOW_SIZE = 50;
+    static final int MIN_SAMPLES = 10;
+    private static final double PERCENTILE = 99;
+
+    private final long defaultMillis;
+    private final long floorMillis;
+    private final long ceilingMillis;
+    private final double factor;
+
+    private LatencyHistogram previous = new LatencyHistogram();
+    private LatencyHistogram current = new LatencyHistogram();
+    private int currentCount = 0;
+
+    /**
+     * @param defaultMillis Timeout until enough latencies have been recorded
+     * @param floorMillis   Minimum timeout
+     * @param ceilingMillis Maximum timeout
+     * @param factor        Factor by which the 99th percentile is multiplied
+     */
+    public AdaptiveTimeout(long defaultMillis, long floorMillis, long ceilingMillis, double factor) {
+        this.defaultMillis = defaultMillis;
+        this.floorMillis = floorMillis;
+        this.ceilingMillis = ceilingMillis;
+        this.factor = factor;
+    }
+
+    public synchronized void record(long latencyMillis) {
+        current.record(latencyMillis);
+        currentCount++;
+        if (currentCount >= WINDOW_SIZE) {
+            previous = current;
+            current = new LatencyHistogram();
+            currentCount = 0;
+        }
+    }
+
+    public synchronized long getTimeoutMillis() {
+        LatencyHistogram window = new LatencyHistogram();
+        window.add(previous);
+        window.add(current);
+        if (window.getCount() < MIN_SAMPLES) {
+            return defaultMillis;
+        }
+        long percentileMillis = window.getPercentileUpperBoundMillis(PERCENTILE);
+        if (percentileMillis == Long.MAX_VALUE) {
+            return ceilingMillis;
+        }
+        return Math.max(floorMillis, Math.min(ceilingMillis, (long) (percentileMillis * factor)));
+    }
+
+    public long getFloorMillis() {
+        return floorMillis;
+    }
+
+    @Override
+    public synchronized String toString() {
+        LatencyHistogram window = new LatencyHistogram();
+        window.add(previous);
+        window.add(current);
+        return "timeout=" + getTimeoutMillis() + "ms (" + window + ")";
+    }
+}
@@ -3,30 +3,35 @@ package de.davidaugustat.wattpaddlerwidget.logic;
 import android.content.Context;
 import android.os.Handler;
 import android.os.Looper;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
 import androidx.core.util.Consumer;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 import de.davidaugustat.wattpaddlerwidget.BuildConfig;
 import de.davidaugustat.wattpaddlerwidget.data.Location;
 import de.davidaugustat.wattpaddlerwidget.R;
 import de.davidaugustat.wattpaddlerwidget.data.TidesInfo;
-import de.davidaugustat.wattpaddlerwidget.data.TidesInfoBuilder;
+import okhttp3.Cache;
+import okhttp3.CacheControl;
 import okhttp3.Call;
 import okhttp3.Callback;
+import okhttp3.Interceptor;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
+import okio.BufferedSource;
 
 /**
  * This class fetches data from the HTTP API and converts it to object oriented datasets.
@@ -34,16 +39,102 @@ import okhttp3.ResponseBody;
 public class DataFetcher {
 
     private final Context context;
-    private static final int REQUEST_TIMEOUT_MILLIS = 5000;
-    private static final OkHttpClient client = new OkHttpClient.Builder()
-            .connectTimeout(REQUEST_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
-            .readTimeout(REQUEST_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
-            .build();
+
+    /**
+     * Connect and read timeout until enough latencies have been recorded. Afterwards the
+     * timeouts are derived from the latencies of previous requests (see {@link AdaptiveTimeout}).
+     */
+    private static final long DEFAULT_TIMEOUT_MILLIS = 5000;
+    private static final long MIN_TIMEOUT_MILLIS = 2000;
+    private static final long MAX_TIMEOUT_MILLIS = 10000;
+    private static final double TIMEOUT_PERCENTILE_FACTOR = 2;
+
+    /**
+     * Deadline of a request including all of its retries.
+     */
+    private static final long CALL_DEADLINE_MILLIS = 15000;
+
+    /**
+     * At most 10 % of the requests are retried, with bursts of up to 5 retries.
+     */
+    private static final double RETRY_RATIO = 0.1;
+    private static final int RETRY_BURST = 5;
+
+    private static final String HTTP_CACHE_DIRECTORY = "http_cache";
+    private static final long HTTP_CACHE_SIZE_BYTES = 2 * 1024 * 1024;
+
+    /**
+     * Client-side max-age for tides responses that come without caching headers. The tide
+     * predictions of a given day never change.
+     */
+    private static final long TIDES_DEFAULT_MAX_AGE_SECONDS = TimeUnit.DAYS.toSeconds(7);
+
+    /**
+     * Client-side max-age for the locations list if the server does not send caching headers.
+     */
+    private static final long LOCATIONS_DEFAULT_MAX_AGE_SECONDS = TimeUnit.DAYS.toSeconds(1);
+
+    private static OkHttpClient client;
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static final Executor mainThreadExecutor = mainHandler::post;
+
+    /**
+     * Tides requests that are currently in flight, keyed by location ID and date. Widgets that
+     * show the same location share a single request this way.
+     */
+    private static final RequestCoalescer<TidesInfo> pendingTidesRequests = new RequestCoalescer<>();
 
     public DataFetcher(Context context) {
         this.context = context;
     }
 
+    /**
+     * Returns the HTTP client that is shared by all DataFetcher instances. It gets created at the
+     * first call.
+     * <p>
+     * The client uses an on-disk HTTP cache. Responses that carry an ETag or Last-Modified header
+     * are revalidated with conditional requests once they are stale.
+     * <p>
+     * Timeouts adapt to the latencies of previous requests, and failed requests are retried within
+     * a budget and a total deadline (see {@link RetryInterceptor}).
+     */
+    private static synchronized OkHttpClient getClient(Context context) {
+        if (client == null) {
+            File cacheDirectory = new File(context.getApplicationContext().getCacheDir(), HTTP_CACHE_DIRECTORY);
+            UpdateMetrics metrics = UpdateMetrics.getInstance(context);
+            AdaptiveTimeout timeout = new AdaptiveTimeout(DEFAULT_TIMEOUT_MILLIS,
+                    MIN_TIMEOUT_MILLIS, MAX_TIMEOUT_MILLIS, TIMEOUT_PERCENTILE_FACTOR);
+            client = new OkHttpClient.Builder()
+                    .callTimeout(CALL_DEADLINE_MILLIS, TimeUnit.MILLISECONDS)
+                    .addInterceptor(new RetryInterceptor(timeout,
+                            new RetryBudget(RETRY_RATIO, RETRY_BURST), metrics))
+                    .cache(new Cache(cacheDirectory, HTTP_CACHE_SIZE_BYTES))
+                    .addNetworkInterceptor(DataFetcher::addDefaultCacheControl)
+                    .eventListenerFactory(MetricsEventListener.factory(metrics))
+                    .build();
+        }
+        return client;
+    }
+
+    /**
+     * Network interceptor that adds a client-side max-age to responses that do not carry any
+     * caching headers. Without it, the HTTP cache would not store these responses at all.
+     */
+    private static Response addDefaultCacheControl(Interceptor.Chain chain) throws IOException {
+        Response response = chain.proceed(chain.request());
+        if (response.header("Cache-Control") != null || response.header("Expires") != null) {
+            return response;
+        }
+        boolean isTidesRequest = chain.request().url().toString()
+                .startsWith(BuildConfig.TIDES_WIDGET_API_URL);
+        long maxAgeSeconds = isTidesRequest
+                ? TIDES_DEFAULT_MAX_AGE_SECONDS
+                : LOCATIONS_DEFAULT_MAX_AGE_SECONDS;
+        return response.newBuilder()
+                .header("Cache-Control", "max-age=" + maxAgeSeconds)
+                .build();
+    }
+
     /**
      * Fetches a list of all available locations and provides them as a list of Location objects.
      *
@@ -53,10 +144,8 @@ public class DataFetcher {
     public void fetchLocations(Consumer<List<Location>> dataFetchedAction,
                                Consumer<String> errorAction) {
         String url = BuildConfig.LOCATIONS_API_URL + context.getString(R.string.locations_api_path);
-        getTextFromUrl(url, response -> {
-            List<Location> locations = locationsCsvToList(response);
-            dataFetchedAction.accept(locations);
-        }, errorAction);
+        fetchFromUrl(url, false, LocationsCsvParser::parse, mainThreadExecutor,
+                dataFetchedAction, errorAction);
     }
 
     /**
@@ -65,24 +154,53 @@ public class DataFetcher {
      * <p>
      * This method converts the received data into a TidesInfo object which is then provided to
      * a callback.
+     * <p>
+     * If a request for the same location and date is already in flight, no new request is made.
+     * Instead, the callbacks are attached to the pending request and receive the same TidesInfo
+     * object.
      *
      * @param location Location of which the tides data should be fetched.
      * @param date Day for which the data should be fetched. Format: yyyy-mm-dd
-     * @param dataFetchedAction Gets called as soon as data is available
-     * @param errorAction Gets called in case of a network error.
+     * @param dataFetchedAction Gets called on the main thread as soon as data is available
+     * @param errorAction Gets called on the main thread in case of a network error.
      */
     public void fetchTidesDataSingleDay(Location location, String date, Consumer<TidesInfo> dataFetchedAction,
                                         Consumer<String> errorAction) {
-        String url = BuildConfig.TIDES_WIDGET_API_URL
-                + String.format(context.getString(R.string.tides_widget_api_path), location.getId(), date);
-        getTextFromUrl(url, response -> {
-            try {
-                TidesInfo tidesInfo = tidesInfoStringToObject(location, date, response);
-                dataFetchedAction.accept(tidesInfo);
-            } catch (IllegalArgumentException e){
-                errorAction.accept("Error: Malformed response from API");
-            }
-        }, errorAction);
+        fetchTidesDataSingleDay(location, date, false, mainThreadExecutor, dataFetchedAction,
+                errorAction);
+    }
+
+    /**
+     * Fetches the tides data for a single day like
+     * {@link #fetchTidesDataSingleDay(Location, String, Consumer, Consumer)}, but invokes the
+     * callbacks on the given executor instead of the main thread.
+     *
+     * @param forceNetwork     true iff the response must come from the server and not from the
+     *                         HTTP cache, e.g. for a manual refresh. Cached tides responses are
+     *                         otherwise served for {@link #TIDES_DEFAULT_MAX_AGE_SECONDS}.
+     * @param callbackExecutor Executor on which the callbacks are invoked
+     */
+    public void fetchTidesDataSingleDay(Location location, String date, boolean forceNetwork,
+                                        Executor callbackExecutor,
+                                        Consumer<TidesInfo> dataFetchedAction,
+                                        Consumer<String> errorAction) {
+        // A forced request must not attach to a request that may be served from the cache:
+        String requestKey = location.getId() + "|" + date + (forceNetwork ? "|network" : "");
+        if (!pendingTidesRequests.register(requestKey,
+                tidesInfo -> callbackExecutor.execute(() -> dataFetchedAction.accept(tidesInfo)),
+                errorMessage -> callbackExecutor.execute(() -> errorAction.accept(errorMessage)))) {
+            Log.d("DataFetcher", "Attached to pending tides request " + requestKey);
+            return;
+        }
+
+        String url = getTidesUrl(location, date);
+        // The coalescer is completed directly on the OkHttp thread. Every registered callback is
+        // dispatched to its own executor.
+        fetchFromUrl(url, forceNetwork,
+                (source, charset) -> TidesResponseParser.parse(location, date, source),
+                Runnable::run,
+                tidesInfo -> pendingTidesRequests.complete(requestKey, tidesInfo),
+                errorMessage -> pendingTidesRequests.fail(requestKey, errorMessage));
     }
 
     /**
@@ -93,120 +211,142 @@ public class DataFetcher {
      * a callback.
      *
      * @param location Location of which the tides data should be fetched.
+     * @param forceNetwork true iff the HTTP cache must be bypassed, e.g. for a manual refresh.
+     * @param callbackExecutor Executor on which the callbacks are invoked
      * @param dataFetchedAction Gets called as soon as data is available
      * @param errorAction Gets called in case of a network error.
      */
-    public void fetchTidesDataSingleDay(Location location, Consumer<TidesInfo> dataFetchedAction,
-                                                    Consumer<String> errorAction){
+    public void fetchTidesDataSingleDay(Location location, boolean forceNetwork,
+                                        Executor callbackExecutor,
+                                        Consumer<TidesInfo> dataFetchedAction,
+                                        Consumer<String> errorAction){
         String currentDateString = DateTimeHelper.getCurrentDateInQueryNotation();
-        fetchTidesDataSingleDay(location, currentDateString, dataFetchedAction, errorAction);
+        fetchTidesDataSingleDay(location, currentDateString, forceNetwork, callbackExecutor,
+                dataFetchedAction, errorAction);
     }
 
     /**
-     * Converts raw response from the widget API to a TidesInfo objects.
-     * <p>
-     * The response string must have the following structure (example):
-     * <p>
-     * STARTDATA+
-     * 2022-07-07; 0:38;N
-     * 2022-07-07; 6:55;H
-     * 2022-07-07;12:39;N
-     * 2022-07-07;19:04;H
-     * ENDDATA+
-     * Pegel/Date 510P at 2022-07-07
-     * <p>
-     * It is allowed that only one high tide (H) or low tide (N) occurs instead of two. It is also
-     * allowed that no low tides (N) are contained at all.
+     * Parses the body of an HTTP response.
      *
-     * @param location Location for which the data was queried.
-     * @param response Raw response text from the API
-     * @return TidesInfo object containing the data from the API
-     */
-    private TidesInfo tidesInfoStringToObject(Location location, String targetDate, String response) {
-        String[] lines = response.split("\n");
-        if (lines.length < 4) {
-            throw new IllegalArgumentException("Malformed response data. Not enough lines.");
-        }
-        String[] dayInfos = Arrays.copyOfRange(lines, 1, lines.length - 2);
-        TidesInfoBuilder tidesInfoFactory = new TidesInfoBuilder(location, targetDate);
-
-        for (String dayInfo : dayInfos) {
-            String[] components = dayInfo.split(";");
-            if (components.length < 3) {
-                throw new IllegalArgumentException("Malformed response data. Not enough columns.");
-            }
-            String dateString = components[0].trim();
-            String timeString = components[1].trim();
-            String tideCategoryString = components[2].trim();
-            tidesInfoFactory.addTideTime(dateString, timeString, tideCategoryString);
-        }
-        return tidesInfoFactory.build();
+     * @param <T> Type of the parsed result
+     */
+    private interface ResponseParser<T> {
+        /**
+         * @param source  Source providing the response body
+         * @param charset Charset of the response body
+         * @throws IllegalArgumentException If the response is malformed.
+         */
+        T parse(BufferedSource source, Charset charset) throws IOException;
     }
 
     /**
-     * Fetches a string from an URL via HTTP using OkHttp.
+     * Fetches the tides data of a single day synchronously on the calling thread. This is meant
+     * for background work (see {@link TidesSyncWorker}); it must not be called on the main thread.
      *
-     * @param url           URL which should be used to access the data.
-     * @param successAction Called after data has been retrieved.
-     * @param errorAction   Called in case of a network error.
+     * @param location Location of which the tides data should be fetched.
+     * @param date     Day for which the data should be fetched. Format: yyyy-mm-dd
+     * @return The tides of the day.
+     * @throws IOException              In case of a network error.
+     * @throws IllegalArgumentException If the response is malformed.
      */
-    private void getTextFromUrl(String url, Consumer<String> successAction,
-                                Consumer<String> errorAction) {
+    @WorkerThread
+    public TidesInfo fetchTidesDataSingleDayBlocking(Location location, String date) throws IOException {
+        String url = getTidesUrl(location, date);
         Request request = new Request.Builder()
                 .url(url)
                 .build();
+        return parseResponse(url, getClient(context).newCall(request).execute(),
+                (source, charset) -> TidesResponseParser.parse(location, date, source));
+    }
 
-        client.newCall(request).enqueue(new Callback() {
+    private String getTidesUrl(Location location, String date) {
+        return BuildConfig.TIDES_WIDGET_API_URL
+                + String.format(context.getString(R.string.tides_widget_api_path), location.getId(), date);
+    }
+
+    /**
+     * Fetches data from an URL via HTTP using OkHttp and parses the response body while it is
+     * streamed from the network.
+     * <p>
+     * The parser runs on the OkHttp thread. The callbacks are invoked on the given executor.
+     *
+     * @param url              URL which should be used to access the data.
+     * @param forceNetwork     true iff the HTTP cache must not be used for this request.
+     * @param parser           Converts the response body into the result.
+     * @param callbackExecutor Executor on which the callbacks are invoked.
+     * @param successAction    Called with the parsed result after data has been retrieved.
+     * @param errorAction      Called in case of a network error or a malformed response.
+     */
+    private <T> void fetchFromUrl(String url, boolean forceNetwork, ResponseParser<T> parser,
+                                  Executor callbackExecutor, Consumer<T> successAction,
+                                  Consumer<String> errorAction) {
+        Request.Builder requestBuilder = new Request.Builder()
+                .url(url);
+        if (forceNetwork) {
+            requestBuilder.cacheControl(CacheControl.FORCE_NETWORK);
+        }
+        Request request = requestBuilder.build();
+
+        getClient(context).newCall(request).enqueue(new Callback() {
             @Override
             public void onFailure(@NonNull Call call, @NonNull IOException e) {
-                new Handler(Looper.getMainLooper()).post(() -> errorAction.accept(e.toString()));
+                callbackExecutor.execute(() -> errorAction.accept(e.toString()));
             }
 
             @Override
-            public void onResponse(@NonNull Call call, @NonNull Response response) throws IOException {
-                if (!response.isSuccessful()) {
-                    new Handler(Looper.getMainLooper()).post(() -> errorAction.accept("Unexpected code " + response));
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                T result;
+                try {
+                    result = parseResponse(url, response, parser);
+                } catch (IllegalArgumentException e) {
+                    callbackExecutor.execute(() -> errorAction.accept("Error: Malformed response from API"));
+                    return;
+                } catch (IOException e) {
+                    callbackExecutor.execute(() -> errorAction.accept(e.getMessage()));
                     return;
                 }
-
-                try (ResponseBody responseBody = response.body()) {
-                    // The API seems to use ISO-8859-1 (Latin-1) encoding, which is common for
-                    // older German web services. OkHttp defaults to UTF-8 if no charset is
-                    // specified in the Content-Type header. We explicitly handle this here
-                    // to support German umlauts and "ß".
-                    MediaType contentType = responseBody.contentType();
-                    Charset charset = (contentType != null) ? contentType.charset(StandardCharsets.ISO_8859_1) : StandardCharsets.ISO_8859_1;
-                    if (charset == null) {
-                        charset = StandardCharsets.ISO_8859_1;
-                    }
-
-                    String bodyString = new String(responseBody.bytes(), charset);
-                    new Handler(Looper.getMainLooper()).post(() -> successAction.accept(bodyString));
-                }
+                callbackExecutor.execute(() -> successAction.accept(result));
             }
         });
     }
 
     /**
-     * Parses the CSV string containing locations and their IDs and converts it to a list of
-     * Location objects.
+     * Parses the body of the response. The response is closed afterwards.
      *
-     * @param locationsCsv String containing a CSV-formatted list of locations
-     * @return Locations contained in the CSV file as objects
-     */
-    private List<Location> locationsCsvToList(String locationsCsv) {
-        String[] lines = locationsCsv.split("\n");
-        List<Location> locations = new ArrayList<>(lines.length);
-        for (String line : lines) {
-            String[] columns = line.split(";");
-            if (columns.length < 2) {
-                throw new IllegalArgumentException("Invalid CSV line: " + line);
+     * @throws IOException              If the response is not successful or cannot be read.
+     * @throws IllegalArgumentException If the response is malformed.
+     */
+    private <T> T parseResponse(String url, Response response, ResponseParser<T> parser)
+            throws IOException {
+        UpdateMetrics metrics = UpdateMetrics.getInstance(context);
+
+        try (ResponseBody responseBody = response.body()) {
+            if (!response.isSuccessful()) {
+                metrics.increment(UpdateMetrics.Counter.HTTP_ERROR);
+                throw new IOException("Unexpected code " + response);
+            }
+
+            // The API seems to use ISO-8859-1 (Latin-1) encoding, which is common for
+            // older German web services. OkHttp defaults to UTF-8 if no charset is
+            // specified in the Content-Type header. We explicitly handle this here
+            // to support German umlauts and "ß".
+            MediaType contentType = responseBody.contentType();
+            Charset charset = (contentType != null) ? contentType.charset(StandardCharsets.ISO_8859_1) : StandardCharsets.ISO_8859_1;
+            if (charset == null) {
+                charset = StandardCharsets.ISO_8859_1;
+            }
+
+            long parseStartMillis = UpdateMetrics.startTimer();
+            try {
+                T result = parser.parse(responseBody.source(), charset);
+                metrics.recordSince(UpdateMetrics.Phase.PARSE, parseStartMillis);
+                metrics.increment(UpdateMetrics.Counter.REQUEST_SUCCESS);
+                return result;
+            } catch (IllegalArgumentException e) {
+                Log.d("DataFetcher", "Malformed response from " + url + ": " + e.getMessage());
+                metrics.increment(UpdateMetrics.Counter.MALFORMED_RESPONSE);
+                throw e;
             }
-            String locationName = columns[0];
-            String locationId = columns[1];
-            Location location = new Location(locationId, locationName);
-            locations.add(location);
         }
-        return locations;
     }
 }
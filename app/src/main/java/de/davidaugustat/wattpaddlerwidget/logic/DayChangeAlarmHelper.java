@@ -0,0 +1,55 @@
+package de.davidaugustat.wattpaddlerwidget.logic;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+import de.davidaugustat.wattpaddlerwidget.Constants;
+import de.davidaugustat.wattpaddlerwidget.ui.MainWidget;
+
+/**
+ * Schedules an update of all widgets shortly after midnight, so that the widgets switch to the
+ * tides of the new day without waiting for the next periodic update.
+ */
+public class DayChangeAlarmHelper {
+
+    /**
+     * The alarm is allowed to be delivered within this window after midnight. This lets the system
+     * batch it with other alarms.
+     */
+    private static final long ALARM_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Schedules (or replaces) the alarm for the next day change. The alarm does not wake up the
+     * device. If it is asleep at midnight, the update is delivered as soon as it wakes up.
+     */
+    public static void scheduleNextDayChange(Context context) {
+        AlarmManager alarmManager = context.getSystemService(AlarmManager.class);
+        long nextMidnightMillis = LocalDate.now().plusDays(1)
+                .atStartOfDay(ZoneId.systemDefault())
+                .toInstant()
+                .toEpochMilli();
+        alarmManager.setWindow(AlarmManager.RTC, nextMidnightMillis, ALARM_WINDOW_MILLIS,
+                getDayChangeIntent(context));
+    }
+
+    /**
+     * Cancels the alarm. This is used when the last widget has been removed.
+     */
+    public static void cancel(Context context) {
+        AlarmManager alarmManager = context.getSystemService(AlarmManager.class);
+        alarmManager.cancel(getDayChangeIntent(context));
+    }
+
+    private static PendingIntent getDayChangeIntent(Context context) {
+        Intent intent = new Intent(context, MainWidget.class);
+        intent.setAction(Constants.WIDGET_DAY_CHANGE_ACTION);
+        return PendingIntent.getBroadcast(context, 0, intent,
+                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+}
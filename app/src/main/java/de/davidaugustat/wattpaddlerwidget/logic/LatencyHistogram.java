@@ -0,0 +1,123 @@
+package de.davidaugustat.wattpaddlerwidget.logic;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations with a fixed set of buckets on a roughly logarithmic scale.
+ * <p>
+ * Every bucket counts the durations up to (and including) its upper bound that are larger than
+ * the bound of the previous bucket. The last bucket counts all durations above the largest bound.
+ * The memory footprint is constant, no matter how many durations are recorded. Percentiles are
+ * reported as the upper bound of the bucket that contains them.
+ * <p>
+ * This class is thread-safe.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Upper bounds of the buckets in milliseconds. The overflow bucket is not listed.
+     */
+    private static final long[] BUCKET_UPPER_BOUNDS_MILLIS =
+            {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+
+    public static final int BUCKET_COUNT = BUCKET_UPPER_BOUNDS_MILLIS.length + 1;
+
+    private final AtomicLongArray bucketCounts = new AtomicLongArray(BUCKET_COUNT);
+
+    public void record(long durationMillis) {
+        bucketCounts.incrementAndGet(getBucketIndex(durationMillis));
+    }
+
+    /**
+     * Adds all counts of the other histogram to this histogram.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            bucketCounts.addAndGet(i, other.bucketCounts.get(i));
+        }
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += bucketCounts.get(i);
+        }
+        return count;
+    }
+
+    public long getBucketCount(int bucketIndex) {
+        return bucketCounts.get(bucketIndex);
+    }
+
+    /**
+     * Returns the upper bound of the bucket that contains the given percentile.
+     *
+     * @param percentile Percentile between 0 and 100
+     * @return The upper bound in milliseconds, Long.MAX_VALUE if the percentile lies in the
+     * overflow bucket, or -1 if the histogram is empty.
+     */
+    public long getPercentileUpperBoundMillis(double percentile) {
+        long count = getCount();
+        if (count == 0) {
+            return -1;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long cumulativeCount = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            cumulativeCount += bucketCounts.get(i);
+            if (cumulativeCount >= rank) {
+                return getBucketUpperBoundMillis(i);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    public static long getBucketUpperBoundMillis(int bucketIndex) {
+        return bucketIndex < BUCKET_UPPER_BOUNDS_MILLIS.length
+                ? BUCKET_UPPER_BOUNDS_MILLIS[bucketIndex]
+                : Long.MAX_VALUE;
+    }
+
+    private static int getBucketIndex(long durationMillis) {
+        for (int i = 0; i < BUCKET_UPPER_BOUNDS_MILLIS.length; i++) {
+            if (durationMillis <= BUCKET_UPPER_BOUNDS_MILLIS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_UPPER_BOUNDS_MILLIS.length;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            out.writeLong(bucketCounts.get(i));
+        }
+    }
+
+    static LatencyHistogram readFrom(DataInputStream in) throws IOException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            histogram.bucketCounts.set(i, in.readLong());
+        }
+        return histogram;
+    }
+
+    @Override
+    public String toString() {
+        return "n=" + getCount()
+                + " p50<=" + formatBound(getPercentileUpperBoundMillis(50))
+                + " p90<=" + formatBound(getPercentileUpperBoundMillis(90))
+                + " p99<=" + formatBound(getPercentileUpperBoundMillis(99));
+    }
+
+    private static String formatBound(long boundMillis) {
+        if (boundMillis < 0) {
+            return "-";
+        }
+        return boundMillis == Long.MAX_VALUE
+                ? ">" + BUCKET_UPPER_BOUNDS_MILLIS[BUCKET_UPPER_BOUNDS_MILLIS.length - 1] + "ms"
+                : boundMillis + "ms";
+    }
+}
@@ -0,0 +1,89 @@
+package de.davidaugustat.wattpaddlerwidget.logic;
+
+import android.content.Context;
+import android.util.AtomicFile;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import de.davidaugustat.wattpaddlerwidget.data.Location;
+
+/**
+ * Stores the list of locations as a compact binary snapshot in the app's files directory, so that
+ * the configuration screen can show the list without waiting for the network.
+ * <p>
+ * The snapshot is encoded with {@link LocationsSnapshotCodec}. Snapshots with an unknown magic
+ * number or version are ignored. The file is replaced atomically, so a crash while writing never
+ * leaves a half-written snapshot behind. The modification time of the file is the time of the
+ * last successful fetch; the {@link FreshnessPolicy#LOCATIONS} policy is applied to it.
+ * <p>
+ * All methods perform disk I/O and must not be called on the main thread.
+ */
+public class LocationsSnapshotStore {
+
+    private static final String SNAPSHOT_FILE_NAME = "locations.snapshot";
+
+    private final AtomicFile snapshotFile;
+
+    public LocationsSnapshotStore(Context context) {
+        this.snapshotFile = new AtomicFile(new File(context.getFilesDir(), SNAPSHOT_FILE_NAME));
+    }
+
+    /**
+     * Loads the locations from the snapshot.
+     *
+     * @return The stored locations or null if there is no valid snapshot.
+     */
+    public List<Location> load() {
+        try {
+            return LocationsSnapshotCodec.decode(snapshotFile.readFully());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the time since the snapshot was last saved or confirmed by
+     * {@link #saveIfChanged(List)}. The result is only meaningful if there is a snapshot.
+     */
+    public long getAgeMillis() {
+        return System.currentTimeMillis() - snapshotFile.getLastModifiedTime();
+    }
+
+    /**
+     * Replaces the snapshot with the provided locations if their content differs from the stored
+     * snapshot. Otherwise, the snapshot is only marked as confirmed.
+     *
+     * @return true iff the content has changed (or there was no snapshot before).
+     * @throws IOException If the changed content cannot be written. The previous snapshot, if
+     *                     any, stays intact.
+     */
+    public boolean saveIfChanged(List<Location> locations) throws IOException {
+        byte[] encoded = LocationsSnapshotCodec.encode(locations);
+        try {
+            if (Arrays.equals(encoded, snapshotFile.readFully())) {
+                //noinspection ResultOfMethodCallIgnored
+                snapshotFile.getBaseFile().setLastModified(System.currentTimeMillis());
+                return false;
+            }
+        } catch (IOException e) {
+            // No readable snapshot yet, so the content has changed.
+        }
+
+        FileOutputStream outputStream = null;
+        try {
+            outputStream = snapshotFile.startWrite();
+            outputStream.write(encoded);
+            snapshotFile.finishWrite(outputStream);
+        } catch (IOException e) {
+            if (outputStream != null) {
+                snapshotFile.failWrite(outputStream);
+            }
+            throw e;
+        }
+        return true;
+    }
+}
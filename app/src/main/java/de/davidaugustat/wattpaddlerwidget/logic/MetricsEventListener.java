@@ -0,0 +1,108 @@
+package de.davidaugustat.wattpaddlerwidget.logic;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Protocol;
+import okhttp3.Response;
+
+/**
+ * OkHttp EventListener that records the network phases of a call (DNS, connect, time to first
+ * byte, body read), the transferred bytes, the cache outcome and network errors in the
+ * {@link UpdateMetrics}.
+ * <p>
+ * A new instance is created for every call, so no synchronization is needed.
+ */
+public class MetricsEventListener extends EventListener {
+
+    private final UpdateMetrics metrics;
+
+    private long dnsStartMillis;
+    private long connectStartMillis;
+    private long requestHeadersStartMillis;
+    private long responseBodyStartMillis;
+
+    public MetricsEventListener(UpdateMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns a factory that creates a listener for every call.
+     */
+    public static EventListener.Factory factory(UpdateMetrics metrics) {
+        return call -> new MetricsEventListener(metrics);
+    }
+
+    @Override
+    public void dnsStart(@NonNull Call call, @NonNull String domainName) {
+        dnsStartMillis = SystemClock.elapsedRealtime();
+    }
+
+    @Override
+    public void dnsEnd(@NonNull Call call, @NonNull String domainName,
+                       @NonNull List<InetAddress> inetAddressList) {
+        metrics.recordSince(UpdateMetrics.Phase.DNS, dnsStartMillis);
+    }
+
+    @Override
+    public void connectStart(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress,
+                             @NonNull Proxy proxy) {
+        connectStartMillis = SystemClock.elapsedRealtime();
+    }
+
+    @Override
+    public void connectEnd(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress,
+                           @NonNull Proxy proxy, Protocol protocol) {
+        metrics.recordSince(UpdateMetrics.Phase.CONNECT, connectStartMillis);
+    }
+
+    @Override
+    public void requestHeadersStart(@NonNull Call call) {
+        requestHeadersStartMillis = SystemClock.elapsedRealtime();
+    }
+
+    @Override
+    public void responseHeadersStart(@NonNull Call call) {
+        metrics.recordSince(UpdateMetrics.Phase.TIME_TO_FIRST_BYTE, requestHeadersStartMillis);
+    }
+
+    @Override
+    public void responseBodyStart(@NonNull Call call) {
+        responseBodyStartMillis = SystemClock.elapsedRealtime();
+    }
+
+    @Override
+    public void responseBodyEnd(@NonNull Call call, long byteCount) {
+        metrics.recordSince(UpdateMetrics.Phase.BODY_READ, responseBodyStartMillis);
+        metrics.add(UpdateMetrics.Counter.BYTES_RECEIVED, byteCount);
+    }
+
+    @Override
+    public void cacheHit(@NonNull Call call, @NonNull Response response) {
+        metrics.increment(UpdateMetrics.Counter.CACHE_HIT);
+    }
+
+    @Override
+    public void cacheConditionalHit(@NonNull Call call, @NonNull Response cachedResponse) {
+        metrics.increment(UpdateMetrics.Counter.CACHE_CONDITIONAL_HIT);
+    }
+
+    @Override
+    public void cacheMiss(@NonNull Call call) {
+        metrics.increment(UpdateMetrics.Counter.CACHE_MISS);
+    }
+
+    @Override
+    public void callFailed(@NonNull Call call, @NonNull IOException ioe) {
+        metrics.increment(UpdateMetrics.Counter.NETWORK_ERROR);
+    }
+}
@@ -0,0 +1,78 @@
+package de.davidaugustat.wattpaddlerwidget.logic;
+
+import androidx.core.util.Consumer;
+import androidx.core.util.Pair;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deduplicates concurrent requests for the same resource.
+ * <p>
+ * The first caller for a key has to start the actual request. All callers that register for the
+ * same key while this request is still pending are attached to it and receive the same result
+ * once it completes. After completion the key is free again, so later calls start a new request.
+ * <p>
+ * This class is thread-safe. The callbacks are invoked on the thread that calls
+ * {@link #complete(String, Object)} or {@link #fail(String, String)}.
+ *
+ * @param <T> Type of the result that is shared between the callers.
+ */
+public class RequestCoalescer<T> {
+
+    private final Map<String, List<Pair<Consumer<T>, Consumer<String>>>> pendingRequests = new HashMap<>();
+
+    /**
+     * Registers callbacks for the request with the given key.
+     *
+     * @param key           Identifies the requested resource.
+     * @param successAction Called with the result of the request.
+     * @param errorAction   Called in case the request fails.
+     * @return true iff there was no pending request for this key, i.e. the caller must start the
+     * request and later report its outcome via {@link #complete(String, Object)} or
+     * {@link #fail(String, String)}.
+     */
+    public synchronized boolean register(String key, Consumer<T> successAction,
+                                         Consumer<String> errorAction) {
+        List<Pair<Consumer<T>, Consumer<String>>> callbacks = pendingRequests.get(key);
+        boolean isFirst = callbacks == null;
+        if (isFirst) {
+            callbacks = new ArrayList<>(1);
+            pendingRequests.put(key, callbacks);
+        }
+        callbacks.add(new Pair<>(successAction, errorAction));
+        return isFirst;
+    }
+
+    /**
+     * Passes the result to all callers that are waiting for the request with the given key.
+     */
+    public void complete(String key, T result) {
+        for (Pair<Consumer<T>, Consumer<String>> callbacks : removeCallbacks(key)) {
+            callbacks.first.accept(result);
+        }
+    }
+
+    /**
+     * Passes the error message to all callers that are waiting for the request with the given key.
+     */
+    public void fail(String key, String errorMessage) {
+        for (Pair<Consumer<T>, Consumer<String>> callbacks : removeCallbacks(key)) {
+            callbacks.second.accept(errorMessage);
+        }
+    }
+
+    /**
+     * Returns the number of requests that are currently pending.
+     */
+    public synchronized int getPendingCount() {
+        return pendingRequests.size();
+    }
+
+    private synchronized List<Pair<Consumer<T>, Consumer<String>>> removeCallbacks(String key) {
+        List<Pair<Consumer<T>, Consumer<String>>> callbacks = pendingRequests.remove(key);
+        return callbacks != null ? callbacks : new ArrayList<>(0);
+    }
+}
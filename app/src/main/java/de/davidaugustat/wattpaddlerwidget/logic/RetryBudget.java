@@ -0,0 +1,55 @@
+package de.davidaugustat.wattpaddlerwidget.logic;
+
+/**
+ * Limits the number of retries relative to the number of requests.
+ * <p>
+ * The budget is a token bucket: every request adds a fraction of a token, every retry takes a
+ * whole token. So on average at most this fraction of the requests is retried, and short series
+ * of failures can use up to the capacity of the bucket. When the API is struggling and most
+ * requests fail, the bucket runs empty and failed requests are not retried anymore, so the
+ * retries do not add to its load.
+ * <p>
+ * This class is thread-safe.
+ */
+public class RetryBudget {
+
+    private final double retryRatio;
+    private final double capacity;
+    private double tokens;
+
+    /**
+     * @param retryRatio Fraction of a token that every request adds, e.g. 0.1 for at most 10 %
+     *                   retries
+     * @param capacity   Maximum number of tokens. The bucket is full initially.
+     */
+    public RetryBudget(double retryRatio, int capacity) {
+        this.retryRatio = retryRatio;
+        this.capacity = capacity;
+        this.tokens = capacity;
+    }
+
+    /**
+     * Must be called once for every request, but not for its retries.
+     */
+    public synchronized void onRequest() {
+        tokens = Math.min(capacity, tokens + retryRatio);
+    }
+
+    /**
+     * Takes a token for a retry.
+     *
+     * @return true iff the retry is within the budget and may be made.
+     */
+    public synchronized boolean tryAcquireRetry() {
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%.1f/%.0f retry tokens", tokens, capacity);
+    }
+}
@@ -0,0 +1,125 @@
+package de.davidaugustat.wattpaddlerwidget.logic;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * OkHttp application interceptor that sets adaptive timeouts and retries failed GET requests.
+ * <p>
+ * The connect and read timeouts of every attempt are taken from an {@link AdaptiveTimeout}, which
+ * is fed with the time to the response headers of all requests that went to the network. Responses
+ * from the HTTP cache are not recorded.
+ * <p>
+ * GET requests are retried after network errors and after HTTP responses that indicate a
+ * temporary problem of the server. A request is tried at most {@link #MAX_ATTEMPTS} times. The
+ * delay before a retry is chosen randomly up to an exponentially growing limit ("full jitter"), so
+ * that the retries of many clients do not arrive at the same time. Retries are further limited by
+ * a {@link RetryBudget} and by the call timeout of the client, which is the total deadline of a
+ * request including all of its retries.
+ */
+public class RetryInterceptor implements Interceptor {
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long BACKOFF_BASE_MILLIS = 250;
+    private static final long BACKOFF_CAP_MILLIS = 2000;
+
+    private final AdaptiveTimeout timeout;
+    private final RetryBudget retryBudget;
+    private final UpdateMetrics metrics;
+    private final Random random = new Random();
+
+    public RetryInterceptor(AdaptiveTimeout timeout, RetryBudget retryBudget, UpdateMetrics metrics) {
+        this.timeout = timeout;
+        this.retryBudget = retryBudget;
+        this.metrics = metrics;
+    }
+
+    @NonNull
+    @Override
+    public Response intercept(@NonNull Chain chain) throws IOException {
+        Request request = chain.request();
+        long startMillis = SystemClock.elapsedRealtime();
+        long deadlineMillis = TimeUnit.NANOSECONDS.toMillis(chain.call().timeout().timeoutNanos());
+        boolean isRetryable = "GET".equals(request.method());
+        retryBudget.onRequest();
+
+        for (int attempt = 1; ; attempt++) {
+            int timeoutMillis = (int) timeout.getTimeoutMillis();
+            long attemptStartMillis = SystemClock.elapsedRealtime();
+            Response response = null;
+            IOException failure = null;
+            try {
+                response = chain.withConnectTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                        .withReadTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                        .proceed(request);
+            } catch (IOException e) {
+                failure = e;
+            }
+
+            if (failure instanceof SocketTimeoutException) {
+                timeout.record(timeoutMillis);
+            } else if (response != null && response.networkResponse() != null) {
+                timeout.record(SystemClock.elapsedRealtime() - attemptStartMillis);
+            }
+
+            boolean shouldRetry = isRetryable && attempt < MAX_ATTEMPTS
+                    && !chain.call().isCanceled()
+                    && (failure != null || isTemporaryServerError(response.code()));
+            long backoffMillis = getBackoffMillis(attempt);
+            if (shouldRetry && deadlineMillis > 0) {
+                // Only retry if the next attempt has a chance to complete before the deadline:
+                long elapsedMillis = SystemClock.elapsedRealtime() - startMillis;
+                shouldRetry = elapsedMillis + backoffMillis + timeout.getFloorMillis() < deadlineMillis;
+            }
+            if (shouldRetry && !retryBudget.tryAcquireRetry()) {
+                Log.d("RetryInterceptor", "Retry budget exhausted, not retrying " + request.url());
+                metrics.increment(UpdateMetrics.Counter.RETRY_BUDGET_EXHAUSTED);
+                shouldRetry = false;
+            }
+            if (!shouldRetry) {
+                if (failure != null) {
+                    throw failure;
+                }
+                return response;
+            }
+
+            Log.d("RetryInterceptor", "Attempt " + attempt + " of " + request.url() + " failed ("
+                    + (failure != null ? failure.toString() : "HTTP " + response.code())
+                    + "), retrying in " + backoffMillis + "ms. " + timeout + ", " + retryBudget);
+            if (response != null) {
+                response.close();
+            }
+            try {
+                Thread.sleep(backoffMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for retry");
+            }
+            metrics.increment(UpdateMetrics.Counter.RETRY);
+        }
+    }
+
+    /**
+     * Returns a random delay before the retry that follows the given attempt.
+     */
+    private long getBackoffMillis(int attempt) {
+        long limitMillis = Math.min(BACKOFF_CAP_MILLIS, BACKOFF_BASE_MILLIS << attempt);
+        return (long) (random.nextDouble() * limitMillis);
+    }
+
+    private static boolean isTemporaryServerError(int code) {
+        return code == 408 || code == 429 || code == 500 || code == 502 || code == 503 || code == 504;
+    }
+}
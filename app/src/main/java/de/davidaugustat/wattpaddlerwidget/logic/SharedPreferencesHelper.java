@@ -3,37 +3,20 @@ package de.davidaugustat.wattpaddlerwidget.logic;
 import android.content.Context;
 import android.content.SharedPreferences;
 
-import java.time.LocalDate;
-import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 
 import de.davidaugustat.wattpaddlerwidget.Constants;
 import de.davidaugustat.wattpaddlerwidget.data.Location;
-import de.davidaugustat.wattpaddlerwidget.data.NonExistentTideTime;
-import de.davidaugustat.wattpaddlerwidget.data.NormalTideTime;
-import de.davidaugustat.wattpaddlerwidget.data.ShiftedTideTime;
-import de.davidaugustat.wattpaddlerwidget.data.TideTime;
-import de.davidaugustat.wattpaddlerwidget.data.TidesInfo;
 
 /**
- * Helper class that handles the storing of location objects and tide data in the shared
- * preferences.
+ * Helper class that handles the storing of location objects in the shared preferences. The tide
+ * data of all locations is stored in the {@link TidesStore}.
  */
 public class SharedPreferencesHelper {
 
-    private static final String CACHE_PREFS = "WIDGET_CACHE";
-    private static final String KEY_LOC_ID = "loc_id_";
-    private static final String KEY_LOC_NAME = "loc_name_";
-    private static final String KEY_DATE = "date_";
-    private static final String KEY_HIGH_TIDE_1 = "high_tide_1_";
-    private static final String KEY_HIGH_TIDE_2 = "high_tide_2_";
-    private static final String KEY_LOW_TIDE_1 = "low_tide_1_";
-    private static final String KEY_LOW_TIDE_2 = "low_tide_2_";
-    private static final String KEY_LAST_UPDATED = "last_updated_";
-
-    private static final String TIDE_TYPE_NORMAL = "NORMAL";
-    private static final String TIDE_TYPE_SHIFTED = "SHIFTED";
-    private static final String TIDE_TYPE_NON_EXISTENT = "NON_EXISTENT";
-
     /**
      * Saves a location object to the shared preferences together with an app widget ID.
      * <p>
@@ -78,21 +61,66 @@ public class SharedPreferencesHelper {
     }
 
     /**
-     * Deletes the location associated with the given app widget ID from the shared preferences.
-     * Also clears the tides cache for this widget.
+     * Retrieves the locations of several app widgets with a single access to the shared
+     * preferences.
      *
-     * @param appWidgetId App widget ID that the location should be deleted for.
-     * @param context     Context to access SharedPreferences
+     * @param appWidgetIds IDs of the app widgets that the locations should be retrieved for.
+     * @param context      Context to access SharedPreferences
+     * @return Map from app widget ID to location. Widgets without a stored location are not
+     * contained.
+     */
+    public static Map<Integer, Location> getLocations(int[] appWidgetIds, Context context) {
+        SharedPreferences sharedPrefs = context.getSharedPreferences(
+                Constants.WIDGET_LOCATION_PREFERENCES, Context.MODE_PRIVATE);
+
+        Map<Integer, Location> locations = new HashMap<>(appWidgetIds.length);
+        for (int appWidgetId : appWidgetIds) {
+            String locationName = sharedPrefs.getString(getLocationNameKey(appWidgetId), null);
+            String locationId = sharedPrefs.getString(getLocationIdKey(appWidgetId), null);
+            if (locationName != null && locationId != null) {
+                locations.put(appWidgetId, new Location(locationId, locationName));
+            }
+        }
+        return locations;
+    }
+
+    /**
+     * Deletes the locations associated with the given app widget IDs from the shared preferences.
+     * All of them are removed with a single write of the preferences file.
+     *
+     * @param appWidgetIds App widget IDs that the locations should be deleted for.
+     * @param context      Context to access SharedPreferences
      */
-    public static void deleteLocation(int appWidgetId, Context context) {
+    public static void deleteLocations(int[] appWidgetIds, Context context) {
         SharedPreferences sharedPrefs = context.getSharedPreferences(
                 Constants.WIDGET_LOCATION_PREFERENCES, Context.MODE_PRIVATE);
         SharedPreferences.Editor editor = sharedPrefs.edit();
-        editor.remove(getLocationNameKey(appWidgetId));
-        editor.remove(getLocationIdKey(appWidgetId));
+        for (int appWidgetId : appWidgetIds) {
+            editor.remove(getLocationNameKey(appWidgetId));
+            editor.remove(getLocationIdKey(appWidgetId));
+        }
         editor.apply();
+    }
 
-        clearTidesCache(appWidgetId, context);
+    /**
+     * Returns all distinct locations that are stored for any app widget.
+     */
+    public static Set<Location> getAllLocations(Context context) {
+        SharedPreferences sharedPrefs = context.getSharedPreferences(
+                Constants.WIDGET_LOCATION_PREFERENCES, Context.MODE_PRIVATE);
+        Set<Location> locations = new LinkedHashSet<>();
+        for (Map.Entry<String, ?> entry : sharedPrefs.getAll().entrySet()) {
+            if (!entry.getKey().startsWith(Constants.LOCATION_ID_KEY_PREFIX)) {
+                continue;
+            }
+            String widgetIdSuffix = entry.getKey().substring(Constants.LOCATION_ID_KEY_PREFIX.length());
+            String locationName = sharedPrefs.getString(
+                    Constants.LOCATION_NAME_KEY_PREFIX + widgetIdSuffix, null);
+            if (entry.getValue() instanceof String && locationName != null) {
+                locations.add(new Location((String) entry.getValue(), locationName));
+            }
+        }
+        return locations;
     }
 
     /**
@@ -110,100 +138,4 @@ public class SharedPreferencesHelper {
     private static String getLocationIdKey(int appWidgetId) {
         return Constants.LOCATION_ID_KEY_PREFIX + appWidgetId;
     }
-
-    /**
-     * Saves the provided TidesInfo object to the cache for a specific app widget.
-     *
-     * @param appWidgetId ID of the widget
-     * @param context     Context to access SharedPreferences
-     * @param tidesInfo   The TidesInfo object to cache
-     */
-    public static void saveTidesCache(int appWidgetId, Context context, TidesInfo tidesInfo) {
-        SharedPreferences prefs = context.getSharedPreferences(CACHE_PREFS, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = prefs.edit();
-
-        editor.putString(KEY_LOC_ID + appWidgetId, tidesInfo.getLocationId());
-        editor.putString(KEY_LOC_NAME + appWidgetId, tidesInfo.getLocationName());
-        editor.putString(KEY_DATE + appWidgetId, tidesInfo.getDate().toString());
-        editor.putString(KEY_LAST_UPDATED + appWidgetId, tidesInfo.getUpdatedTime().toString());
-
-        saveTideTime(editor, KEY_HIGH_TIDE_1 + appWidgetId, tidesInfo.getHighTide1());
-        saveTideTime(editor, KEY_HIGH_TIDE_2 + appWidgetId, tidesInfo.getHighTide2());
-        saveTideTime(editor, KEY_LOW_TIDE_1 + appWidgetId, tidesInfo.getLowTide1());
-        saveTideTime(editor, KEY_LOW_TIDE_2 + appWidgetId, tidesInfo.getLowTide2());
-
-        editor.apply();
-    }
-
-    /**
-     * Retrieves the cached TidesInfo for a specific app widget.
-     *
-     * @param appWidgetId ID of the widget
-     * @param context     Context to access SharedPreferences
-     * @return The cached TidesInfo object, or null if no cache exists.
-     */
-    public static TidesInfo getTidesCache(int appWidgetId, Context context) {
-        SharedPreferences prefs = context.getSharedPreferences(CACHE_PREFS, Context.MODE_PRIVATE);
-        String locId = prefs.getString(KEY_LOC_ID + appWidgetId, null);
-        if (locId == null){
-            return null;
-        }
-
-        String locName = prefs.getString(KEY_LOC_NAME + appWidgetId, "");
-        LocalDate date = LocalDate.parse(prefs.getString(KEY_DATE + appWidgetId, ""));
-        LocalDateTime updatedTime = LocalDateTime.parse(
-                prefs.getString(KEY_LAST_UPDATED + appWidgetId, ""));
-
-        TideTime highTide1 = loadTideTime(prefs, KEY_HIGH_TIDE_1 + appWidgetId);
-        TideTime highTide2 = loadTideTime(prefs, KEY_HIGH_TIDE_2 + appWidgetId);
-        TideTime lowTide1 = loadTideTime(prefs, KEY_LOW_TIDE_1 + appWidgetId);
-        TideTime lowTide2 = loadTideTime(prefs, KEY_LOW_TIDE_2 + appWidgetId);
-
-        return new TidesInfo(locId, locName, date, lowTide1, lowTide2, highTide1, highTide2, updatedTime);
-    }
-
-    /**
-     * Clears the cached tide data for a specific app widget.
-     */
-    private static void clearTidesCache(int appWidgetId, Context context) {
-        SharedPreferences prefs = context.getSharedPreferences(CACHE_PREFS, Context.MODE_PRIVATE);
-        prefs.edit()
-                .remove(KEY_LOC_ID + appWidgetId)
-                .remove(KEY_LOC_NAME + appWidgetId)
-                .remove(KEY_DATE + appWidgetId)
-                .remove(KEY_HIGH_TIDE_1 + appWidgetId)
-                .remove(KEY_HIGH_TIDE_1 + appWidgetId + "_type")
-                .remove(KEY_HIGH_TIDE_2 + appWidgetId)
-                .remove(KEY_HIGH_TIDE_2 + appWidgetId + "_type")
-                .remove(KEY_LOW_TIDE_1 + appWidgetId)
-                .remove(KEY_LOW_TIDE_1 + appWidgetId + "_type")
-                .remove(KEY_LOW_TIDE_2 + appWidgetId)
-                .remove(KEY_LOW_TIDE_2 + appWidgetId + "_type")
-                .remove(KEY_LAST_UPDATED + appWidgetId)
-                .apply();
-    }
-
-    private static void saveTideTime(SharedPreferences.Editor editor, String key, TideTime tideTime) {
-        if (tideTime instanceof NormalTideTime) {
-            editor.putString(key + "_type", TIDE_TYPE_NORMAL);
-            editor.putString(key, ((NormalTideTime) tideTime).getDateTime().toString());
-        } else if (tideTime instanceof ShiftedTideTime) {
-            editor.putString(key + "_type", TIDE_TYPE_SHIFTED);
-        } else if (tideTime instanceof NonExistentTideTime) {
-            editor.putString(key + "_type", TIDE_TYPE_NON_EXISTENT);
-        }
-    }
-
-    private static TideTime loadTideTime(SharedPreferences prefs, String key) {
-        String type = prefs.getString(key + "_type", "");
-        switch (type) {
-            case TIDE_TYPE_NORMAL:
-                return new NormalTideTime(LocalDateTime.parse(prefs.getString(key, "")));
-            case TIDE_TYPE_SHIFTED:
-                return new ShiftedTideTime();
-            case TIDE_TYPE_NON_EXISTENT:
-            default:
-                return new NonExistentTideTime();
-        }
-    }
 }
@@ -0,0 +1,99 @@
+package de.davidaugustat.wattpaddlerwidget.logic;
+
+import android.content.Context;
+
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import de.davidaugustat.wattpaddlerwidget.Constants;
+
+/**
+ * Schedules the {@link TidesSyncWorker} with WorkManager.
+ * <p>
+ * The periodic sync runs once per day within the four hours before
+ * {@link Constants#SYNC_WINDOW_END_HOUR}, i.e. ahead of the day boundary. All work requires a
+ * network connection and is retried with exponential backoff. WorkManager defers the work while
+ * the device is in Doze mode and batches it with the work of other apps.
+ */
+public class SyncScheduler {
+
+    public static final String PERIODIC_WORK_NAME = "tides_sync_periodic";
+    public static final String ONE_TIME_WORK_NAME = "tides_sync_now";
+
+    private static final long SYNC_PERIOD_HOURS = 24;
+    private static final long SYNC_FLEX_HOURS = 4;
+
+    /**
+     * Enqueues the periodic sync unless it is enqueued already. This is cheap and can be called at
+     * every widget update.
+     */
+    public static void schedulePeriodicSync(Context context) {
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(TidesSyncWorker.class,
+                SYNC_PERIOD_HOURS, TimeUnit.HOURS, SYNC_FLEX_HOURS, TimeUnit.HOURS)
+                .setConstraints(getConstraints())
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL,
+                        Constants.SYNC_BACKOFF_DELAY_MINUTES, TimeUnit.MINUTES)
+                .setInitialDelay(getInitialDelayMinutes(LocalDateTime.now()), TimeUnit.MINUTES)
+                .build();
+        WorkManager.getInstance(context).enqueueUniquePeriodicWork(PERIODIC_WORK_NAME,
+                ExistingPeriodicWorkPolicy.KEEP, request);
+    }
+
+    /**
+     * Enqueues a single sync that runs as soon as a network connection is available. If such a
+     * sync is enqueued already, no second one is added.
+     */
+    public static void requestSync(Context context) {
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(TidesSyncWorker.class)
+                .setConstraints(getConstraints())
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL,
+                        Constants.SYNC_BACKOFF_DELAY_MINUTES, TimeUnit.MINUTES)
+                .build();
+        WorkManager.getInstance(context).enqueueUniqueWork(ONE_TIME_WORK_NAME,
+                ExistingWorkPolicy.KEEP, request);
+    }
+
+    /**
+     * Cancels all sync work. This is used when the last widget has been removed.
+     */
+    public static void cancel(Context context) {
+        WorkManager workManager = WorkManager.getInstance(context);
+        workManager.cancelUniqueWork(PERIODIC_WORK_NAME);
+        workManager.cancelUniqueWork(ONE_TIME_WORK_NAME);
+    }
+
+    private static Constraints getConstraints() {
+        return new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+    }
+
+    /**
+     * Returns the initial delay that aligns the flex window of the periodic work with the hours
+     * before {@link Constants#SYNC_WINDOW_END_HOUR}. The first run of a periodic request with a
+     * flex interval takes place at the start of the flex window, i.e. (period - flex) after the
+     * initial delay.
+     */
+    static long getInitialDelayMinutes(LocalDateTime now) {
+        LocalDateTime windowStart = now.toLocalDate()
+                .atTime(Constants.SYNC_WINDOW_END_HOUR, 0)
+                .minusHours(SYNC_FLEX_HOURS);
+        if (!windowStart.isAfter(now)) {
+            windowStart = windowStart.plusDays(1);
+        }
+        long minutesUntilWindowStart = Duration.between(now, windowStart).toMinutes();
+        long periodMinutes = TimeUnit.HOURS.toMinutes(SYNC_PERIOD_HOURS);
+        long flexOffsetMinutes = TimeUnit.HOURS.toMinutes(SYNC_PERIOD_HOURS - SYNC_FLEX_HOURS);
+        return Math.floorMod(minutesUntilWindowStart - flexOffsetMinutes, periodMinutes);
+    }
+}
@@ -0,0 +1,110 @@
+package de.davidaugustat.wattpaddlerwidget.logic;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+
+import java.time.LocalDate;
+
+import de.davidaugustat.wattpaddlerwidget.data.TidesInfo;
+
+/**
+ * Process-wide in-memory cache of TidesInfo objects, keyed by location ID and date.
+ * <p>
+ * It sits in front of the persistent caches, so that rapid successive updates (launcher resizes,
+ * refresh taps, boot storms) do not have to read and decode the stored data again. The cache is
+ * bounded by {@link #MAX_ENTRIES} and evicts the least recently used entries first. It shrinks
+ * when the system reports memory pressure via onTrimMemory().
+ * <p>
+ * This class is thread-safe, so it can be used from the main thread and from the OkHttp callback
+ * threads.
+ */
+public class TidesMemoryCache implements ComponentCallbacks2 {
+
+    private static final int MAX_ENTRIES = 64;
+
+    private static TidesMemoryCache instance;
+
+    private final LruCache<String, TidesInfo> cache = new LruCache<>(MAX_ENTRIES);
+
+    private TidesMemoryCache() {
+    }
+
+    /**
+     * Returns the cache of this process. At the first call, the cache registers itself for memory
+     * pressure callbacks of the application.
+     */
+    public static synchronized TidesMemoryCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new TidesMemoryCache();
+            context.getApplicationContext().registerComponentCallbacks(instance);
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the cached tides of the location on the given date, or null if they are not cached.
+     */
+    public TidesInfo get(String locationId, LocalDate date) {
+        return cache.get(getKey(locationId, date));
+    }
+
+    /**
+     * Adds the TidesInfo object to the cache. An existing entry for the same location and date is
+     * replaced.
+     */
+    public void put(TidesInfo tidesInfo) {
+        cache.put(getKey(tidesInfo.getLocationId(), tidesInfo.getDate()), tidesInfo);
+    }
+
+    public void clear() {
+        cache.evictAll();
+    }
+
+    private static String getKey(String locationId, LocalDate date) {
+        return locationId + "|" + date.toEpochDay();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        int maxEntries = getMaxEntriesAfterTrim(level);
+        if (maxEntries < MAX_ENTRIES) {
+            cache.trimToSize(maxEntries);
+            Log.d("TidesMemoryCache", "Trimmed to " + cache.size() + " entries (level " + level + ")");
+        }
+    }
+
+    /**
+     * Returns the number of entries that are kept at the given level of
+     * {@link #onTrimMemory(int)}. The cache only shrinks if the system is running low on memory
+     * and is emptied when the process is about to be killed. Moving to the background
+     * (TRIM_MEMORY_UI_HIDDEN, TRIM_MEMORY_BACKGROUND) keeps all entries, as the widgets are
+     * updated from the background anyway.
+     */
+    public static int getMaxEntriesAfterTrim(int level) {
+        switch (level) {
+            case TRIM_MEMORY_RUNNING_LOW:
+            case TRIM_MEMORY_RUNNING_CRITICAL:
+            case TRIM_MEMORY_MODERATE:
+                return MAX_ENTRIES / 4;
+            case TRIM_MEMORY_COMPLETE:
+                return 0;
+            default:
+                return MAX_ENTRIES;
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        cache.evictAll();
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+        // Not relevant for the cache.
+    }
+}
@@ -0,0 +1,168 @@
+package de.davidaugustat.wattpaddlerwidget.logic;
+
+import android.content.Context;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import de.davidaugustat.wattpaddlerwidget.Constants;
+import de.davidaugustat.wattpaddlerwidget.data.Location;
+import de.davidaugustat.wattpaddlerwidget.data.TidesInfo;
+
+/**
+ * Keeps a rolling window of the tides of the next {@link Constants#PREFETCH_WINDOW_DAYS} days per
+ * location in the {@link TidesStore}.
+ * <p>
+ * Tide times are predictions and do not change once published, so a day only needs to be fetched
+ * once. This way the widget can roll over at midnight and keep showing correct data for the
+ * length of the window without any network access. Missing days are fetched in the background by
+ * the {@link TidesSyncWorker}.
+ * <p>
+ * Tides are written through the {@link TidesWriteBehind}. All read methods include the days that
+ * it has not written to the store yet.
+ */
+public class TidesPrefetcher {
+
+    private final Context context;
+
+    public TidesPrefetcher(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Returns the stored tides of the location for the given day, or null if the day has not been
+     * fetched yet. The in-memory cache is consulted first.
+     */
+    public TidesInfo getStoredTides(Location location, LocalDate date) {
+        TidesMemoryCache memoryCache = TidesMemoryCache.getInstance(context);
+        TidesInfo tidesInfo = memoryCache.get(location.getId(), date);
+        if (tidesInfo == null) {
+            tidesInfo = getPendingDay(location.getId(), date);
+        }
+        if (tidesInfo == null) {
+            tidesInfo = TidesStore.getInstance(context).getDay(location.getId(), date);
+            if (tidesInfo != null) {
+                memoryCache.put(tidesInfo);
+            }
+        }
+        return tidesInfo;
+    }
+
+    /**
+     * Loads the stored tides of several locations for the given day with a single query and
+     * adds them to the in-memory cache, so that subsequent calls to
+     * {@link #getStoredTides(Location, LocalDate)} do not need to access the store. Null
+     * locations are ignored.
+     */
+    public void loadStoredTides(Collection<Location> locations, LocalDate date) {
+        List<String> locationIds = new ArrayList<>(locations.size());
+        for (Location location : locations) {
+            if (location != null) {
+                locationIds.add(location.getId());
+            }
+        }
+        if (locationIds.isEmpty()) {
+            return;
+        }
+        TidesMemoryCache memoryCache = TidesMemoryCache.getInstance(context);
+        for (TidesInfo tidesInfo : TidesStore.getInstance(context).getDays(locationIds, date, date)) {
+            memoryCache.put(tidesInfo);
+        }
+        // Pending days are newer than the stored ones:
+        for (String locationId : locationIds) {
+            TidesInfo pendingDay = getPendingDay(locationId, date);
+            if (pendingDay != null) {
+                memoryCache.put(pendingDay);
+            }
+        }
+    }
+
+    /**
+     * Returns the most recent stored tides of the location up to today, or null if there are none.
+     */
+    public TidesInfo getLatestStoredTides(Location location) {
+        LocalDate today = LocalDate.now();
+        TidesInfo tidesInfo = getStoredTides(location, today);
+        if (tidesInfo == null) {
+            tidesInfo = TidesStore.getInstance(context).getLatestDay(location.getId(), today);
+            TidesWriteBehind writeBehind = TidesWriteBehind.getInstance(context);
+            for (TidesInfo pendingDay : writeBehind.getPendingDays(location.getId())) {
+                if (!pendingDay.getDate().isAfter(today)
+                        && (tidesInfo == null || pendingDay.getDate().isAfter(tidesInfo.getDate()))) {
+                    tidesInfo = pendingDay;
+                }
+            }
+        }
+        return tidesInfo;
+    }
+
+    /**
+     * Stores the tides of a single day in the shared store. The store is written in the
+     * background, together with the other days that are stored at about the same time.
+     */
+    public void storeTides(TidesInfo tidesInfo) {
+        long startMillis = UpdateMetrics.startTimer();
+        TidesMemoryCache.getInstance(context).put(tidesInfo);
+        TidesWriteBehind.getInstance(context).put(tidesInfo);
+        UpdateMetrics.getInstance(context).recordSince(UpdateMetrics.Phase.STORE_WRITE, startMillis);
+    }
+
+    /**
+     * Returns the days of the window starting with the given day for which no tides of the
+     * location are stored yet.
+     */
+    public List<LocalDate> getMissingDates(Location location, LocalDate today) {
+        List<LocalDate> windowDates = getWindowDates(today);
+        Set<LocalDate> storedDates = TidesStore.getInstance(context).getStoredDates(location.getId(),
+                windowDates.get(0), windowDates.get(windowDates.size() - 1));
+        TidesWriteBehind writeBehind = TidesWriteBehind.getInstance(context);
+        for (TidesInfo pendingDay : writeBehind.getPendingDays(location.getId())) {
+            storedDates.add(pendingDay.getDate());
+        }
+        List<LocalDate> missingDates = new ArrayList<>();
+        for (LocalDate date : windowDates) {
+            if (!storedDates.contains(date)) {
+                missingDates.add(date);
+            }
+        }
+        return missingDates;
+    }
+
+    /**
+     * Removes the stored tides of locations that no widget shows anymore and the days before the
+     * given day.
+     */
+    public void collectGarbage(LocalDate today) {
+        // Pending days must not be written after the garbage collection:
+        TidesWriteBehind.getInstance(context).flush();
+        Set<String> usedLocationIds = new HashSet<>();
+        for (Location location : SharedPreferencesHelper.getAllLocations(context)) {
+            usedLocationIds.add(location.getId());
+        }
+        TidesStore.getInstance(context).collectGarbage(usedLocationIds, today);
+    }
+
+    private TidesInfo getPendingDay(String locationId, LocalDate date) {
+        for (TidesInfo pendingDay : TidesWriteBehind.getInstance(context).getPendingDays(locationId)) {
+            if (pendingDay.getDate().equals(date)) {
+                return pendingDay;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the days that make up the window, starting with the provided day.
+     */
+    private static List<LocalDate> getWindowDates(LocalDate firstDate) {
+        List<LocalDate> dates = new ArrayList<>(Constants.PREFETCH_WINDOW_DAYS);
+        for (int i = 0; i < Constants.PREFETCH_WINDOW_DAYS; i++) {
+            dates.add(firstDate.plusDays(i));
+        }
+        return dates;
+    }
+}
@@ -0,0 +1,359 @@
+package de.davidaugustat.wattpaddlerwidget.logic;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import de.davidaugustat.wattpaddlerwidget.data.Location;
+import de.davidaugustat.wattpaddlerwidget.data.NonExistentTideTime;
+import de.davidaugustat.wattpaddlerwidget.data.NormalTideTime;
+import de.davidaugustat.wattpaddlerwidget.data.ShiftedTideTime;
+import de.davidaugustat.wattpaddlerwidget.data.TideTime;
+import de.davidaugustat.wattpaddlerwidget.data.TidesInfo;
+
+/**
+ * Local SQLite store of the tides of all locations, shared by all widgets.
+ * <p>
+ * Every row holds the tides of one location on one day and is keyed by (location ID, date). The
+ * widgets themselves only store a reference to their location (see
+ * {@link SharedPreferencesHelper#saveLocation(Location, int, Context)}), so the amount of stored
+ * data and the number of fetches grow with the number of distinct locations and not with the
+ * number of widgets. A new widget for a location that is already shown by another widget starts
+ * with the stored data right away.
+ * <p>
+ * The events of a day are stored as a blob in the format of {@link TideEventsCodec}, together with
+ * the CRC32 of the blob. A row whose checksum does not match is treated as not stored, so a
+ * corrupt row is fetched again instead of being displayed.
+ */
+public class TidesStore extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "tides.db";
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String TABLE_TIDE_DAYS = "tide_days";
+    private static final String COLUMN_LOCATION_ID = "location_id";
+    private static final String COLUMN_LOCATION_NAME = "location_name";
+    private static final String COLUMN_EPOCH_DAY = "epoch_day";
+    private static final String COLUMN_UPDATED = "updated";
+    private static final String COLUMN_EVENTS = "events";
+    private static final String COLUMN_EVENTS_CRC = "events_crc";
+
+    private static final String[] DAY_COLUMNS = {COLUMN_LOCATION_ID, COLUMN_LOCATION_NAME,
+            COLUMN_EPOCH_DAY, COLUMN_UPDATED, COLUMN_EVENTS, COLUMN_EVENTS_CRC};
+
+    // Per-widget cache that was used before this store. It is imported and deleted when the
+    // database is created.
+    private static final String LEGACY_CACHE_PREFERENCES = "WIDGET_CACHE";
+    private static final String LEGACY_KEY_LOC_ID = "loc_id_";
+    private static final String LEGACY_KEY_LOC_NAME = "loc_name_";
+    private static final String LEGACY_KEY_DATE = "date_";
+    private static final String LEGACY_KEY_HIGH_TIDE_1 = "high_tide_1_";
+    private static final String LEGACY_KEY_HIGH_TIDE_2 = "high_tide_2_";
+    private static final String LEGACY_KEY_LOW_TIDE_1 = "low_tide_1_";
+    private static final String LEGACY_KEY_LOW_TIDE_2 = "low_tide_2_";
+    private static final String LEGACY_KEY_LAST_UPDATED = "last_updated_";
+    private static final String LEGACY_TIDE_TYPE_NORMAL = "NORMAL";
+    private static final String LEGACY_TIDE_TYPE_SHIFTED = "SHIFTED";
+
+    private static TidesStore instance;
+
+    private final Context context;
+
+    private TidesStore(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this.context = context;
+    }
+
+    public static synchronized TidesStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new TidesStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_TIDE_DAYS + " ("
+                + COLUMN_LOCATION_ID + " TEXT NOT NULL, "
+                + COLUMN_EPOCH_DAY + " INTEGER NOT NULL, "
+                + COLUMN_LOCATION_NAME + " TEXT NOT NULL, "
+                + COLUMN_UPDATED + " INTEGER NOT NULL, "
+                + COLUMN_EVENTS + " BLOB NOT NULL, "
+                + COLUMN_EVENTS_CRC + " INTEGER NOT NULL, "
+                + "PRIMARY KEY (" + COLUMN_LOCATION_ID + ", " + COLUMN_EPOCH_DAY + "))");
+        // Allows to query and prune days across all locations:
+        db.execSQL("CREATE INDEX index_" + TABLE_TIDE_DAYS + "_" + COLUMN_EPOCH_DAY
+                + " ON " + TABLE_TIDE_DAYS + " (" + COLUMN_EPOCH_DAY + ")");
+        importLegacyCaches(db);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // The store only contains data that can be fetched again.
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_TIDE_DAYS);
+        onCreate(db);
+    }
+
+    /**
+     * Stores the tides of one or more days. Existing rows for the same location and date get
+     * replaced.
+     */
+    public void putDays(Collection<TidesInfo> tidesInfos) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            insertDays(db, tidesInfos);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Returns the tides of the location on the given day, or null if they are not stored or
+     * corrupt.
+     */
+    public TidesInfo getDay(String locationId, LocalDate date) {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_TIDE_DAYS, DAY_COLUMNS,
+                COLUMN_LOCATION_ID + " = ? AND " + COLUMN_EPOCH_DAY + " = ?",
+                new String[]{locationId, Long.toString(date.toEpochDay())},
+                null, null, null)) {
+            return cursor.moveToFirst() ? readDay(cursor) : null;
+        }
+    }
+
+    /**
+     * Returns the most recent stored day of the location that is not after the given date, or
+     * null if there is none. This is used to show the last known data if a fetch fails.
+     */
+    public TidesInfo getLatestDay(String locationId, LocalDate notAfter) {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_TIDE_DAYS, DAY_COLUMNS,
+                COLUMN_LOCATION_ID + " = ? AND " + COLUMN_EPOCH_DAY + " <= ?",
+                new String[]{locationId, Long.toString(notAfter.toEpochDay())},
+                null, null, COLUMN_EPOCH_DAY + " DESC", "1")) {
+            return cursor.moveToFirst() ? readDay(cursor) : null;
+        }
+    }
+
+    /**
+     * Returns all stored days of the given locations in the date range [from, to], ordered by
+     * location and date.
+     *
+     * @param locationIds IDs of the locations. If empty, the days of all locations are returned.
+     */
+    public List<TidesInfo> getDays(Collection<String> locationIds, LocalDate from, LocalDate to) {
+        StringBuilder selection = new StringBuilder(COLUMN_EPOCH_DAY + " BETWEEN ? AND ?");
+        List<String> selectionArgs = new ArrayList<>(locationIds.size() + 2);
+        selectionArgs.add(Long.toString(from.toEpochDay()));
+        selectionArgs.add(Long.toString(to.toEpochDay()));
+        appendLocationIdSelection(selection, selectionArgs, locationIds, true);
+
+        List<TidesInfo> days = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_TIDE_DAYS, DAY_COLUMNS,
+                selection.toString(), selectionArgs.toArray(new String[0]),
+                null, null, COLUMN_LOCATION_ID + ", " + COLUMN_EPOCH_DAY)) {
+            while (cursor.moveToNext()) {
+                TidesInfo tidesInfo = readDay(cursor);
+                if (tidesInfo != null) {
+                    days.add(tidesInfo);
+                }
+            }
+        }
+        return days;
+    }
+
+    /**
+     * Returns those days in the range [from, to] for which tides of the location are stored.
+     */
+    public Set<LocalDate> getStoredDates(String locationId, LocalDate from, LocalDate to) {
+        Set<LocalDate> dates = new HashSet<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_TIDE_DAYS,
+                new String[]{COLUMN_EPOCH_DAY},
+                COLUMN_LOCATION_ID + " = ? AND " + COLUMN_EPOCH_DAY + " BETWEEN ? AND ?",
+                new String[]{locationId, Long.toString(from.toEpochDay()), Long.toString(to.toEpochDay())},
+                null, null, null)) {
+            while (cursor.moveToNext()) {
+                dates.add(LocalDate.ofEpochDay(cursor.getLong(0)));
+            }
+        }
+        return dates;
+    }
+
+    /**
+     * Removes the rows that are not needed anymore:
+     * <ul>
+     * <li>all days of locations that are not in usedLocationIds, i.e. not shown by any widget</li>
+     * <li>days before firstDateToKeep. The most recent day of a location is kept if there is no
+     * newer one, so it can still be shown when fetching fails.</li>
+     * </ul>
+     *
+     * @return The number of deleted rows.
+     */
+    public int collectGarbage(Collection<String> usedLocationIds, LocalDate firstDateToKeep) {
+        String firstEpochDay = Long.toString(firstDateToKeep.toEpochDay());
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            StringBuilder unusedSelection = new StringBuilder("1");
+            List<String> unusedSelectionArgs = new ArrayList<>(usedLocationIds.size());
+            appendLocationIdSelection(unusedSelection, unusedSelectionArgs, usedLocationIds, false);
+            int deletedRows = db.delete(TABLE_TIDE_DAYS, unusedSelection.toString(),
+                    unusedSelectionArgs.toArray(new String[0]));
+
+            deletedRows += db.delete(TABLE_TIDE_DAYS,
+                    COLUMN_EPOCH_DAY + " < ? AND " + COLUMN_LOCATION_ID + " IN (SELECT "
+                            + COLUMN_LOCATION_ID + " FROM " + TABLE_TIDE_DAYS + " WHERE "
+                            + COLUMN_EPOCH_DAY + " >= ?)",
+                    new String[]{firstEpochDay, firstEpochDay});
+            db.setTransactionSuccessful();
+            Log.d("TidesStore", "Garbage collection deleted " + deletedRows + " rows");
+            return deletedRows;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Appends "AND location_id [NOT] IN (?, ...)" to the selection. Nothing is appended for an
+     * empty inclusive list. An empty exclusive list matches all rows.
+     */
+    private static void appendLocationIdSelection(StringBuilder selection, List<String> selectionArgs,
+                                                  Collection<String> locationIds, boolean include) {
+        if (locationIds.isEmpty()) {
+            return;
+        }
+        selection.append(" AND ").append(COLUMN_LOCATION_ID).append(include ? " IN (" : " NOT IN (");
+        boolean first = true;
+        for (String locationId : locationIds) {
+            selection.append(first ? "?" : ", ?");
+            selectionArgs.add(locationId);
+            first = false;
+        }
+        selection.append(')');
+    }
+
+    private static void insertDays(SQLiteDatabase db, Collection<TidesInfo> tidesInfos) {
+        ContentValues values = new ContentValues(DAY_COLUMNS.length);
+        for (TidesInfo tidesInfo : tidesInfos) {
+            values.put(COLUMN_LOCATION_ID, tidesInfo.getLocationId());
+            values.put(COLUMN_LOCATION_NAME, tidesInfo.getLocationName());
+            values.put(COLUMN_EPOCH_DAY, tidesInfo.getDate().toEpochDay());
+            values.put(COLUMN_UPDATED, tidesInfo.getUpdatedTime().toEpochSecond(ZoneOffset.UTC));
+            byte[] events = TideEventsCodec.encode(tidesInfo);
+            values.put(COLUMN_EVENTS, events);
+            values.put(COLUMN_EVENTS_CRC, checksum(events));
+            db.insertWithOnConflict(TABLE_TIDE_DAYS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        }
+    }
+
+    /**
+     * @return The TidesInfo of the row at the cursor's position or null if the row is corrupt.
+     */
+    private static TidesInfo readDay(Cursor cursor) {
+        String locationId = cursor.getString(0);
+        String locationName = cursor.getString(1);
+        LocalDate date = LocalDate.ofEpochDay(cursor.getLong(2));
+        LocalDateTime updatedTime = LocalDateTime.ofEpochSecond(cursor.getLong(3), 0, ZoneOffset.UTC);
+        byte[] events = cursor.getBlob(4);
+        if (checksum(events) != cursor.getLong(5)) {
+            Log.e("TidesStore", "Skipping corrupt day " + date + " of " + locationId);
+            return null;
+        }
+        return new TidesInfo(locationId, locationName, TideEventsCodec.decode(events), date, updatedTime);
+    }
+
+    private static long checksum(byte[] events) {
+        CRC32 crc = new CRC32();
+        crc.update(events);
+        return crc.getValue();
+    }
+
+    /**
+     * Imports the days of the per-widget cache that was used before this store into the new
+     * table, then deletes the old cache. This runs once, when the database is created, in the same
+     * transaction as the table creation. Entries that cannot be read are skipped; they only contain
+     * data that can be fetched again. If several widgets cached the same day of a location, the
+     * most recently updated one is kept.
+     */
+    private void importLegacyCaches(SQLiteDatabase db) {
+        Map<String, TidesInfo> days = new HashMap<>();
+        SharedPreferences cachePrefs = context.getSharedPreferences(
+                LEGACY_CACHE_PREFERENCES, Context.MODE_PRIVATE);
+        for (String key : cachePrefs.getAll().keySet()) {
+            if (key.startsWith(LEGACY_KEY_LOC_ID)) {
+                addLegacyDay(days, readLegacyCacheEntry(cachePrefs,
+                        key.substring(LEGACY_KEY_LOC_ID.length())));
+            }
+        }
+
+        insertDays(db, days.values());
+        Log.d("TidesStore", "Imported " + days.size() + " days from the legacy cache");
+        cachePrefs.edit().clear().apply();
+    }
+
+    /**
+     * Reads the cache entry of a widget.
+     *
+     * @return The cached TidesInfo or null if the entry is incomplete or malformed.
+     */
+    private static TidesInfo readLegacyCacheEntry(SharedPreferences prefs, String widgetIdSuffix) {
+        String locationId = prefs.getString(LEGACY_KEY_LOC_ID + widgetIdSuffix, null);
+        if (locationId == null) {
+            return null;
+        }
+        try {
+            String locationName = prefs.getString(LEGACY_KEY_LOC_NAME + widgetIdSuffix, "");
+            LocalDate date = LocalDate.parse(prefs.getString(LEGACY_KEY_DATE + widgetIdSuffix, ""));
+            LocalDateTime updatedTime = LocalDateTime.parse(
+                    prefs.getString(LEGACY_KEY_LAST_UPDATED + widgetIdSuffix, ""));
+            TideTime highTide1 = readLegacyTideTime(prefs, LEGACY_KEY_HIGH_TIDE_1 + widgetIdSuffix);
+            TideTime highTide2 = readLegacyTideTime(prefs, LEGACY_KEY_HIGH_TIDE_2 + widgetIdSuffix);
+            TideTime lowTide1 = readLegacyTideTime(prefs, LEGACY_KEY_LOW_TIDE_1 + widgetIdSuffix);
+            TideTime lowTide2 = readLegacyTideTime(prefs, LEGACY_KEY_LOW_TIDE_2 + widgetIdSuffix);
+            return new TidesInfo(locationId, locationName, date,
+                    lowTide1, lowTide2, highTide1, highTide2, updatedTime);
+        } catch (DateTimeParseException | ClassCastException e) {
+            Log.e("TidesStore", "Skipping malformed cache entry of widget " + widgetIdSuffix);
+            return null;
+        }
+    }
+
+    private static TideTime readLegacyTideTime(SharedPreferences prefs, String key) {
+        switch (prefs.getString(key + "_type", "")) {
+            case LEGACY_TIDE_TYPE_NORMAL:
+                return new NormalTideTime(LocalDateTime.parse(prefs.getString(key, "")));
+            case LEGACY_TIDE_TYPE_SHIFTED:
+                return new ShiftedTideTime();
+            default:
+                return new NonExistentTideTime();
+        }
+    }
+
+    private static void addLegacyDay(Map<String, TidesInfo> days, TidesInfo tidesInfo) {
+        if (tidesInfo == null) {
+            return;
+        }
+        String key = tidesInfo.getLocationId() + "|" + tidesInfo.getDate().toEpochDay();
+        TidesInfo existing = days.get(key);
+        if (existing == null || existing.getUpdatedTime().isBefore(tidesInfo.getUpdatedTime())) {
+            days.put(key, tidesInfo);
+        }
+    }
+}
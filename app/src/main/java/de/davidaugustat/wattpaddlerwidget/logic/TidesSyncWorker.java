@@ -0,0 +1,127 @@
+package de.davidaugustat.wattpaddlerwidget.logic;
+
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+import de.davidaugustat.wattpaddlerwidget.Constants;
+import de.davidaugustat.wattpaddlerwidget.data.Location;
+import de.davidaugustat.wattpaddlerwidget.data.TidesInfo;
+import de.davidaugustat.wattpaddlerwidget.ui.MainWidget;
+
+/**
+ * Background work that completes the prefetch window of every location that is shown by a
+ * widget. Every location is synced once, no matter how many widgets show it. The work is
+ * scheduled by the {@link SyncScheduler}.
+ * <p>
+ * If a request fails because of a network error, the remaining requests are skipped and the work
+ * is retried with exponential backoff. Days that have been stored already are not fetched again.
+ * After new days have been stored, all widgets are updated from the local data.
+ */
+public class TidesSyncWorker extends Worker {
+
+    /**
+     * Source of the tides of a single day.
+     */
+    public interface TidesSource {
+        /**
+         * @throws IOException              In case of a network error.
+         * @throws IllegalArgumentException If the data is malformed.
+         */
+        TidesInfo fetchTides(Location location, LocalDate date) throws IOException;
+    }
+
+    private final TidesSource tidesSource;
+    private final Clock clock;
+
+    public TidesSyncWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
+        this(context, workerParams, (location, date) -> new DataFetcher(context)
+                .fetchTidesDataSingleDayBlocking(location, DateTimeHelper.getDateInQueryNotation(date)),
+                Clock.systemDefaultZone());
+    }
+
+    @VisibleForTesting
+    public TidesSyncWorker(@NonNull Context context, @NonNull WorkerParameters workerParams,
+                           TidesSource tidesSource, Clock clock) {
+        super(context, workerParams);
+        this.tidesSource = tidesSource;
+        this.clock = clock;
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        TidesPrefetcher prefetcher = new TidesPrefetcher(context);
+        LocalDate today = LocalDate.now(clock);
+        Set<Location> locations = SharedPreferencesHelper.getAllLocations(context);
+        Log.d("TidesSyncWorker", "Syncing " + locations.size() + " locations, attempt "
+                + getRunAttemptCount());
+
+        int fetchedDays = 0;
+        boolean networkError = false;
+        for (Location location : locations) {
+            List<LocalDate> missingDates = prefetcher.getMissingDates(location, today);
+            for (LocalDate date : missingDates) {
+                try {
+                    prefetcher.storeTides(tidesSource.fetchTides(location, date));
+                    fetchedDays++;
+                } catch (IOException e) {
+                    Log.d("TidesSyncWorker", "Network error for " + location.getId() + " on "
+                            + date + ": " + e.getMessage());
+                    networkError = true;
+                    break;
+                } catch (IllegalArgumentException e) {
+                    // Retrying does not help against malformed data. The day is tried again at the
+                    // next sync.
+                    Log.e("TidesSyncWorker", "Malformed tides for " + location.getId() + " on "
+                            + date + ": " + e.getMessage());
+                }
+            }
+            if (networkError) {
+                break;
+            }
+        }
+
+        prefetcher.collectGarbage(today);
+        if (fetchedDays > 0) {
+            updateAllWidgets(context);
+        }
+        Log.d("TidesSyncWorker", "Fetched " + fetchedDays + " days");
+        UpdateMetrics.getInstance(context).saveIfChanged();
+
+        if (!networkError) {
+            return Result.success();
+        }
+        return getRunAttemptCount() + 1 < Constants.SYNC_MAX_ATTEMPTS ? Result.retry() : Result.failure();
+    }
+
+    /**
+     * Sends an update broadcast to all widgets. As their data is stored locally now, they are
+     * rendered without network access.
+     */
+    private static void updateAllWidgets(Context context) {
+        int[] appWidgetIds = AppWidgetManager.getInstance(context)
+                .getAppWidgetIds(new ComponentName(context, MainWidget.class));
+        if (appWidgetIds.length == 0) {
+            return;
+        }
+        Intent intent = new Intent(context, MainWidget.class);
+        intent.setAction(AppWidgetManager.ACTION_APPWIDGET_UPDATE);
+        intent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS, appWidgetIds);
+        context.sendBroadcast(intent);
+    }
+}
@@ -0,0 +1,283 @@
+package de.davidaugustat.wattpaddlerwidget.logic;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.WorkerThread;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import de.davidaugustat.wattpaddlerwidget.data.TidesInfo;
+
+/**
+ * Write-behind layer in front of the {@link TidesStore}.
+ * <p>
+ * When many widgets update at the same time, every fetched or predicted day would otherwise be
+ * written in its own SQLite transaction, each of which syncs the database to the disk. Instead,
+ * the days are collected for {@link #FLUSH_WINDOW_MILLIS} and then written in a single
+ * transaction. A day that is written again within the window replaces the earlier write.
+ * <p>
+ * Before {@link #put(TidesInfo)} returns, the day is appended to a journal file (see
+ * {@link TidesJournalCodec}) and the journal is synced to the disk. If the process is killed or
+ * the device loses power before the flush, the journal is replayed into the store at the next
+ * start, so a day that was put is as durable as one written to the store directly. The replay runs
+ * on the flush thread as soon as the instance has been created, or on the calling thread if a
+ * method is called before it has run. A single
+ * append and sync is still much cheaper than a SQLite transaction, which syncs both its rollback
+ * journal and the database. The journal is deleted after every successful flush.
+ * <p>
+ * Days that have not been flushed yet are returned by {@link #getPendingDays(String)}, so that
+ * readers of the store can see them. The number of logical writes and of transactions is
+ * recorded in the {@link UpdateMetrics}.
+ * <p>
+ * This class is thread-safe. All methods perform disk I/O and must not be called on the main
+ * thread.
+ */
+public class TidesWriteBehind {
+
+    private static final String JOURNAL_FILE_NAME = "tides.journal";
+
+    /**
+     * Time after the first write during which further writes are collected.
+     */
+    private static final long FLUSH_WINDOW_MILLIS = 2000;
+
+    /**
+     * Number of pending days at which a flush is started right away, e.g. during a sync.
+     */
+    private static final int MAX_PENDING_DAYS = 64;
+
+    private static TidesWriteBehind instance;
+
+    private final Context context;
+    private final File journalFile;
+    private final ScheduledExecutorService flushExecutor = Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+                Thread thread = new Thread(runnable, "TidesWriteBehind");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * Days that have not been flushed yet, keyed by location ID and epoch day.
+     */
+    private final Map<String, TidesInfo> pendingDays = new LinkedHashMap<>();
+
+    /**
+     * Number of calls to {@link #put(TidesInfo)} since the last flush, including the ones whose
+     * day was replaced by a later call.
+     */
+    private int pendingWrites = 0;
+    private boolean journalReplayed = false;
+    private FileOutputStream journal;
+    private ScheduledFuture<?> scheduledFlush;
+
+    private TidesWriteBehind(Context context) {
+        this.context = context;
+        this.journalFile = new File(context.getFilesDir(), JOURNAL_FILE_NAME);
+        // The replay reads the journal and writes to the store, which must not happen while
+        // getInstance() holds the class lock:
+        flushExecutor.execute(this::ensureJournalReplayed);
+    }
+
+    public static synchronized TidesWriteBehind getInstance(Context context) {
+        if (instance == null) {
+            instance = new TidesWriteBehind(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Writes the tides of a single day. The day is journaled and synced to the disk right away
+     * and written to the store with the next flush.
+     */
+    @WorkerThread
+    public synchronized void put(TidesInfo tidesInfo) {
+        ensureJournalReplayed();
+        try {
+            if (journal == null) {
+                journal = new FileOutputStream(journalFile, true);
+            }
+            journal.write(TidesJournalCodec.encodeRecord(tidesInfo));
+            journal.getFD().sync();
+        } catch (IOException e) {
+            // Without the journal the write could get lost, so write it through instead.
+            Log.e("TidesWriteBehind", "Cannot append to the journal", e);
+            addPending(tidesInfo);
+            flush();
+            if (!pendingDays.isEmpty()) {
+                // The journal may end with a partial record now, after which appended records
+                // could not be replayed. Replace it by the complete records of the pending days.
+                rewriteJournal();
+            }
+            return;
+        }
+        addPending(tidesInfo);
+        if (pendingDays.size() >= MAX_PENDING_DAYS) {
+            scheduleFlush(0);
+        } else if (scheduledFlush == null) {
+            scheduleFlush(FLUSH_WINDOW_MILLIS);
+        }
+    }
+
+    /**
+     * Returns the days of the location that have not been written to the store yet.
+     */
+    @WorkerThread
+    public synchronized List<TidesInfo> getPendingDays(String locationId) {
+        ensureJournalReplayed();
+        List<TidesInfo> days = Collections.emptyList();
+        for (TidesInfo tidesInfo : pendingDays.values()) {
+            if (tidesInfo.getLocationId().equals(locationId)) {
+                if (days.isEmpty()) {
+                    days = new ArrayList<>();
+                }
+                days.add(tidesInfo);
+            }
+        }
+        return days;
+    }
+
+    /**
+     * Writes all pending days to the store in a single transaction and deletes the journal. If
+     * writing fails, the days stay pending and the flush is retried after the flush window.
+     */
+    @WorkerThread
+    public synchronized void flush() {
+        ensureJournalReplayed();
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (pendingDays.isEmpty()) {
+            return;
+        }
+        long startMillis = UpdateMetrics.startTimer();
+        try {
+            TidesStore.getInstance(context).putDays(pendingDays.values());
+        } catch (RuntimeException e) {
+            Log.e("TidesWriteBehind", "Cannot write " + pendingDays.size() + " days", e);
+            scheduleFlush(FLUSH_WINDOW_MILLIS);
+            return;
+        }
+        UpdateMetrics metrics = UpdateMetrics.getInstance(context);
+        metrics.recordSince(UpdateMetrics.Phase.STORE_FLUSH, startMillis);
+        metrics.add(UpdateMetrics.Counter.STORE_LOGICAL_WRITES, pendingWrites);
+        metrics.increment(UpdateMetrics.Counter.STORE_PHYSICAL_WRITES);
+        Log.d("TidesWriteBehind", "Flushed " + pendingWrites + " writes as " + pendingDays.size()
+                + " days in one transaction");
+
+        pendingDays.clear();
+        pendingWrites = 0;
+        closeJournal();
+        if (!journalFile.delete() && journalFile.exists()) {
+            Log.e("TidesWriteBehind", "Cannot delete the journal");
+        }
+    }
+
+    private void addPending(TidesInfo tidesInfo) {
+        pendingDays.put(tidesInfo.getLocationId() + "|" + tidesInfo.getDate().toEpochDay(), tidesInfo);
+        pendingWrites++;
+    }
+
+    private void scheduleFlush(long delayMillis) {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+        }
+        scheduledFlush = flushExecutor.schedule(this::flush, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Replays the journal of the previous process unless this has been done already. Every other
+     * method calls this first, so that no record is appended to the journal before it has been
+     * read and no pending day of the previous process is missed.
+     */
+    private synchronized void ensureJournalReplayed() {
+        if (journalReplayed) {
+            return;
+        }
+        journalReplayed = true;
+        replayJournal();
+    }
+
+    /**
+     * Writes the days of a journal that was left behind by a previous process to the store. An
+     * incomplete record at the end of the journal is dropped; its write had not returned yet. The
+     * journal is flushed right away, because new records must not be appended after such a
+     * record.
+     */
+    private void replayJournal() {
+        if (!journalFile.exists()) {
+            return;
+        }
+        try (InputStream in = new FileInputStream(journalFile)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) journalFile.length());
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            List<TidesInfo> records = TidesJournalCodec.decodeRecords(out.toByteArray());
+            for (TidesInfo tidesInfo : records) {
+                addPending(tidesInfo);
+            }
+            Log.d("TidesWriteBehind", "Replayed " + records.size() + " writes from the journal");
+        } catch (IOException e) {
+            Log.e("TidesWriteBehind", "Cannot read the journal", e);
+        }
+        flush();
+        if (!pendingDays.isEmpty()) {
+            // The store is not writable right now. Drop a possibly incomplete record from the
+            // journal, so that records appended later can be read.
+            rewriteJournal();
+        }
+    }
+
+    /**
+     * Replaces the journal by the records of the pending days. If this fails, the journal is
+     * deleted, so that records appended later do not follow a partial record. The pending days
+     * are still written with the next flush then, but are not durable until it succeeds.
+     */
+    private void rewriteJournal() {
+        closeJournal();
+        try {
+            journal = new FileOutputStream(journalFile, false);
+            for (TidesInfo tidesInfo : pendingDays.values()) {
+                journal.write(TidesJournalCodec.encodeRecord(tidesInfo));
+            }
+            journal.getFD().sync();
+        } catch (IOException e) {
+            Log.e("TidesWriteBehind", "Cannot rewrite the journal", e);
+            closeJournal();
+            if (!journalFile.delete() && journalFile.exists()) {
+                Log.e("TidesWriteBehind", "Cannot delete the journal");
+            }
+        }
+    }
+
+    private void closeJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            Log.e("TidesWriteBehind", "Cannot close the journal", e);
+        }
+        journal = null;
+    }
+}
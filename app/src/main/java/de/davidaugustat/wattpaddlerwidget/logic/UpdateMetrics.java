@@ -0,0 +1,365 @@
+package de.davidaugustat.wattpaddlerwidget.logic;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import androidx.annotation.WorkerThread;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import de.davidaugustat.wattpaddlerwidget.BuildConfig;
+import de.davidaugustat.wattpaddlerwidget.Constants;
+
+/**
+ * Records latencies and outcomes of the widget update path.
+ * <p>
+ * The durations of every {@link Phase} are collected in a {@link LatencyHistogram}, events like
+ * cache hits or errors in {@link Counter}s. The data is kept per day for a rolling window of
+ * {@link Constants#METRICS_WINDOW_DAYS} days and stored in the app's files directory, at most once
+ * per minute and whenever a widget update batch or a sync has finished (see
+ * {@link #saveIfChanged()}), as the process usually ends within seconds. {@link #dump()} creates a text report that includes device
+ * and app version, so that reports of different devices and releases can be compared.
+ * <p>
+ * This class is thread-safe. The stored metrics are loaded at the first access. As loading and
+ * saving perform disk I/O, the record methods and {@link #dump()} must not be called on the main
+ * thread.
+ */
+public class UpdateMetrics {
+
+    /**
+     * Phases of a widget update. Body read and parse overlap because the response is parsed while
+     * it is streamed.
+     */
+    public enum Phase {
+        /** Time a widget update task waited in the queue of the {@link WidgetUpdateExecutor}. */
+        QUEUE_WAIT,
+        DNS,
+        /** TCP and TLS connection setup. */
+        CONNECT,
+        /** Time from sending the request headers to receiving the first response header byte. */
+        TIME_TO_FIRST_BYTE,
+        BODY_READ,
+        PARSE,
+        /** Writing tides as seen by the update path, i.e. journaling them. */
+        STORE_WRITE,
+        /** Writing the collected tides to the store (see {@link TidesWriteBehind}). */
+        STORE_FLUSH,
+        /** Building the RemoteViews and pushing them to the AppWidgetManager. */
+        RENDER
+    }
+
+    public enum Counter {
+        BYTES_RECEIVED,
+        CACHE_HIT,
+        CACHE_CONDITIONAL_HIT,
+        CACHE_MISS,
+        REQUEST_SUCCESS,
+        NETWORK_ERROR,
+        HTTP_ERROR,
+        MALFORMED_RESPONSE,
+        /** Retries of failed requests (see {@link RetryInterceptor}). */
+        RETRY,
+        /** Failed requests that were not retried because the retry budget was used up. */
+        RETRY_BUDGET_EXHAUSTED,
+        /** Days passed to the {@link TidesWriteBehind}. */
+        STORE_LOGICAL_WRITES,
+        /** Transactions in which the {@link TidesWriteBehind} wrote them to the store. */
+        STORE_PHYSICAL_WRITES,
+        /** Broadcasts that were finished by the deadline of their {@link WidgetUpdateExecutor.Batch}. */
+        BATCH_DEADLINE_EXPIRED
+    }
+
+    private static final String FILE_NAME = "update_metrics.bin";
+    private static final int MAGIC = 0x5750554D; // "WPUM"
+    private static final int VERSION = 1;
+    private static final long SAVE_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static UpdateMetrics instance;
+
+    private final AtomicFile file;
+
+    /**
+     * Metrics of the days in the window, oldest first. The last entry is the current day.
+     */
+    private final ArrayDeque<DayMetrics> days = new ArrayDeque<>();
+    private boolean loaded = false;
+    private long lastSaveMillis = SystemClock.elapsedRealtime();
+
+    /**
+     * true iff something has been recorded since the last save.
+     */
+    private boolean changed = false;
+
+    private UpdateMetrics(Context context) {
+        this.file = new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+    }
+
+    public static synchronized UpdateMetrics getInstance(Context context) {
+        if (instance == null) {
+            instance = new UpdateMetrics(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the current time to be passed to {@link #recordSince(Phase, long)}.
+     */
+    public static long startTimer() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Records the time that has passed since the start time as duration of the phase.
+     *
+     * @param startMillis Value returned by {@link #startTimer()}
+     */
+    public void recordSince(Phase phase, long startMillis) {
+        record(phase, SystemClock.elapsedRealtime() - startMillis);
+    }
+
+    public void record(Phase phase, long durationMillis) {
+        getCurrentDay().histograms[phase.ordinal()].record(durationMillis);
+        saveIfDue();
+    }
+
+    public void increment(Counter counter) {
+        add(counter, 1);
+    }
+
+    public void add(Counter counter, long amount) {
+        getCurrentDay().counters.addAndGet(counter.ordinal(), amount);
+        saveIfDue();
+    }
+
+    /**
+     * Returns the metrics of the current day. Starts a new day if the date has changed and drops
+     * days that have left the window.
+     */
+    private synchronized DayMetrics getCurrentDay() {
+        ensureLoaded();
+        long today = LocalDate.now().toEpochDay();
+        DayMetrics currentDay = days.peekLast();
+        if (currentDay == null || currentDay.epochDay != today) {
+            currentDay = new DayMetrics(today);
+            days.addLast(currentDay);
+        }
+        while (days.size() > Constants.METRICS_WINDOW_DAYS
+                || days.peekFirst().epochDay <= today - Constants.METRICS_WINDOW_DAYS) {
+            days.removeFirst();
+        }
+        return currentDay;
+    }
+
+    private synchronized void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        try {
+            days.addAll(decode(file.readFully()));
+        } catch (IOException e) {
+            // No (valid) metrics stored yet, start with an empty window.
+        }
+    }
+
+    private void saveIfDue() {
+        synchronized (this) {
+            changed = true;
+            if (SystemClock.elapsedRealtime() - lastSaveMillis < SAVE_INTERVAL_MILLIS) {
+                return;
+            }
+            lastSaveMillis = SystemClock.elapsedRealtime();
+        }
+        save();
+    }
+
+    /**
+     * Stores the metrics of the window if anything has been recorded since the last save.
+     */
+    @WorkerThread
+    public void saveIfChanged() {
+        synchronized (this) {
+            if (!changed) {
+                return;
+            }
+        }
+        save();
+    }
+
+    /**
+     * Stores the metrics of the window.
+     */
+    @WorkerThread
+    public void save() {
+        byte[] encoded;
+        synchronized (this) {
+            ensureLoaded();
+            changed = false;
+            lastSaveMillis = SystemClock.elapsedRealtime();
+            encoded = encode(new ArrayList<>(days));
+        }
+        synchronized (file) {
+            FileOutputStream outputStream = null;
+            try {
+                outputStream = file.startWrite();
+                outputStream.write(encoded);
+                file.finishWrite(outputStream);
+            } catch (IOException e) {
+                Log.e("UpdateMetrics", "Cannot save metrics", e);
+                if (outputStream != null) {
+                    file.failWrite(outputStream);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a text report of the metrics of the whole window.
+     */
+    @WorkerThread
+    public String dump() {
+        List<DayMetrics> window;
+        synchronized (this) {
+            ensureLoaded();
+            window = new ArrayList<>(days);
+        }
+        DayMetrics total = new DayMetrics(0);
+        for (DayMetrics day : window) {
+            total.add(day);
+        }
+
+        StringBuilder report = new StringBuilder();
+        report.append("App version: ").append(BuildConfig.VERSION_NAME)
+                .append(" (").append(BuildConfig.VERSION_CODE).append(")\n");
+        report.append("Device: ").append(Build.MANUFACTURER).append(' ').append(Build.MODEL)
+                .append(", Android ").append(Build.VERSION.RELEASE).append('\n');
+        report.append("Window: ").append(window.size()).append(" days");
+        if (!window.isEmpty()) {
+            report.append(" since ").append(LocalDate.ofEpochDay(window.get(0).epochDay));
+        }
+        report.append("\n\nPhases:\n");
+        for (Phase phase : Phase.values()) {
+            report.append(phase).append(": ").append(total.histograms[phase.ordinal()]).append('\n');
+        }
+        report.append("\nCounters:\n");
+        for (Counter counter : Counter.values()) {
+            report.append(counter).append(": ").append(total.counters.get(counter.ordinal())).append('\n');
+        }
+        long physicalWrites = total.counters.get(Counter.STORE_PHYSICAL_WRITES.ordinal());
+        if (physicalWrites > 0) {
+            long logicalWrites = total.counters.get(Counter.STORE_LOGICAL_WRITES.ordinal());
+            report.append(String.format(Locale.ROOT, "Logical writes per store transaction: %.2f\n",
+                    (double) logicalWrites / physicalWrites));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Encodes the days into the following layout (big endian):
+     * <pre>
+     * int    magic number
+     * int    format version
+     * int    number of phases, int number of counters, int number of buckets
+     * int    number of days
+     * per day: long epoch day, long per counter, long per bucket of every phase
+     * </pre>
+     */
+    static byte[] encode(List<DayMetrics> days) {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(byteStream)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(Phase.values().length);
+            out.writeInt(Counter.values().length);
+            out.writeInt(LatencyHistogram.BUCKET_COUNT);
+            out.writeInt(days.size());
+            for (DayMetrics day : days) {
+                out.writeLong(day.epochDay);
+                for (int i = 0; i < day.counters.length(); i++) {
+                    out.writeLong(day.counters.get(i));
+                }
+                for (LatencyHistogram histogram : day.histograms) {
+                    histogram.writeTo(out);
+                }
+            }
+        } catch (IOException e) {
+            // Cannot happen when writing to a byte array.
+            throw new IllegalStateException(e);
+        }
+        return byteStream.toByteArray();
+    }
+
+    /**
+     * Decodes the stored days.
+     *
+     * @throws IOException If the data is truncated or was written with a different layout, e.g.
+     *                     by a release with other phases or counters.
+     */
+    static List<DayMetrics> decode(byte[] data) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                    || in.readInt() != Phase.values().length
+                    || in.readInt() != Counter.values().length
+                    || in.readInt() != LatencyHistogram.BUCKET_COUNT) {
+                throw new IOException("Incompatible metrics file");
+            }
+            int dayCount = in.readInt();
+            if (dayCount < 0 || dayCount > Constants.METRICS_WINDOW_DAYS) {
+                throw new IOException("Invalid number of days: " + dayCount);
+            }
+            List<DayMetrics> days = new ArrayList<>(dayCount);
+            for (int d = 0; d < dayCount; d++) {
+                DayMetrics day = new DayMetrics(in.readLong());
+                for (int i = 0; i < day.counters.length(); i++) {
+                    day.counters.set(i, in.readLong());
+                }
+                for (int i = 0; i < day.histograms.length; i++) {
+                    day.histograms[i] = LatencyHistogram.readFrom(in);
+                }
+                days.add(day);
+            }
+            return days;
+        }
+    }
+
+    /**
+     * Metrics of a single day.
+     */
+    static class DayMetrics {
+        final long epochDay;
+        final LatencyHistogram[] histograms = new LatencyHistogram[Phase.values().length];
+        final AtomicLongArray counters = new AtomicLongArray(Counter.values().length);
+
+        DayMetrics(long epochDay) {
+            this.epochDay = epochDay;
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i] = new LatencyHistogram();
+            }
+        }
+
+        void add(DayMetrics other) {
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i].add(other.histograms[i]);
+            }
+            for (int i = 0; i < counters.length(); i++) {
+                counters.addAndGet(i, other.counters.get(i));
+            }
+        }
+    }
+}
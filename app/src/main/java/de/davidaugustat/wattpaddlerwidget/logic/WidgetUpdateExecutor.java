@@ -0,0 +1,251 @@
+package de.davidaugustat.wattpaddlerwidget.logic;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background execution stage for widget updates.
+ * <p>
+ * Resolving the locations, reading and writing the tides store and building the RemoteViews all
+ * run on background threads, so that the main thread of the widget's broadcast receiver stays
+ * free, e.g. during boot when many receivers fire at once. The final push to the AppWidgetManager
+ * is a binder call and is made from the background thread as well.
+ * <p>
+ * At most {@link #MAX_CONCURRENT_TASKS} tasks run at the same time. Queued tasks are started in
+ * the order of their priority (see the PRIORITY_* constants) and, within the same priority, in
+ * the order in which they have been submitted. This way a tap on the refresh button is handled
+ * right away even if many periodic updates are queued.
+ * <p>
+ * Work that is triggered by a broadcast is submitted through a {@link Batch}, which keeps the
+ * broadcast alive via {@link BroadcastReceiver#goAsync()} until all of its tasks and pending
+ * callbacks have finished. Without it, the system may kill the process as soon as onReceive()
+ * returns and the result of a network request would be lost.
+ * <p>
+ * A broadcast must be finished within 10 seconds, but a single request may take up to its call
+ * deadline of 15 seconds and only {@link #MAX_CONCURRENT_TASKS} tasks run at the same time. Every
+ * batch therefore has its own deadline of {@link #BATCH_DEADLINE_MILLIS}. When it expires, the
+ * broadcast is finished and a background sync is requested from the {@link SyncScheduler}, which
+ * fetches the missing tides with WorkManager and updates all widgets. Tasks that are still running
+ * or queued are not cancelled; their result is displayed if the process lives long enough.
+ */
+public class WidgetUpdateExecutor {
+
+    /**
+     * The user tapped the refresh button of a widget.
+     */
+    public static final int PRIORITY_MANUAL = 0;
+
+    /**
+     * A widget has just been configured and does not show any data yet.
+     */
+    public static final int PRIORITY_NEW_WIDGET = 1;
+
+    /**
+     * Periodic updates, day changes and maintenance.
+     */
+    public static final int PRIORITY_PERIODIC = 2;
+
+    private static final int MAX_CONCURRENT_TASKS = 2;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Time after which a batch finishes its broadcast even if work is still pending. This leaves
+     * a margin to the 10 seconds after which the system considers a broadcast as not responding.
+     */
+    private static final long BATCH_DEADLINE_MILLIS = 8000;
+
+    private static final AtomicLong taskSequence = new AtomicLong();
+    private static final ThreadPoolExecutor executor = createExecutor();
+    private static final ScheduledExecutorService deadlineTimer =
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "WidgetUpdateDeadline");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private static ThreadPoolExecutor createExecutor() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(
+                MAX_CONCURRENT_TASKS, MAX_CONCURRENT_TASKS,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(),
+                runnable -> new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }, "WidgetUpdate-" + threadNumber.incrementAndGet()));
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        return threadPoolExecutor;
+    }
+
+    /**
+     * Starts a batch of work for a broadcast. This calls goAsync() on the receiver, so it must be
+     * called from within its onReceive() (or one of the callbacks of an AppWidgetProvider).
+     *
+     * @param receiver Receiver that is currently handling a broadcast
+     * @param context  Context used to record the queue wait times in the {@link UpdateMetrics} and
+     *                 to request a sync when the deadline of the batch expires
+     * @param priority Priority of all tasks of the batch, one of the PRIORITY_* constants
+     */
+    public static Batch startBatch(BroadcastReceiver receiver, Context context, int priority) {
+        return new Batch(receiver.goAsync(), context.getApplicationContext(), priority);
+    }
+
+    /**
+     * Runs the task on a background thread with the given priority. Exceptions are logged and do
+     * not affect other tasks.
+     */
+    public static void execute(int priority, Runnable task) {
+        executor.execute(new PrioritizedTask(priority, taskSequence.getAndIncrement(), task));
+    }
+
+    /**
+     * Group of tasks and asynchronous callbacks that belong to a single broadcast. The broadcast
+     * is finished as soon as all of them are done, or when the deadline of the batch expires.
+     */
+    public static class Batch {
+        private final BroadcastReceiver.PendingResult pendingResult;
+        private final Context context;
+        private final UpdateMetrics metrics;
+        private final int priority;
+        private final AtomicInteger pendingWork = new AtomicInteger();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private final ScheduledFuture<?> deadline;
+
+        private Batch(BroadcastReceiver.PendingResult pendingResult, Context context,
+                      int priority) {
+            this.pendingResult = pendingResult;
+            this.context = context;
+            this.metrics = UpdateMetrics.getInstance(context);
+            this.priority = priority;
+            this.deadline = deadlineTimer.schedule(this::expire, BATCH_DEADLINE_MILLIS,
+                    TimeUnit.MILLISECONDS);
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        /**
+         * Runs the task on the executor with the priority of the batch. The broadcast is kept
+         * alive until the task has finished.
+         */
+        public void execute(Runnable task) {
+            retain();
+            long enqueuedMillis = UpdateMetrics.startTimer();
+            WidgetUpdateExecutor.execute(priority, () -> {
+                try {
+                    metrics.recordSince(UpdateMetrics.Phase.QUEUE_WAIT, enqueuedMillis);
+                    task.run();
+                } finally {
+                    release();
+                }
+            });
+        }
+
+        /**
+         * Keeps the broadcast alive until the returned executor is used for the first time and
+         * the task passed to it has finished. This is meant for asynchronous APIs that invoke
+         * exactly one of several callbacks, e.g. the success or the error callback of a request.
+         *
+         * @return Executor that runs the callback as part of this batch
+         */
+        public Executor retainUntilCallback() {
+            retain();
+            AtomicBoolean called = new AtomicBoolean();
+            return task -> {
+                execute(task);
+                if (called.compareAndSet(false, true)) {
+                    release();
+                }
+            };
+        }
+
+        private void retain() {
+            pendingWork.incrementAndGet();
+        }
+
+        private void release() {
+            if (pendingWork.decrementAndGet() == 0) {
+                deadline.cancel(false);
+                // This runs on the executor, as the last piece of work is always a task.
+                finish();
+            }
+        }
+
+        /**
+         * Finishes the broadcast although work is still pending and hands the update over to a
+         * background sync.
+         */
+        private void expire() {
+            if (finished.get()) {
+                return;
+            }
+            int pending = pendingWork.get();
+            if (pending > 0) {
+                Log.w("WidgetUpdateExecutor", "Batch deadline expired with " + pending
+                        + " pending tasks or callbacks, requesting a sync");
+                metrics.increment(UpdateMetrics.Counter.BATCH_DEADLINE_EXPIRED);
+                SyncScheduler.requestSync(context);
+            }
+            finish();
+        }
+
+        /**
+         * Finishes the broadcast exactly once. The process may end soon afterwards, so the
+         * metrics are saved first.
+         */
+        private void finish() {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            metrics.saveIfChanged();
+            if (pendingResult != null) {
+                pendingResult.finish();
+            }
+        }
+    }
+
+    private static class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+        private final int priority;
+        private final long sequence;
+        private final Runnable task;
+
+        PrioritizedTask(int priority, long sequence, Runnable task) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                Log.e("WidgetUpdateExecutor", "Widget update task failed", e);
+            }
+        }
+
+        @Override
+        public int compareTo(@NonNull PrioritizedTask other) {
+            if (priority != other.priority) {
+                return Integer.compare(priority, other.priority);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
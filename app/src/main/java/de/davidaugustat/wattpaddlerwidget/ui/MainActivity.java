@@ -3,14 +3,55 @@ package de.davidaugustat.wattpaddlerwidget.ui;
 import androidx.appcompat.app.AppCompatActivity;
 
 import android.os.Bundle;
+import android.util.Log;
+import android.view.View;
+import android.widget.TextView;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import de.davidaugustat.wattpaddlerwidget.Constants;
 import de.davidaugustat.wattpaddlerwidget.R;
+import de.davidaugustat.wattpaddlerwidget.logic.UpdateMetrics;
 
 public class MainActivity extends AppCompatActivity {
 
+    private final ExecutorService diskExecutor = Executors.newSingleThreadExecutor();
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+
+        if (Constants.SHOW_DEBUG) {
+            showMetrics();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        diskExecutor.shutdown();
+    }
+
+    /**
+     * Shows the report of the update metrics (see {@link UpdateMetrics}) as debug screen. The
+     * text can be selected and copied. It is also written to the log, so that it can be exported
+     * via adb logcat.
+     */
+    private void showMetrics() {
+        View metricsScrollView = findViewById(R.id.metricsScrollView);
+        TextView metricsTextView = findViewById(R.id.textViewMetrics);
+        metricsScrollView.setVisibility(View.VISIBLE);
+
+        diskExecutor.execute(() -> {
+            String report = UpdateMetrics.getInstance(this).dump();
+            Log.i("UpdateMetrics", report);
+            runOnUiThread(() -> {
+                if (!isDestroyed()) {
+                    metricsTextView.setText(report);
+                }
+            });
+        });
     }
-}
\ No newline at end of file
+}
@@ -3,12 +3,22 @@ package de.davidaugustat.wattpaddlerwidget.ui;
 import android.app.PendingIntent;
 import android.appwidget.AppWidgetManager;
 import android.appwidget.AppWidgetProvider;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.os.Bundle;
 import android.util.Log;
-import android.view.View;
 import android.widget.RemoteViews;
 
+import androidx.annotation.WorkerThread;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 import de.davidaugustat.wattpaddlerwidget.Constants;
@@ -17,7 +27,13 @@ import de.davidaugustat.wattpaddlerwidget.data.Location;
 import de.davidaugustat.wattpaddlerwidget.data.TidesInfo;
 import de.davidaugustat.wattpaddlerwidget.logic.AppPackageDetectionHelper;
 import de.davidaugustat.wattpaddlerwidget.logic.DataFetcher;
+import de.davidaugustat.wattpaddlerwidget.logic.DayChangeAlarmHelper;
+import de.davidaugustat.wattpaddlerwidget.logic.FreshnessPolicy;
 import de.davidaugustat.wattpaddlerwidget.logic.SharedPreferencesHelper;
+import de.davidaugustat.wattpaddlerwidget.logic.SyncScheduler;
+import de.davidaugustat.wattpaddlerwidget.logic.TidesPrefetcher;
+import de.davidaugustat.wattpaddlerwidget.logic.UpdateMetrics;
+import de.davidaugustat.wattpaddlerwidget.logic.WidgetUpdateExecutor;
 
 /**
  * Implementation of App Widget functionality.
@@ -25,37 +41,154 @@ import de.davidaugustat.wattpaddlerwidget.logic.SharedPreferencesHelper;
 public class MainWidget extends AppWidgetProvider {
 
     /**
-     * Updates the app widget with the provided ID.
+     * Priority of the updates that are triggered by the broadcast this receiver instance handles.
+     * A new receiver instance is created for every broadcast.
+     */
+    private int updatePriority = WidgetUpdateExecutor.PRIORITY_PERIODIC;
+
+    /**
+     * Updates the app widgets with the provided IDs. This must be called on the
+     * {@link WidgetUpdateExecutor} as part of the given batch.
+     * <p>
+     * The widgets are grouped by their configured location. Every distinct location is fetched only
+     * once and its RemoteViews are built only once. They are then pushed to all widgets of the
+     * group with a single call to the AppWidgetManager.
+     * <p>
+     * The full layout including the click handlers is only pushed to widgets that did not get it
+     * from this process yet. All other changes are sent as partial updates that only contain the
+     * changed fields (see {@link WidgetRenderState}).
      *
-     * @param appWidgetId ID of the widget to update
+     * @param appWidgetIds IDs of the widgets to update
      * @param isManual true iff the update was triggered by user interaction, i.e. the user clicked
      *                 the refresh button.
+     * @param batch    Batch of the broadcast that triggered the update. Network requests keep it
+     *                 alive until their result has been displayed.
      */
-    static void updateAppWidget(Context context, AppWidgetManager appWidgetManager,
-                                int appWidgetId, boolean isManual) {
-        // Construct the RemoteViews object
-        RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.main_widget);
+    @WorkerThread
+    static void updateAppWidgets(Context context, AppWidgetManager appWidgetManager,
+                                 int[] appWidgetIds, boolean isManual,
+                                 WidgetUpdateExecutor.Batch batch) {
+        Map<Location, int[]> widgetGroups = groupWidgetIdsByLocation(appWidgetIds, context);
+        // Today's stored tides of all locations are loaded with a single query:
+        new TidesPrefetcher(context).loadStoredTides(widgetGroups.keySet(), LocalDate.now());
+        for (Map.Entry<Location, int[]> widgetGroup : widgetGroups.entrySet()) {
+            Location location = widgetGroup.getKey();
+            int[] groupWidgetIds = widgetGroup.getValue();
 
-        views.setOnClickPendingIntent(R.id.buttonUpdate, getPendingSelfIntent(context, appWidgetId));
-        setUpOpenAppOnClick(views, context);
+            setUpFullLayout(context, appWidgetManager, groupWidgetIds);
 
-        // Update app widget here already because on some devices initial update after boot fails
-        // otherwise:
-        appWidgetManager.updateAppWidget(appWidgetId, views);
+            if (location == null) {
+                Log.d("No location", "No location stored for widget IDs " + Arrays.toString(groupWidgetIds));
+                updateWidgetLayoutAtError("No location stored", context, appWidgetManager,
+                        null, groupWidgetIds);
+            } else {
+                refreshWidgets(context, appWidgetManager, location, groupWidgetIds, isManual, batch);
+            }
 
-        refreshWidget(views, context, appWidgetManager, appWidgetId, isManual);
+            Log.d("Updating widget", "Updating widgets with IDs " + Arrays.toString(groupWidgetIds));
+        }
+    }
 
-        Log.d("Updating widget", "Updating widget with ID " + appWidgetId);
+    /**
+     * Pushes the full layout with the click handlers to those widgets of the group that do not
+     * have it yet. The refresh button of every widget updates the whole group, so the layout is
+     * pushed again when the group changes.
+     *
+     * @param appWidgetIds IDs of all widgets of a location group
+     */
+    private static synchronized void setUpFullLayout(Context context,
+                                                     AppWidgetManager appWidgetManager,
+                                                     int[] appWidgetIds) {
+        boolean isWattpaddlerAppInstalled = AppPackageDetectionHelper.isWattpaddlerAppInstalled(context);
+        String clickHandlerKey = Arrays.toString(appWidgetIds) + "|" + isWattpaddlerAppInstalled;
+        List<Integer> idsToSetUp = new ArrayList<>();
+        for (int appWidgetId : appWidgetIds) {
+            if (WidgetRenderState.needsFullUpdate(appWidgetId, clickHandlerKey)) {
+                idsToSetUp.add(appWidgetId);
+            }
+        }
+        if (idsToSetUp.isEmpty()) {
+            return;
+        }
+
+        // Construct the RemoteViews object
+        RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.main_widget);
+
+        views.setOnClickPendingIntent(R.id.buttonUpdate, getPendingSelfIntent(context, appWidgetIds));
+        if (isWattpaddlerAppInstalled) {
+            setUpOpenAppOnClick(views, context);
+        }
+
+        // Update app widgets here already because on some devices initial update after boot
+        // fails otherwise:
+        appWidgetManager.updateAppWidget(toArray(idsToSetUp), views);
+        for (int appWidgetId : idsToSetUp) {
+            WidgetRenderState.setFullyUpdated(appWidgetId, clickHandlerKey);
+        }
     }
 
     @Override
     public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
         // There may be multiple widgets active, so update all of them
-        for (int appWidgetId : appWidgetIds) {
-            updateAppWidget(context, appWidgetManager, appWidgetId, false);
+        Context appContext = context.getApplicationContext();
+        WidgetUpdateExecutor.Batch batch = WidgetUpdateExecutor.startBatch(this, context, updatePriority);
+        batch.execute(() ->
+                updateAppWidgets(appContext, appWidgetManager, appWidgetIds, false, batch));
+        if (Constants.PREFETCH_ENABLED) {
+            DayChangeAlarmHelper.scheduleNextDayChange(context);
+            SyncScheduler.schedulePeriodicSync(context);
         }
     }
 
+    /**
+     * Gets called when a widget was resized. The tide curve is rendered again in the new size.
+     */
+    @Override
+    public void onAppWidgetOptionsChanged(Context context, AppWidgetManager appWidgetManager,
+                                          int appWidgetId, Bundle newOptions) {
+        Context appContext = context.getApplicationContext();
+        WidgetUpdateExecutor.Batch batch = WidgetUpdateExecutor.startBatch(this, context,
+                WidgetUpdateExecutor.PRIORITY_NEW_WIDGET);
+        batch.execute(() -> resizeAppWidget(appContext, appWidgetManager, appWidgetId, batch));
+    }
+
+    /**
+     * Renders the stored tides of a resized widget again, so that the tide curve fits the new
+     * size. Only the changed fields are sent as a partial update; the full layout and the click
+     * handlers of the widget's location group stay as they are.
+     * <p>
+     * If there are no stored tides yet, the whole location group of the widget is updated. A
+     * group of only the resized widget would change the click handlers of the group and replace
+     * the refresh PendingIntent that the other widgets of the group share.
+     */
+    @WorkerThread
+    private static void resizeAppWidget(Context context, AppWidgetManager appWidgetManager,
+                                        int appWidgetId, WidgetUpdateExecutor.Batch batch) {
+        Location location = SharedPreferencesHelper
+                .getLocations(new int[]{appWidgetId}, context).get(appWidgetId);
+        TidesInfo storedTides = null;
+        if (location != null) {
+            TidesPrefetcher prefetcher = new TidesPrefetcher(context);
+            storedTides = prefetcher.getStoredTides(location, LocalDate.now());
+            if (storedTides == null) {
+                storedTides = prefetcher.getLatestStoredTides(location);
+            }
+        }
+        if (storedTides != null) {
+            updateWidgetLayout(context, appWidgetManager, new int[]{appWidgetId}, storedTides);
+            return;
+        }
+
+        int[] allWidgetIds = appWidgetManager.getAppWidgetIds(
+                new ComponentName(context, MainWidget.class));
+        int[] groupWidgetIds = groupWidgetIdsByLocation(allWidgetIds, context).get(location);
+        if (groupWidgetIds == null) {
+            // The widget is not registered with the AppWidgetManager (anymore).
+            return;
+        }
+        updateAppWidgets(context, appWidgetManager, groupWidgetIds, false, batch);
+    }
+
     @Override
     public void onEnabled(Context context) {
         // Enter relevant functionality for when the first widget is created
@@ -64,151 +197,360 @@ public class MainWidget extends AppWidgetProvider {
     @Override
     public void onDisabled(Context context) {
         // Enter relevant functionality for when the last widget is disabled
+        DayChangeAlarmHelper.cancel(context);
+        SyncScheduler.cancel(context);
     }
 
     /**
      * Gets called when one or more app widgets get deleted.
      * <p>
      * Deletes the locations associated with these widget(s) from the shared preferences as they
-     * are not needed anymore.
+     * are not needed anymore. Stored tides of locations that no other widget shows are deleted as
+     * well.
      *
      * @param appWidgetIds IDs of the deleted app widgets (in most cases only one widget)
      */
     @Override
     public void onDeleted(Context context, int[] appWidgetIds) {
         super.onDeleted(context, appWidgetIds);
+        SharedPreferencesHelper.deleteLocations(appWidgetIds, context);
+        for (int appWidgetId : appWidgetIds) {
+            WidgetRenderState.forget(appWidgetId);
+        }
+        Context appContext = context.getApplicationContext();
+        WidgetUpdateExecutor.startBatch(this, context, WidgetUpdateExecutor.PRIORITY_PERIODIC)
+                .execute(() -> new TidesPrefetcher(appContext).collectGarbage(LocalDate.now()));
+    }
+
+    /**
+     * Resolves the locations of all provided widgets in one pass and groups the widget IDs by
+     * location. Widgets without a stored location are grouped under the key null.
+     *
+     * @return The widget IDs of every location, in the order in which the locations first occur.
+     */
+    private static Map<Location, int[]> groupWidgetIdsByLocation(int[] appWidgetIds, Context context) {
+        Map<Integer, Location> locations = SharedPreferencesHelper.getLocations(appWidgetIds, context);
+        Map<Location, List<Integer>> groupedIds = new LinkedHashMap<>();
         for (int appWidgetId : appWidgetIds) {
-            SharedPreferencesHelper.deleteLocation(appWidgetId, context);
+            Location location = locations.get(appWidgetId);
+            List<Integer> ids = groupedIds.get(location);
+            if (ids == null) {
+                ids = new ArrayList<>();
+                groupedIds.put(location, ids);
+            }
+            ids.add(appWidgetId);
+        }
+
+        Map<Location, int[]> widgetGroups = new LinkedHashMap<>(groupedIds.size());
+        for (Map.Entry<Location, List<Integer>> entry : groupedIds.entrySet()) {
+            widgetGroups.put(entry.getKey(), toArray(entry.getValue()));
+        }
+        return widgetGroups;
+    }
+
+    private static int[] toArray(List<Integer> ids) {
+        int[] array = new int[ids.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = ids.get(i);
         }
+        return array;
     }
 
     /**
-     * Loads the data from the API and displays it on the widget.
+     * Loads the data of a location and displays it on all widgets that show this location.
+     * <p>
+     * The {@link FreshnessPolicy} decides whether the locally stored tides of today can be
+     * displayed. Fresh tides are displayed without any network access. Stale tides are displayed
+     * and revalidated in the background. Without usable local data, automatic updates show the
+     * last known data and request a background sync if prefetching is enabled; all other updates
+     * fetch today's data from the API. Manual updates always fetch. The response is parsed on the
+     * OkHttp thread; storing and rendering it happens on the {@link WidgetUpdateExecutor}.
      *
-     * @param views            RemoteViews representing the widget
      * @param context          Context used to get strings
-     * @param appWidgetManager AppWidgetManager used to update the widget
-     * @param appWidgetId      ID of the widget to update
+     * @param appWidgetManager AppWidgetManager used to update the widgets
+     * @param location         Location that all of the widgets show
+     * @param appWidgetIds     IDs of the widgets to update
      * @param isManual         true iff the widget was manually updated. In this case a info toast
      *                         "Network error" is displayed to inform the user about the error. If
      *                         the widget was automatically updated, no error message is displayed
      *                         but the widget remains unchanged (continues to display old data).
+     * @param batch            Batch that is kept alive until the fetched data has been displayed
      */
-    private static void refreshWidget(RemoteViews views, Context context, AppWidgetManager appWidgetManager, int appWidgetId,
-                                      boolean isManual) {
-        try {
-            Location location = SharedPreferencesHelper.getLocation(appWidgetId, context);
-            new DataFetcher(context).fetchTidesDataSingleDay(location, tidesInfo -> {
-                        updateWidgetLayout(views, context, appWidgetManager, appWidgetId, tidesInfo);
-                        Log.d("Update Widget", "Updated widget from refreshWidget. isManual: " + isManual);
-                        // Save the newly fetched data to the cache:
-                        SharedPreferencesHelper.saveTidesCache(appWidgetId, context, tidesInfo);
+    private static void refreshWidgets(Context context, AppWidgetManager appWidgetManager,
+                                       Location location, int[] appWidgetIds, boolean isManual,
+                                       WidgetUpdateExecutor.Batch batch) {
+        TidesPrefetcher prefetcher = new TidesPrefetcher(context);
+        LocalDate today = LocalDate.now();
+
+        TidesInfo storedTides = prefetcher.getStoredTides(location, today);
 
-                        Log.d("Tides Info", tidesInfo.toString());
-                    },
-                    errorMessage -> {
-                        updateWidgetLayoutAtError(errorMessage, views, context, appWidgetManager, appWidgetId);
-                        Log.e("Error fetching tides", "isManual: " + isManual + ", error: " + errorMessage );
-                    });
-        } catch (IllegalArgumentException exception) {
-            Log.d("No location", "No location stored for widget ID" + appWidgetId);
-            updateWidgetLayoutAtError(exception.toString(), views, context, appWidgetManager, appWidgetId);
+        FreshnessPolicy.Decision decision =
+                FreshnessPolicy.TIDES.decide(storedTides, today, LocalDateTime.now(), isManual);
+        Log.d("Update Widget", "Tides of " + location.getId() + ": " + decision);
+        switch (decision) {
+            case SERVE_LOCAL:
+                updateWidgetLayout(context, appWidgetManager, appWidgetIds, storedTides);
+                Log.d("Update Widget", "Updated widgets from local data: " + storedTides);
+                return;
+            case SERVE_AND_REVALIDATE:
+                updateWidgetLayout(context, appWidgetManager, appWidgetIds, storedTides);
+                Log.d("Update Widget", "Updated widgets from stale local data: " + storedTides);
+                revalidateTides(context, appWidgetManager, location, appWidgetIds, batch);
+                return;
+            case FETCH:
+                if (Constants.PREFETCH_ENABLED && !isManual) {
+                    // Missing data is fetched by the TidesSyncWorker, which waits for a network
+                    // connection and retries with backoff.
+                    updateWidgetLayoutAtError("No stored tides for today", context,
+                            appWidgetManager, location, appWidgetIds);
+                    SyncScheduler.requestSync(context);
+                    return;
+                }
+                break;
+        }
+
+        // Show the local data right away instead of the placeholders or the data that the widgets
+        // showed before. The fetched data is rendered afterwards if it differs.
+        TidesInfo localTides = storedTides != null
+                ? storedTides : prefetcher.getLatestStoredTides(location);
+        if (localTides != null) {
+            updateWidgetLayout(context, appWidgetManager, appWidgetIds, localTides);
+            Log.d("Update Widget", "Updated widgets from local data before fetching: " + localTides);
         }
+
+        new DataFetcher(context).fetchTidesDataSingleDay(location, isManual, batch.retainUntilCallback(), tidesInfo -> {
+                    updateWidgetLayout(context, appWidgetManager, appWidgetIds, tidesInfo);
+                    Log.d("Update Widget", "Updated widgets from refreshWidgets. isManual: " + isManual);
+                    // Save the newly fetched data to the shared store:
+                    prefetcher.storeTides(tidesInfo);
+
+                    Log.d("Tides Info", tidesInfo.toString());
+                },
+                errorMessage -> {
+                    updateWidgetLayoutAtError(errorMessage, context, appWidgetManager,
+                            location, appWidgetIds);
+                    Log.e("Error fetching tides", "isManual: " + isManual + ", error: " + errorMessage );
+                });
     }
 
     /**
-     * Updates the widget but does not apply any changes. This is just to make sure that all changes
-     * that were made in the {@link #updateAppWidget(Context, AppWidgetManager, int, boolean)} are
-     * committed.
-     *
-     * <p>This is especially important to ensure that the refresh button gets set up even in case that
-     * a network error occurs at the very first update of the widget. In this case the user should
-     * still be able to perform a refresh.
+     * Fetches today's tides of the location again in the background, while the widgets show the
+     * stale data. Errors are ignored, as the widgets already show usable data.
+     */
+    private static void revalidateTides(Context context, AppWidgetManager appWidgetManager,
+                                        Location location, int[] appWidgetIds,
+                                        WidgetUpdateExecutor.Batch batch) {
+        new DataFetcher(context).fetchTidesDataSingleDay(location, false, batch.retainUntilCallback(), tidesInfo -> {
+                    new TidesPrefetcher(context).storeTides(tidesInfo);
+                    updateWidgetLayout(context, appWidgetManager, appWidgetIds, tidesInfo);
+                    Log.d("Update Widget", "Revalidated tides of " + location.getId());
+                },
+                errorMessage -> Log.d("Update Widget", "Revalidating tides of "
+                        + location.getId() + " failed: " + errorMessage));
+    }
+
+    /**
+     * Displays the last stored tides of the location if there are any. Otherwise the widgets stay
+     * unchanged. They already got the full layout with the refresh button in
+     * {@link #updateAppWidgets(Context, AppWidgetManager, int[], boolean, WidgetUpdateExecutor.Batch)},
+     * so the user can still perform a refresh, even if a network error occurs at the very first
+     * update of the widget.
      *
      * <p>Additionally, if {@link Constants#SHOW_DEBUG} is true, the error message gets printed to
      * the debug text view.
      *
      * @param errorString      String for the error message
-     * @param views            RemoteViews representing the widget
      * @param context          Context
-     * @param appWidgetManager AppWidgetManager used to update the widget.
-     * @param appWidgetId      ID of the widget.
+     * @param appWidgetManager AppWidgetManager used to update the widgets.
+     * @param location         Location of the widgets, or null if none is stored.
+     * @param appWidgetIds     IDs of the widgets.
      */
-    private static void updateWidgetLayoutAtError(String errorString, RemoteViews views, Context context,
-                                                  AppWidgetManager appWidgetManager, int appWidgetId) {
+    private static void updateWidgetLayoutAtError(String errorString, Context context,
+                                                  AppWidgetManager appWidgetManager, Location location,
+                                                  int[] appWidgetIds) {
         // Try to load and display cached data from last request
-        TidesInfo cachedTides = SharedPreferencesHelper.getTidesCache(appWidgetId, context);
+        TidesInfo cachedTides = location != null
+                ? new TidesPrefetcher(context).getLatestStoredTides(location) : null;
         if (cachedTides != null) {
-            updateWidgetLayout(views, context, appWidgetManager, appWidgetId, cachedTides);
-            Log.d("Update Widget", "Updated widget from locally cached info: " + cachedTides);
-        } else {
-            if (Constants.SHOW_DEBUG) {
-                views.setViewVisibility(R.id.textViewDebug, View.VISIBLE);
-                views.setTextViewText(R.id.textViewDebug, errorString);
+            updateWidgetLayout(context, appWidgetManager, appWidgetIds, cachedTides);
+            Log.d("Update Widget", "Updated widgets from locally cached info: " + cachedTides);
+        } else if (Constants.SHOW_DEBUG) {
+            Map<Integer, WidgetRenderState> states = new LinkedHashMap<>();
+            for (int appWidgetId : appWidgetIds) {
+                states.put(appWidgetId, WidgetRenderState.getRendered(appWidgetId).withDebugText(errorString));
             }
-            appWidgetManager.updateAppWidget(appWidgetId, views);
+            render(context, appWidgetManager, states);
         }
     }
 
     /**
-     * Displays the new tides data from the tidesInfo parameter on the widget.
+     * Displays the new tides data from the tidesInfo parameter on the widgets.
+     * <p>
+     * Widgets that are at least {@link Constants#TIDE_CURVE_MIN_WIDGET_HEIGHT_DP} high also show
+     * the tide curve of the day (see {@link TideCurveRenderer}).
      *
-     * @param tidesInfo Tides info that should be displayed on the widget.
-     */
-    private static void updateWidgetLayout(RemoteViews views, Context context,
-                                           AppWidgetManager appWidgetManager, int appWidgetId,
-                                           TidesInfo tidesInfo) {
-
-        setMainLayoutVisible(views);
-        views.setTextViewText(R.id.textViewLocation, tidesInfo.getLocationName());
-        views.setTextViewText(R.id.textViewDate, tidesInfo.getDateFormatted());
-        views.setTextViewText(R.id.textViewHighTide,
-                tidesInfo.getHighTidesFormatted(context.getString(R.string.high_tides_text)));
-        views.setTextViewText(R.id.textViewLowTide,
+     * @param tidesInfo Tides info that should be displayed on the widgets.
+     */
+    private static void updateWidgetLayout(Context context, AppWidgetManager appWidgetManager,
+                                           int[] appWidgetIds, TidesInfo tidesInfo) {
+        long startMillis = UpdateMetrics.startTimer();
+
+        WidgetRenderState state = WidgetRenderState.ofTides(tidesInfo.getLocationName(),
+                tidesInfo.getDateFormatted(), tidesInfo.getDate().isBefore(LocalDate.now()),
+                tidesInfo.getHighTidesFormatted(context.getString(R.string.high_tides_text)),
                 tidesInfo.getLowTidesFormatted(context.getString(R.string.low_tides_text)));
 
         // Show last updated text only for debug purposes:
         if (Constants.SHOW_DEBUG) {
-            String lastUpdatedText = String.format(context.getString(R.string.last_updated_text),
-                    tidesInfo.getLastUpdatedTimeFormatted());
-            views.setTextViewText(R.id.textViewDebug, lastUpdatedText);
-            views.setViewVisibility(R.id.textViewDebug, View.VISIBLE);
+            state = state.withDebugText(String.format(context.getString(R.string.last_updated_text),
+                    tidesInfo.getLastUpdatedTimeFormatted()));
+        }
+
+        Map<Integer, WidgetRenderState> states = new LinkedHashMap<>();
+        if (Constants.SHOW_TIDE_CURVE) {
+            TideCurveRenderer curveRenderer = TideCurveRenderer.getInstance(context);
+            LocalDateTime now = LocalDateTime.now();
+            // Widgets of the same size share the curve:
+            Map<Long, WidgetRenderState> statesBySize = new LinkedHashMap<>();
+            for (int appWidgetId : appWidgetIds) {
+                long size = getTideCurveSize(context, appWidgetManager.getAppWidgetOptions(appWidgetId));
+                WidgetRenderState sizeState = statesBySize.get(size);
+                if (sizeState == null) {
+                    int widthPx = (int) (size >> 32);
+                    int heightPx = (int) size;
+                    sizeState = state.withTideCurve(
+                            curveRenderer.getCurveBitmap(tidesInfo, widthPx, heightPx),
+                            curveRenderer.getNowMarkerX(tidesInfo.getDate(), now, widthPx));
+                    statesBySize.put(size, sizeState);
+                }
+                states.put(appWidgetId, sizeState);
+            }
+        } else {
+            for (int appWidgetId : appWidgetIds) {
+                states.put(appWidgetId, state);
+            }
         }
 
-        appWidgetManager.updateAppWidget(appWidgetId, views);
+        render(context, appWidgetManager, states);
+        UpdateMetrics.getInstance(context).recordSince(UpdateMetrics.Phase.RENDER, startMillis);
     }
 
     /**
-     * Makes all layout elements that belong to the main layout visible and hides the status text
-     * view (which is displayed by default before the first update).
+     * Changes the widgets to the given states. Only the fields that differ from the state that is
+     * currently displayed on a widget are sent, using partial updates. Widgets that already
+     * display their state are not updated at all.
+     * <p>
+     * Widgets with the same current and new state share a single update. Rendering is
+     * synchronized, because widget updates run concurrently and every update has to be diffed
+     * against the state that the previous update left.
+     *
+     * @param states New state of every widget
      */
-    private static void setMainLayoutVisible(RemoteViews views) {
-        views.setViewVisibility(R.id.widgetRow1Layout, View.VISIBLE);
-        views.setViewVisibility(R.id.widgetRow2Layout, View.VISIBLE);
-        views.setViewVisibility(R.id.textViewLowTide, View.VISIBLE);
-        views.setViewVisibility(R.id.textViewStatus, View.GONE);
+    private static synchronized void render(Context context, AppWidgetManager appWidgetManager,
+                                            Map<Integer, WidgetRenderState> states) {
+        Map<List<WidgetRenderState>, List<Integer>> transitions = new LinkedHashMap<>();
+        for (Map.Entry<Integer, WidgetRenderState> entry : states.entrySet()) {
+            List<WidgetRenderState> transition = Arrays.asList(
+                    WidgetRenderState.getRendered(entry.getKey()), entry.getValue());
+            List<Integer> ids = transitions.get(transition);
+            if (ids == null) {
+                ids = new ArrayList<>();
+                transitions.put(transition, ids);
+            }
+            ids.add(entry.getKey());
+        }
+
+        TideCurveRenderer curveRenderer = TideCurveRenderer.getInstance(context);
+        for (Map.Entry<List<WidgetRenderState>, List<Integer>> transition : transitions.entrySet()) {
+            WidgetRenderState previous = transition.getKey().get(0);
+            WidgetRenderState next = transition.getKey().get(1);
+            int[] ids = toArray(transition.getValue());
+            RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.main_widget);
+            int curveWidth = (int) (getTideCurveSize(context,
+                    appWidgetManager.getAppWidgetOptions(ids[0])) >> 32);
+            if (next.applyChanges(context, views, previous, curveRenderer, curveWidth)) {
+                appWidgetManager.partiallyUpdateAppWidget(ids, views);
+            } else {
+                Log.d("Update Widget", "Widgets " + Arrays.toString(ids) + " are up to date");
+            }
+            for (int appWidgetId : ids) {
+                WidgetRenderState.setRendered(appWidgetId, next);
+            }
+        }
+    }
+
+    /**
+     * Returns the size of the tide curve in the widget with the given options. The width in
+     * pixels is stored in the upper 32 bits, the height in the lower 32 bits. The size is 0 if the
+     * widget is too low for the curve.
+     */
+    private static long getTideCurveSize(Context context, Bundle options) {
+        // The minimum width and maximum height are the size in portrait orientation:
+        int widthDp = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH);
+        int heightDp = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MAX_HEIGHT);
+        if (heightDp < Constants.TIDE_CURVE_MIN_WIDGET_HEIGHT_DP) {
+            return 0;
+        }
+        float density = context.getResources().getDisplayMetrics().density;
+        // Subtract the padding of the widget layout:
+        long widthPx = Math.round((widthDp - 20) * density);
+        long heightPx = Math.round(Constants.TIDE_CURVE_HEIGHT_DP * density);
+        return widthPx > 0 ? widthPx << 32 | heightPx : 0;
     }
 
     /**
      * Called when the underlying broadcast receiver of this app widget provider receives an intent.
      * <p>
      * This method is used to receive intents that are sent when the refresh button of the widget
-     * is clicked. In this case the widget gets updated.
+     * is clicked. In this case the widget gets updated. It also receives the day change alarm
+     * (see {@link DayChangeAlarmHelper}) which updates all widgets.
      */
     @Override
     public void onReceive(Context context, Intent intent) {
+        if (intent.getBooleanExtra(Constants.NEW_WIDGET_EXTRA, false)) {
+            updatePriority = WidgetUpdateExecutor.PRIORITY_NEW_WIDGET;
+        }
         super.onReceive(context, intent);
 
         if (Objects.equals(intent.getAction(), Constants.WIDGET_REFRESH_BUTTON_ACTION)) {
-            int appWidgetId = intent.getIntExtra(Constants.APP_WIDGET_ID_EXTRA, Constants.INVALID_APP_WIDGET_ID);
-            if (appWidgetId == Constants.INVALID_APP_WIDGET_ID) {
+            int[] appWidgetIds = getAppWidgetIdsFromIntent(intent);
+            if (appWidgetIds == null) {
                 Log.e("OnReceive", "App widget ID was not passed with intent.");
                 return;
             }
-            Log.d("Widget onReceive", "Refresh button clicked for widget with ID " + appWidgetId);
+            Log.d("Widget onReceive", "Refresh button clicked for widgets with IDs " + Arrays.toString(appWidgetIds));
+            AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
+            Context appContext = context.getApplicationContext();
+            WidgetUpdateExecutor.Batch batch = WidgetUpdateExecutor.startBatch(this, context,
+                    WidgetUpdateExecutor.PRIORITY_MANUAL);
+            batch.execute(() ->
+                    updateAppWidgets(appContext, appWidgetManager, appWidgetIds, true, batch));
+        } else if (Objects.equals(intent.getAction(), Constants.WIDGET_DAY_CHANGE_ACTION)) {
+            Log.d("Widget onReceive", "Day changed, updating all widgets.");
             AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
-            updateAppWidget(context, appWidgetManager, appWidgetId, true);
+            int[] appWidgetIds = appWidgetManager.getAppWidgetIds(
+                    new ComponentName(context, MainWidget.class));
+            onUpdate(context, appWidgetManager, appWidgetIds);
+        }
+    }
+
+    /**
+     * Returns the IDs of the widgets whose refresh button was clicked. Refresh intents that were
+     * created before widgets got updated in groups only carry a single app widget ID, so this is
+     * supported as well.
+     *
+     * @return The app widget IDs or null if the intent does not contain any.
+     */
+    private static int[] getAppWidgetIdsFromIntent(Intent intent) {
+        int[] appWidgetIds = intent.getIntArrayExtra(Constants.APP_WIDGET_IDS_EXTRA);
+        if (appWidgetIds != null && appWidgetIds.length > 0) {
+            return appWidgetIds;
         }
+        int appWidgetId = intent.getIntExtra(Constants.APP_WIDGET_ID_EXTRA, Constants.INVALID_APP_WIDGET_ID);
+        if (appWidgetId == Constants.INVALID_APP_WIDGET_ID) {
+            return null;
+        }
+        return new int[]{appWidgetId};
     }
 
     /**
@@ -217,33 +559,31 @@ public class MainWidget extends AppWidgetProvider {
      * when the refresh button of the widget gets pressed.
      * <p>
      * The pending intent includes the Constants.WIDGET_REFRESH_BUTTON_ACTION as well as the app
-     * widget ID of the widget on which the button was pressed.
+     * widget IDs of all widgets that share the RemoteViews of the widget on which the button was
+     * pressed.
      *
-     * @param appWidgetId ID of the app widget that should be updated when the refresh button is
-     *                    pressed.
+     * @param appWidgetIds IDs of the app widgets that should be updated when the refresh button is
+     *                     pressed. The first ID is used as request code, so the PendingIntent is
+     *                     unique per group.
      */
-    private static PendingIntent getPendingSelfIntent(Context context, int appWidgetId) {
+    private static PendingIntent getPendingSelfIntent(Context context, int[] appWidgetIds) {
         Intent intent = new Intent(context, MainWidget.class);
         intent.setAction(Constants.WIDGET_REFRESH_BUTTON_ACTION);
-        intent.putExtra(Constants.APP_WIDGET_ID_EXTRA, appWidgetId);
-        return PendingIntent.getBroadcast(context, appWidgetId, intent,
+        intent.putExtra(Constants.APP_WIDGET_IDS_EXTRA, appWidgetIds);
+        return PendingIntent.getBroadcast(context, appWidgetIds[0], intent,
                 PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
     }
 
     /**
-     * If the Wattpaddler app (com.embarcadero.Wattpaddler) is installed on the device,
-     * the main layout of the widget gets a click listener that opens this app when clicked.
+     * The main layout of the widget gets a click listener that opens the Wattpaddler app
+     * (com.embarcadero.Wattpaddler) when clicked. Must only be called if this app is installed on
+     * the device.
      */
     private static void setUpOpenAppOnClick(RemoteViews views, Context context) {
-        if (AppPackageDetectionHelper.isWattpaddlerAppInstalled(context)) {
-            Intent intent = context.getPackageManager()
-                    .getLaunchIntentForPackage(Constants.WATTPADDLER_APP_PACKAGE_NAME);
-            PendingIntent pendingIntent = PendingIntent.getActivity(context, 0, intent,
-                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
-            views.setOnClickPendingIntent(R.id.widgetMainLayout, pendingIntent);
-        } else {
-            Log.d("App not installed", "Wattpaddler app not is installed on the device. " +
-                    "Not setting up a click listener for it.");
-        }
+        Intent intent = context.getPackageManager()
+                .getLaunchIntentForPackage(Constants.WATTPADDLER_APP_PACKAGE_NAME);
+        PendingIntent pendingIntent = PendingIntent.getActivity(context, 0, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        views.setOnClickPendingIntent(R.id.widgetMainLayout, pendingIntent);
     }
 }
\ No newline at end of file
@@ -0,0 +1,222 @@
+package de.davidaugustat.wattpaddlerwidget.ui;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import de.davidaugustat.wattpaddlerwidget.Constants;
+import de.davidaugustat.wattpaddlerwidget.R;
+import de.davidaugustat.wattpaddlerwidget.data.Location;
+import de.davidaugustat.wattpaddlerwidget.data.TideTimeline;
+import de.davidaugustat.wattpaddlerwidget.data.TidesInfo;
+import de.davidaugustat.wattpaddlerwidget.logic.TideCurve;
+import de.davidaugustat.wattpaddlerwidget.logic.TidesPrefetcher;
+
+/**
+ * Renders the tide curve of a day into bitmaps for the widgets.
+ * <p>
+ * The curve consists of two layers. The base layer shows the curve from 00:00 to 24:00 and only
+ * changes when the tides, the size of the widget or the theme change. It is therefore cached by
+ * these properties and reused by all updates and by all widgets of the same location and size.
+ * The second layer only contains the marker of the current time. It is a bitmap of a single pixel
+ * row that the widget stretches over the height of the curve, so redrawing it costs almost
+ * nothing.
+ * <p>
+ * All bitmaps are sent to the launcher in a parcel with a limit of about 1 MB that is shared by
+ * all widgets of an update. So the base layer is downscaled to at most
+ * {@link Constants#TIDE_CURVE_MAX_BITMAP_BYTES} and stretched by the widget.
+ * <p>
+ * This class is thread-safe. Bitmaps must only be rendered on a worker thread.
+ */
+public class TideCurveRenderer implements ComponentCallbacks2 {
+
+    private static TideCurveRenderer instance;
+
+    private final Context context;
+
+    private final LruCache<String, Bitmap> cache =
+            new LruCache<String, Bitmap>(Constants.TIDE_CURVE_CACHE_BYTES) {
+                @Override
+                protected int sizeOf(String key, Bitmap bitmap) {
+                    return bitmap.getByteCount();
+                }
+            };
+
+    private TideCurveRenderer(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Returns the renderer of this process. At the first call, the renderer registers itself for
+     * memory pressure callbacks of the application.
+     */
+    public static synchronized TideCurveRenderer getInstance(Context context) {
+        if (instance == null) {
+            instance = new TideCurveRenderer(context.getApplicationContext());
+            context.getApplicationContext().registerComponentCallbacks(instance);
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the base layer of the tide curve on the date of the tidesInfo object. It also
+     * includes the tides of the previous and the next day if they are stored, so that the curve
+     * is correct at midnight.
+     *
+     * @param widthPx  Width of the curve in the widget in pixels
+     * @param heightPx Height of the curve in the widget in pixels
+     * @return The bitmap or null if there are no tides to draw a curve from.
+     */
+    @WorkerThread
+    public Bitmap getCurveBitmap(TidesInfo tidesInfo, int widthPx, int heightPx) {
+        TideCurve curve = TideCurve.fromTimeline(getSurroundingTimeline(tidesInfo));
+        if (curve == null || widthPx <= 0 || heightPx <= 0) {
+            return null;
+        }
+        String key = tidesInfo.getLocationId() + "|" + tidesInfo.getDate().toEpochDay() + "|"
+                + widthPx + "x" + heightPx + "|" + (isNightMode() ? "night" : "day") + "|"
+                + curve.hashCode();
+        Bitmap bitmap = cache.get(key);
+        if (bitmap == null) {
+            bitmap = drawCurve(curve, tidesInfo.getDate(), widthPx, heightPx);
+            cache.put(key, bitmap);
+            Log.d("TideCurveRenderer", "Rendered " + bitmap.getWidth() + "x" + bitmap.getHeight()
+                    + " curve for " + key);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Returns the horizontal position of the marker of the given time in the layer returned by
+     * {@link #getNowMarkerBitmap(int, int)}.
+     *
+     * @param widthPx Width of the curve in the widget in pixels
+     * @return The position or -1 if the time is not on the given date.
+     */
+    public int getNowMarkerX(LocalDate date, LocalDateTime now, int widthPx) {
+        if (!now.toLocalDate().equals(date) || widthPx <= 0) {
+            return -1;
+        }
+        int width = getNowMarkerWidth(widthPx);
+        int minuteOfDay = now.getHour() * 60 + now.getMinute();
+        return Math.min(width - 1, minuteOfDay * width / TideTimeline.MINUTES_PER_DAY);
+    }
+
+    /**
+     * Returns the layer with the marker of the current time. The bitmap is one pixel high and
+     * must be stretched to the height of the curve.
+     *
+     * @param widthPx Width of the curve in the widget in pixels
+     * @param x       Position returned by {@link #getNowMarkerX(LocalDate, LocalDateTime, int)}
+     */
+    public Bitmap getNowMarkerBitmap(int widthPx, int x) {
+        Bitmap bitmap = Bitmap.createBitmap(getNowMarkerWidth(widthPx), 1, Bitmap.Config.ARGB_8888);
+        bitmap.setPixel(x, 0, context.getColor(R.color.tide_curve_now_color));
+        return bitmap;
+    }
+
+    private int getNowMarkerWidth(int widthPx) {
+        return Math.min(widthPx, getMaxBitmapWidth());
+    }
+
+    private TideTimeline getSurroundingTimeline(TidesInfo tidesInfo) {
+        TidesPrefetcher prefetcher = new TidesPrefetcher(context);
+        Location location = new Location(tidesInfo.getLocationId(), tidesInfo.getLocationName());
+        TideTimeline timeline = tidesInfo.getTimeline();
+        TidesInfo previousDay = prefetcher.getStoredTides(location, tidesInfo.getDate().minusDays(1));
+        if (previousDay != null) {
+            timeline = previousDay.getTimeline().merge(timeline);
+        }
+        TidesInfo nextDay = prefetcher.getStoredTides(location, tidesInfo.getDate().plusDays(1));
+        if (nextDay != null) {
+            timeline = timeline.merge(nextDay.getTimeline());
+        }
+        return timeline;
+    }
+
+    private Bitmap drawCurve(TideCurve curve, LocalDate date, int widthPx, int heightPx) {
+        // Downscale the bitmap to the byte budget, keeping its aspect ratio:
+        float scale = Math.min(1, (float) Math.sqrt(
+                (double) Constants.TIDE_CURVE_MAX_BITMAP_BYTES / (4L * widthPx * heightPx)));
+        int width = Math.max(2, Math.min(getMaxBitmapWidth(), (int) (widthPx * scale)));
+        int height = Math.max(2, (int) (heightPx * scale));
+
+        float[] levels = new float[width];
+        double startMinute = TideTimeline.toEpochMinute(date.atStartOfDay());
+        curve.sample(startMinute, (double) TideTimeline.MINUTES_PER_DAY / (width - 1), levels);
+
+        Paint strokePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        strokePaint.setStyle(Paint.Style.STROKE);
+        strokePaint.setStrokeWidth(Math.max(1, height / 16f));
+        strokePaint.setColor(context.getColor(R.color.tide_curve_color));
+        Paint fillPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        fillPaint.setStyle(Paint.Style.FILL);
+        fillPaint.setColor(context.getColor(R.color.tide_curve_fill_color));
+
+        // Keep the stroke inside the bitmap at high and low tide:
+        float inset = strokePaint.getStrokeWidth() / 2;
+        Path path = new Path();
+        for (int x = 0; x < width; x++) {
+            float y = inset + (1 - levels[x]) * (height - 2 * inset);
+            if (x == 0) {
+                path.moveTo(x, y);
+            } else {
+                path.lineTo(x, y);
+            }
+        }
+        Path fillPath = new Path(path);
+        fillPath.lineTo(width - 1, height);
+        fillPath.lineTo(0, height);
+        fillPath.close();
+
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.drawPath(fillPath, fillPaint);
+        canvas.drawPath(path, strokePaint);
+        return bitmap;
+    }
+
+    /**
+     * Width above which the curve does not become smoother in the widget.
+     */
+    private int getMaxBitmapWidth() {
+        return TideTimeline.MINUTES_PER_DAY / 2;
+    }
+
+    private boolean isNightMode() {
+        return (context.getResources().getConfiguration().uiMode
+                & Configuration.UI_MODE_NIGHT_MASK) == Configuration.UI_MODE_NIGHT_YES;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_MODERATE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            cache.evictAll();
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            cache.trimToSize(Constants.TIDE_CURVE_CACHE_BYTES / 4);
+        }
+        Log.d("TideCurveRenderer", "Trimmed to " + cache.size() + " bytes (level " + level + ")");
+    }
+
+    @Override
+    public void onLowMemory() {
+        cache.evictAll();
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+        // The theme is part of the cache key, so nothing needs to be invalidated.
+    }
+}
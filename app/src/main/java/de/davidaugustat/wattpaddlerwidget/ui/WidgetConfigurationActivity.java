@@ -1,12 +1,15 @@
 package de.davidaugustat.wattpaddlerwidget.ui;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.lifecycle.ViewModelProvider;
 
 import android.appwidget.AppWidgetManager;
 import android.content.Intent;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -14,19 +17,28 @@ import android.view.MenuItem;
 import android.view.View;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
+import android.widget.EditText;
 import android.widget.LinearLayout;
 import android.widget.ListView;
 import android.widget.ProgressBar;
 import android.widget.Toast;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import de.davidaugustat.wattpaddlerwidget.Constants;
 import de.davidaugustat.wattpaddlerwidget.R;
 import de.davidaugustat.wattpaddlerwidget.logic.SharedPreferencesHelper;
 import de.davidaugustat.wattpaddlerwidget.data.WidgetConfigurationViewModel;
 import de.davidaugustat.wattpaddlerwidget.data.Location;
 import de.davidaugustat.wattpaddlerwidget.logic.DataFetcher;
+import de.davidaugustat.wattpaddlerwidget.logic.FreshnessPolicy;
+import de.davidaugustat.wattpaddlerwidget.logic.LocationSearchIndex;
+import de.davidaugustat.wattpaddlerwidget.logic.LocationsSnapshotStore;
+import de.davidaugustat.wattpaddlerwidget.logic.NearestLocationIndex;
 
 /**
  * App widget configuration activity that lets the user select a location that should be used
@@ -34,24 +46,42 @@ import de.davidaugustat.wattpaddlerwidget.logic.DataFetcher;
  */
 public class WidgetConfigurationActivity extends AppCompatActivity {
 
+    /**
+     * Number of stations that are displayed when searching for a coordinate.
+     */
+    private static final int NEAREST_LOCATIONS_COUNT = 10;
+
     WidgetConfigurationViewModel viewModel;
 
+    private final ExecutorService diskExecutor = Executors.newSingleThreadExecutor();
+    private LocationsSnapshotStore snapshotStore;
+
+    private EditText searchField;
     private ListView locationsList;
     private ProgressBar progressBar;
     private LinearLayout errorLayout;
     private Button retryButton;
 
+    private ArrayAdapter<String> listAdapter;
+
+    /**
+     * Indices of the displayed locations in the locations list, in the order of the list view.
+     */
+    private int[] displayedIndices = new int[0];
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_widget_configuration);
 
+        searchField = findViewById(R.id.locations_search);
         locationsList = findViewById(R.id.locations_listview);
         progressBar = findViewById(R.id.config_progressBar);
         errorLayout = findViewById(R.id.config_error_layout);
         retryButton = findViewById(R.id.config_retry_button);
 
         viewModel = new ViewModelProvider(this).get(WidgetConfigurationViewModel.class);
+        snapshotStore = new LocationsSnapshotStore(this);
 
         // Result used by Android to decide whether to add widget or not. This value gets changed
         // when the "done" button has been clicked.
@@ -82,23 +112,104 @@ public class WidgetConfigurationActivity extends AppCompatActivity {
         return super.onOptionsItemSelected(item);
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        diskExecutor.shutdown();
+    }
+
     /**
-     * Fetches the locations list from the API an displays it in the locationsList list view.
-     * If an error occurs while fetching the data, an error message together with a retry button
-     * is displayed.
+     * Displays the locations list in the locationsList list view.
+     * <p>
+     * The list stored in the local snapshot is displayed right away. If the snapshot is older than
+     * allowed by the {@link FreshnessPolicy#LOCATIONS} policy, the list is fetched from the API in
+     * the background. The displayed list only gets replaced if the fetched list differs from the
+     * snapshot. Snapshots that are too old to be displayed right away are only displayed if
+     * fetching fails.
+     * <p>
+     * If no snapshot exists and an error occurs while fetching the data, an error message together
+     * with a retry button is displayed.
      */
     private void loadLocations(){
         progressBar.setVisibility(View.VISIBLE);
+        searchField.setVisibility(View.GONE);
         locationsList.setVisibility(View.GONE);
         errorLayout.setVisibility(View.GONE);
 
+        diskExecutor.execute(() -> {
+            List<Location> snapshotLocations = snapshotStore.load();
+            FreshnessPolicy.Decision decision = FreshnessPolicy.LOCATIONS.decide(
+                    snapshotLocations != null, snapshotStore.getAgeMillis(), false);
+            Log.d("Locations", "Locations snapshot: " + decision);
+            if (decision != FreshnessPolicy.Decision.FETCH) {
+                indexAndShowLocations(snapshotLocations);
+            }
+            if (decision != FreshnessPolicy.Decision.SERVE_LOCAL) {
+                runOnUiThread(() -> refreshLocations(snapshotLocations));
+            }
+        });
+    }
+
+    /**
+     * Fetches the locations list from the API and updates the snapshot. The list view is only
+     * updated if the content has changed.
+     *
+     * @param fallbackLocations Locations that are displayed if fetching fails and no locations
+     *                          are displayed yet, or null
+     */
+    private void refreshLocations(List<Location> fallbackLocations){
+        if (isDestroyed()) {
+            return;
+        }
+        // The callbacks run on the main thread and may arrive after the activity has been
+        // destroyed, i.e. after the disk executor has been shut down.
         new DataFetcher(this).fetchLocations(locations -> {
-            viewModel.setLocations(locations);
-            setupLocationsList();
+            if (isDestroyed()) {
+                return;
+            }
+            diskExecutor.execute(() -> {
+                boolean changed;
+                try {
+                    changed = snapshotStore.saveIfChanged(locations);
+                } catch (IOException e) {
+                    // The fetched list is displayed anyway, it is only not available offline.
+                    Log.e("Locations", "Cannot save the locations snapshot", e);
+                    changed = true;
+                }
+                if (changed || viewModel.getLocations() == null) {
+                    indexAndShowLocations(locations);
+                } else {
+                    Log.d("Locations", "Locations snapshot is up to date.");
+                }
+            });
         }, errorMessage -> {
             Log.d("Error loading locations", errorMessage);
-            progressBar.setVisibility(View.GONE);
-            errorLayout.setVisibility(View.VISIBLE);
+            if (isDestroyed()) {
+                return;
+            }
+            if (viewModel.getLocations() == null && fallbackLocations != null) {
+                diskExecutor.execute(() -> indexAndShowLocations(fallbackLocations));
+            } else if (viewModel.getLocations() == null) {
+                progressBar.setVisibility(View.GONE);
+                errorLayout.setVisibility(View.VISIBLE);
+            }
+        });
+    }
+
+    /**
+     * Builds the search indices of the locations and then stores the locations in the viewModel
+     * and displays them on the main thread.
+     */
+    @WorkerThread
+    private void indexAndShowLocations(List<Location> locations){
+        LocationSearchIndex searchIndex = new LocationSearchIndex(locations);
+        NearestLocationIndex nearestIndex = new NearestLocationIndex(locations);
+        runOnUiThread(() -> {
+            if (isDestroyed()) {
+                return;
+            }
+            viewModel.setLocations(locations, searchIndex, nearestIndex);
+            setupLocationsList();
         });
     }
 
@@ -133,6 +244,7 @@ public class WidgetConfigurationActivity extends AppCompatActivity {
         Intent intent = new Intent(this, MainWidget.class);
         intent.setAction(AppWidgetManager.ACTION_APPWIDGET_UPDATE);
         intent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS, new int [] {viewModel.getAppWidgetId()});
+        intent.putExtra(Constants.NEW_WIDGET_EXTRA, true);
         sendBroadcast(intent);
     }
 
@@ -153,7 +265,8 @@ public class WidgetConfigurationActivity extends AppCompatActivity {
     }
 
     /**
-     * Displays the locations from the list in the locationsList list view.
+     * Displays the locations from the list in the locationsList list view, filtered by the search
+     * query in the search field.
      *
      * Additionally sets up an item click listener for this list: When an item is clicked, the
      * selectedLocation field is set to its associated location object.
@@ -162,29 +275,101 @@ public class WidgetConfigurationActivity extends AppCompatActivity {
      * called.
      */
     private void setupLocationsList(){
+        searchField.setVisibility(View.VISIBLE);
         locationsList.setVisibility(View.VISIBLE);
         progressBar.setVisibility(View.GONE);
 
         locationsList.setChoiceMode(ListView.CHOICE_MODE_SINGLE);
 
-        List<String> locationNames = viewModel.getLocations().stream()
-                .map(Location::getName)
-                .collect(Collectors.toList());
+        if (listAdapter == null) {
+            listAdapter = new ArrayAdapter<>(this,
+                    android.R.layout.simple_list_item_single_choice, new ArrayList<>());
+            locationsList.setAdapter(listAdapter);
+            locationsList.setOnItemClickListener((adapterView, view, position, id) -> {
+                int index = displayedIndices[position];
+                viewModel.setSelectedLocation(viewModel.getLocations().get(index), index);
+            });
+            searchField.addTextChangedListener(new TextWatcher() {
+                @Override
+                public void beforeTextChanged(CharSequence text, int start, int count, int after) {
+                }
 
-        ArrayAdapter<String> listAdapter = new ArrayAdapter<>(this,
-                android.R.layout.simple_list_item_single_choice, locationNames);
-        locationsList.setAdapter(listAdapter);
-        locationsList.setOnItemClickListener((adapterView, view, index, id) -> {
-            viewModel.setSelectedLocation(viewModel.getLocations().get(index), index);
-        });
+                @Override
+                public void onTextChanged(CharSequence text, int start, int before, int count) {
+                }
+
+                @Override
+                public void afterTextChanged(Editable text) {
+                    viewModel.setSearchQuery(text.toString());
+                    selectNearestLocationIfCoordinates();
+                    filterLocationsList();
+                }
+            });
+        }
 
         setPresetLocationCheckedIfExists();
+        filterLocationsList();
+    }
+
+    /**
+     * Returns the coordinates in the search query of the viewModel, or null if the query is not a
+     * coordinate or no station has coordinates.
+     */
+    private double[] getSearchCoordinates() {
+        if (viewModel.getNearestIndex() == null || viewModel.getNearestIndex().size() == 0) {
+            return null;
+        }
+        return NearestLocationIndex.parseCoordinates(viewModel.getSearchQuery());
+    }
+
+    /**
+     * Selects the station closest to the coordinates the user entered into the search field.
+     */
+    private void selectNearestLocationIfCoordinates() {
+        double[] coordinates = getSearchCoordinates();
+        if (coordinates != null) {
+            int index = viewModel.getNearestIndex().findNearest(coordinates[0], coordinates[1]);
+            viewModel.setSelectedLocation(viewModel.getLocations().get(index), index);
+        }
+    }
+
+    /**
+     * Displays the locations that match the search query of the viewModel, best matches first,
+     * and checks the selected location if it is among them. If the query is a coordinate, the
+     * stations closest to it are displayed instead.
+     */
+    private void filterLocationsList() {
+        if (viewModel.getSearchIndex() == null) {
+            return;
+        }
+        double[] coordinates = getSearchCoordinates();
+        displayedIndices = coordinates != null
+                ? viewModel.getNearestIndex().findNearest(coordinates[0], coordinates[1], NEAREST_LOCATIONS_COUNT)
+                : viewModel.getSearchIndex().search(viewModel.getSearchQuery());
+        List<String> locationNames = new ArrayList<>(displayedIndices.length);
+        for (int index : displayedIndices) {
+            locationNames.add(viewModel.getLocations().get(index).getName());
+        }
+        listAdapter.setNotifyOnChange(false);
+        listAdapter.clear();
+        listAdapter.addAll(locationNames);
+        listAdapter.notifyDataSetChanged();
+
+        locationsList.clearChoices();
+        if (viewModel.getSelectedLocation() != null) {
+            for (int position = 0; position < displayedIndices.length; position++) {
+                if (displayedIndices[position] == viewModel.getSelectedLocationIndex()) {
+                    locationsList.setItemChecked(position, true);
+                    break;
+                }
+            }
+        }
     }
 
     /**
      * Checks if a location for the current widget has already been configured in a previous setup
      * or is already stored in the viewModel. If this is the case, this location is preselected in
-     * the list of locations.
+     * the viewModel. It gets checked in the list view when the list is filtered.
      *
      * Note that the locations list in the viewModel must be loaded already before this method gets
      * called.
@@ -193,7 +378,7 @@ public class WidgetConfigurationActivity extends AppCompatActivity {
         if(viewModel.getSelectedLocation() == null) {
             try {
                 Location presetLocation = SharedPreferencesHelper.getLocation(viewModel.getAppWidgetId(), this);
-                int index = viewModel.getLocations().indexOf(presetLocation);
+                int index = viewModel.getSearchIndex().indexOfId(presetLocation.getId());
                 if (index != -1) {
                     viewModel.setSelectedLocation(presetLocation, index);
                 }
@@ -202,9 +387,5 @@ public class WidgetConfigurationActivity extends AppCompatActivity {
                 // action is required.
             }
         }
-
-        if(viewModel.getSelectedLocation() != null){
-            locationsList.setItemChecked(viewModel.getSelectedLocationIndex(), true);
-        }
     }
 }
\ No newline at end of file
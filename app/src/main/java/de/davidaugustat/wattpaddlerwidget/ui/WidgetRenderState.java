@@ -0,0 +1,214 @@
+package de.davidaugustat.wattpaddlerwidget.ui;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.view.View;
+import android.widget.RemoteViews;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.davidaugustat.wattpaddlerwidget.R;
+
+/**
+ * Content that is currently displayed on a widget.
+ * <p>
+ * The last rendered state of every widget is remembered by this process. New content is then
+ * compared to it, so that only the fields that actually changed are sent to the launcher with a
+ * partial update, and nothing is sent if nothing changed. The states get lost when the process
+ * ends; the next update then pushes the full layout again (see {@link #needsFullUpdate(int, String)}).
+ * <p>
+ * Objects of this class are immutable. The registry of rendered states is thread-safe.
+ */
+final class WidgetRenderState {
+
+    /**
+     * State of a freshly inflated layout, i.e. the placeholders and visibilities defined in the
+     * layout file.
+     */
+    private static final WidgetRenderState INITIAL =
+            new WidgetRenderState(false, null, null, false, null, null, null, null, -1);
+
+    private static final Map<Integer, WidgetRenderState> renderedStates = new ConcurrentHashMap<>();
+
+    /**
+     * Identifies the click handlers of the full layout that the widget got from this process.
+     */
+    private static final Map<Integer, String> clickHandlerKeys = new ConcurrentHashMap<>();
+
+    private final boolean mainLayoutVisible;
+    private final String locationName;
+    private final String date;
+
+    /**
+     * true iff the displayed tides are from an earlier day than today. The date is dimmed then.
+     */
+    private final boolean stale;
+    private final String highTides;
+    private final String lowTides;
+    private final String debugText;
+
+    /**
+     * Base layer of the tide curve. Bitmaps are compared by identity, which is sufficient because
+     * the TideCurveRenderer returns the same cached bitmap as long as the curve does not change.
+     */
+    private final Bitmap tideCurve;
+    private final int nowMarkerX;
+
+    private WidgetRenderState(boolean mainLayoutVisible, String locationName, String date,
+                              boolean stale, String highTides, String lowTides, String debugText,
+                              Bitmap tideCurve, int nowMarkerX) {
+        this.mainLayoutVisible = mainLayoutVisible;
+        this.locationName = locationName;
+        this.date = date;
+        this.stale = stale;
+        this.highTides = highTides;
+        this.lowTides = lowTides;
+        this.debugText = debugText;
+        this.tideCurve = tideCurve;
+        this.nowMarkerX = nowMarkerX;
+    }
+
+    /**
+     * Returns the state of a widget that shows the given tides, without debug text and tide curve.
+     *
+     * @param stale true iff the tides are from an earlier day than today
+     */
+    static WidgetRenderState ofTides(String locationName, String date, boolean stale,
+                                     String highTides, String lowTides) {
+        return new WidgetRenderState(true, locationName, date, stale, highTides, lowTides, null,
+                null, -1);
+    }
+
+    WidgetRenderState withDebugText(String debugText) {
+        return new WidgetRenderState(mainLayoutVisible, locationName, date, stale, highTides,
+                lowTides, debugText, tideCurve, nowMarkerX);
+    }
+
+    /**
+     * @param tideCurve  Base layer of the curve or null if no curve is displayed
+     * @param nowMarkerX Position of the marker of the current time or -1 if there is none
+     */
+    WidgetRenderState withTideCurve(Bitmap tideCurve, int nowMarkerX) {
+        return new WidgetRenderState(mainLayoutVisible, locationName, date, stale, highTides,
+                lowTides, debugText, tideCurve, tideCurve != null ? nowMarkerX : -1);
+    }
+
+    /**
+     * Returns the state that was last rendered on the widget by this process.
+     */
+    static WidgetRenderState getRendered(int appWidgetId) {
+        WidgetRenderState state = renderedStates.get(appWidgetId);
+        return state != null ? state : INITIAL;
+    }
+
+    static void setRendered(int appWidgetId, WidgetRenderState state) {
+        renderedStates.put(appWidgetId, state);
+    }
+
+    /**
+     * Returns true iff the widget has to get the full layout, because this process has not sent
+     * it yet or because its click handlers changed. The widget is then considered to show the
+     * {@link #INITIAL} state, as this is what the full layout contains.
+     *
+     * @param clickHandlerKey Identifies the click handlers the widget should have
+     */
+    static boolean needsFullUpdate(int appWidgetId, String clickHandlerKey) {
+        return !clickHandlerKey.equals(clickHandlerKeys.get(appWidgetId));
+    }
+
+    /**
+     * Records that the full layout with the given click handlers was sent to the widget.
+     */
+    static void setFullyUpdated(int appWidgetId, String clickHandlerKey) {
+        clickHandlerKeys.put(appWidgetId, clickHandlerKey);
+        renderedStates.put(appWidgetId, INITIAL);
+    }
+
+    static void forget(int appWidgetId) {
+        clickHandlerKeys.remove(appWidgetId);
+        renderedStates.remove(appWidgetId);
+    }
+
+    /**
+     * Adds the actions to the RemoteViews that change the widget from the previous state to this
+     * state.
+     *
+     * @param previous   State that is currently displayed
+     * @param curveWidth Width of the tide curve in the widget in pixels
+     * @return true iff any action was added, i.e. the states differ.
+     */
+    boolean applyChanges(Context context, RemoteViews views, WidgetRenderState previous,
+                         TideCurveRenderer curveRenderer, int curveWidth) {
+        boolean changed = false;
+        if (mainLayoutVisible != previous.mainLayoutVisible) {
+            int visibility = mainLayoutVisible ? View.VISIBLE : View.GONE;
+            views.setViewVisibility(R.id.widgetRow1Layout, visibility);
+            views.setViewVisibility(R.id.widgetRow2Layout, visibility);
+            views.setViewVisibility(R.id.textViewLowTide, visibility);
+            views.setViewVisibility(R.id.textViewStatus, mainLayoutVisible ? View.GONE : View.VISIBLE);
+            changed = true;
+        }
+        changed |= applyText(views, R.id.textViewLocation, locationName, previous.locationName);
+        changed |= applyText(views, R.id.textViewDate, date, previous.date);
+        if (stale != previous.stale) {
+            views.setTextColor(R.id.textViewDate, context.getColor(stale
+                    ? R.color.widget_stale_text_color : R.color.widget_text_color));
+            changed = true;
+        }
+        changed |= applyText(views, R.id.textViewHighTide, highTides, previous.highTides);
+        changed |= applyText(views, R.id.textViewLowTide, lowTides, previous.lowTides);
+        if (!Objects.equals(debugText, previous.debugText)) {
+            views.setViewVisibility(R.id.textViewDebug, debugText != null ? View.VISIBLE : View.GONE);
+            if (debugText != null) {
+                views.setTextViewText(R.id.textViewDebug, debugText);
+            }
+            changed = true;
+        }
+        if (tideCurve != previous.tideCurve) {
+            views.setViewVisibility(R.id.tideCurveLayout, tideCurve != null ? View.VISIBLE : View.GONE);
+            if (tideCurve != null) {
+                views.setImageViewBitmap(R.id.imageViewTideCurve, tideCurve);
+            }
+            changed = true;
+        }
+        if (tideCurve != null && (nowMarkerX != previous.nowMarkerX || tideCurve != previous.tideCurve)) {
+            // The marker is cleared if the widget does not show today:
+            views.setImageViewBitmap(R.id.imageViewTideCurveNow, nowMarkerX >= 0
+                    ? curveRenderer.getNowMarkerBitmap(curveWidth, nowMarkerX) : null);
+            changed = true;
+        }
+        return changed;
+    }
+
+    private static boolean applyText(RemoteViews views, int viewId, String text, String previousText) {
+        if (text == null || text.equals(previousText)) {
+            return false;
+        }
+        views.setTextViewText(viewId, text);
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        WidgetRenderState that = (WidgetRenderState) o;
+        return mainLayoutVisible == that.mainLayoutVisible
+                && stale == that.stale
+                && nowMarkerX == that.nowMarkerX
+                && tideCurve == that.tideCurve
+                && Objects.equals(locationName, that.locationName)
+                && Objects.equals(date, that.date)
+                && Objects.equals(highTides, that.highTides)
+                && Objects.equals(lowTides, that.lowTides)
+                && Objects.equals(debugText, that.debugText);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mainLayoutVisible, locationName, date, stale, highTides, lowTides, debugText,
+                System.identityHashCode(tideCurve), nowMarkerX);
+    }
+}
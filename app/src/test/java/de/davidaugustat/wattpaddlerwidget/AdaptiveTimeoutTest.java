@@ -0,0 +1,54 @@
+package de.davidaugustat.wattpaddlerwidget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.davidaugustat.wattpaddlerwidget.logic.AdaptiveTimeout;
+import de.davidaugustat.wattpaddlerwidget.logic.RetryBudget;
+
+public class AdaptiveTimeoutTest {
+
+    @Test
+    public void testTimeoutFollowsLatencies(){
+        AdaptiveTimeout timeout = new AdaptiveTimeout(5000, 2000, 10000, 2);
+        assertEquals(5000, timeout.getTimeoutMillis());
+
+        // Fast network: p99 <= 200ms, so the floor applies.
+        for (int i = 0; i < 20; i++) {
+            timeout.record(150);
+        }
+        assertEquals(2000, timeout.getTimeoutMillis());
+
+        // Slow network: after two full windows, only the slow latencies are left.
+        for (int i = 0; i < 100; i++) {
+            timeout.record(1800);
+        }
+        assertEquals(4000, timeout.getTimeoutMillis());
+
+        // Timeouts above the largest bucket push the timeout to the ceiling.
+        timeout.record(60000);
+        assertEquals(10000, timeout.getTimeoutMillis());
+    }
+
+    @Test
+    public void testRetryBudget(){
+        RetryBudget budget = new RetryBudget(0.1, 2);
+        budget.onRequest();
+        assertTrue(budget.tryAcquireRetry());
+        assertTrue(budget.tryAcquireRetry());
+        assertFalse(budget.tryAcquireRetry());
+
+        // Every tenth request earns a retry again:
+        for (int i = 0; i < 9; i++) {
+            budget.onRequest();
+        }
+        assertFalse(budget.tryAcquireRetry());
+        budget.onRequest();
+        budget.onRequest();
+        assertTrue(budget.tryAcquireRetry());
+        assertFalse(budget.tryAcquireRetry());
+    }
+}
@@ -0,0 +1,53 @@
+package de.davidaugustat.wattpaddlerwidget;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import de.davidaugustat.wattpaddlerwidget.logic.LatencyHistogram;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testPercentiles(){
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(-1, histogram.getPercentileUpperBoundMillis(50));
+
+        for (int i = 0; i < 90; i++) {
+            histogram.record(40);
+        }
+        for (int i = 0; i < 9; i++) {
+            histogram.record(150);
+        }
+        histogram.record(60000);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(50, histogram.getPercentileUpperBoundMillis(50));
+        assertEquals(50, histogram.getPercentileUpperBoundMillis(90));
+        assertEquals(200, histogram.getPercentileUpperBoundMillis(99));
+        assertEquals(Long.MAX_VALUE, histogram.getPercentileUpperBoundMillis(100));
+    }
+
+    @Test
+    public void testBucketBounds(){
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(0);
+        histogram.record(1);
+        histogram.record(2);
+        assertEquals(2, histogram.getBucketCount(0));
+        assertEquals(1, histogram.getBucketCount(1));
+        assertEquals(1, LatencyHistogram.getBucketUpperBoundMillis(0));
+    }
+
+    @Test
+    public void testAdd(){
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        first.record(3);
+        second.record(3);
+        second.record(700);
+        first.add(second);
+        assertEquals(3, first.getCount());
+        assertEquals(1000, first.getPercentileUpperBoundMillis(100));
+    }
+}
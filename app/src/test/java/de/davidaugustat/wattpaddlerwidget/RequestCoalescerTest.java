@@ -0,0 +1,43 @@
+package de.davidaugustat.wattpaddlerwidget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.davidaugustat.wattpaddlerwidget.logic.RequestCoalescer;
+
+public class RequestCoalescerTest {
+
+    @Test
+    public void testCallersOfSameKeyShareResult(){
+        RequestCoalescer<String> coalescer = new RequestCoalescer<>();
+        List<String> results = new ArrayList<>();
+
+        assertTrue(coalescer.register("510P|2022-10-09", results::add, results::add));
+        assertFalse(coalescer.register("510P|2022-10-09", results::add, results::add));
+        assertTrue(coalescer.register("631P|2022-10-09", results::add, results::add));
+        assertEquals(2, coalescer.getPendingCount());
+
+        coalescer.complete("510P|2022-10-09", "result");
+        assertEquals(2, results.size());
+        assertEquals("result", results.get(0));
+        assertEquals("result", results.get(1));
+        assertEquals(1, coalescer.getPendingCount());
+    }
+
+    @Test
+    public void testKeyIsFreeAfterFailure(){
+        RequestCoalescer<String> coalescer = new RequestCoalescer<>();
+        List<String> errors = new ArrayList<>();
+
+        assertTrue(coalescer.register("510P|2022-10-09", result -> {}, errors::add));
+        coalescer.fail("510P|2022-10-09", "timeout");
+        assertEquals(1, errors.size());
+        assertTrue(coalescer.register("510P|2022-10-09", result -> {}, errors::add));
+    }
+}
@@ -0,0 +1,27 @@
+package de.davidaugustat.wattpaddlerwidget;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Test;
+
+import de.davidaugustat.wattpaddlerwidget.logic.TidesMemoryCache;
+
+public class TidesMemoryCacheTest {
+
+    @Test
+    public void testBackgroundKeepsAllEntries(){
+        assertEquals(64, TidesMemoryCache.getMaxEntriesAfterTrim(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE));
+        assertEquals(64, TidesMemoryCache.getMaxEntriesAfterTrim(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN));
+        assertEquals(64, TidesMemoryCache.getMaxEntriesAfterTrim(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND));
+    }
+
+    @Test
+    public void testMemoryPressureShrinksCache(){
+        assertEquals(16, TidesMemoryCache.getMaxEntriesAfterTrim(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW));
+        assertEquals(16, TidesMemoryCache.getMaxEntriesAfterTrim(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL));
+        assertEquals(16, TidesMemoryCache.getMaxEntriesAfterTrim(ComponentCallbacks2.TRIM_MEMORY_MODERATE));
+        assertEquals(0, TidesMemoryCache.getMaxEntriesAfterTrim(ComponentCallbacks2.TRIM_MEMORY_COMPLETE));
+    }
+}
@@ -0,0 +1,79 @@
+package de.davidaugustat.wattpaddlerwidget.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import de.davidaugustat.wattpaddlerwidget.data.Location;
+import de.davidaugustat.wattpaddlerwidget.data.TidesInfo;
+import de.davidaugustat.wattpaddlerwidget.logic.LocationsCsvParser;
+import de.davidaugustat.wattpaddlerwidget.logic.LocationsSnapshotCodec;
+import de.davidaugustat.wattpaddlerwidget.logic.TideEventsCodec;
+import de.davidaugustat.wattpaddlerwidget.logic.TidesResponseParser;
+import okio.Buffer;
+
+/**
+ * Encoding and decoding of the data the app stores: the locations snapshot and the tide events
+ * of the tides store. The tide events benchmarks process every day of the corpus per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CacheCodecBenchmark {
+
+    private List<Location> locations;
+    private byte[] encodedLocations;
+    private List<TidesInfo> tidesInfos;
+    private List<byte[]> encodedTideEvents;
+
+    @Setup
+    public void loadCorpus() throws IOException {
+        locations = LocationsCsvParser.parse(new Buffer().write(Corpus.loadLocationsCsv()),
+                StandardCharsets.ISO_8859_1);
+        encodedLocations = LocationsSnapshotCodec.encode(locations);
+
+        tidesInfos = new ArrayList<>();
+        encodedTideEvents = new ArrayList<>();
+        for (Corpus.TidesResponse response : Corpus.loadTidesResponses()) {
+            TidesInfo tidesInfo = TidesResponseParser.parse(response.location, response.date,
+                    response.body, response.body.length);
+            tidesInfos.add(tidesInfo);
+            encodedTideEvents.add(TideEventsCodec.encode(tidesInfo));
+        }
+    }
+
+    @Benchmark
+    public byte[] encodeLocationsSnapshot() {
+        return LocationsSnapshotCodec.encode(locations);
+    }
+
+    @Benchmark
+    public List<Location> decodeLocationsSnapshot() throws IOException {
+        return LocationsSnapshotCodec.decode(encodedLocations);
+    }
+
+    @Benchmark
+    public void encodeTideEvents(Blackhole blackhole) {
+        for (TidesInfo tidesInfo : tidesInfos) {
+            blackhole.consume(TideEventsCodec.encode(tidesInfo));
+        }
+    }
+
+    @Benchmark
+    public void decodeTideEvents(Blackhole blackhole) {
+        for (byte[] events : encodedTideEvents) {
+            blackhole.consume(TideEventsCodec.decode(events));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package de.davidaugustat.wattpaddlerwidget.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.davidaugustat.wattpaddlerwidget.data.Location;
+
+/**
+ * API responses the benchmarks run against. They are bundled as resources in the corpus
+ * directory:
+ * <ul>
+ *     <li>corpus/locations.csv: response of the locations API (ISO-8859-1)</li>
+ *     <li>corpus/tides/[locationId]_[yyyy-MM-dd].txt: responses of the widget API, listed in
+ *     corpus/tides/index.txt</li>
+ *     <li>corpus/harmonics/[name].txt: harmonic constants for the offline prediction</li>
+ * </ul>
+ * Further responses can be added by dropping them into corpus/tides and adding their file
+ * names to the index.
+ */
+public class Corpus {
+
+    /**
+     * A response of the widget API together with the parameters of its request.
+     */
+    public static class TidesResponse {
+        public final Location location;
+        public final String date;
+        public final byte[] body;
+
+        TidesResponse(Location location, String date, byte[] body) {
+            this.location = location;
+            this.date = date;
+            this.body = body;
+        }
+    }
+
+    public static byte[] loadLocationsCsv() throws IOException {
+        return readResource("corpus/locations.csv");
+    }
+
+    public static List<TidesResponse> loadTidesResponses() throws IOException {
+        String index = new String(readResource("corpus/tides/index.txt"), StandardCharsets.US_ASCII);
+        List<TidesResponse> responses = new ArrayList<>();
+        for (String fileName : index.split("\n")) {
+            fileName = fileName.trim();
+            if (fileName.isEmpty()) {
+                continue;
+            }
+            String[] parameters = fileName.substring(0, fileName.lastIndexOf('.')).split("_");
+            Location location = new Location(parameters[0], parameters[0]);
+            responses.add(new TidesResponse(location, parameters[1],
+                    readResource("corpus/tides/" + fileName)));
+        }
+        return responses;
+    }
+
+    public static byte[] loadHarmonics(String name) throws IOException {
+        return readResource("corpus/harmonics/" + name + ".txt");
+    }
+
+    private static byte[] readResource(String name) throws IOException {
+        try (InputStream in = Corpus.class.getClassLoader().getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IOException("Missing corpus resource " + name);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package de.davidaugustat.wattpaddlerwidget.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import de.davidaugustat.wattpaddlerwidget.data.Location;
+import de.davidaugustat.wattpaddlerwidget.data.TidesInfo;
+import de.davidaugustat.wattpaddlerwidget.data.TidesInfoBuilder;
+import de.davidaugustat.wattpaddlerwidget.logic.DateTimeHelper;
+
+/**
+ * Date formatting and parsing of {@link DateTimeHelper} and the string based path of
+ * {@link TidesInfoBuilder}.
+ * <p>
+ * Some of the results depend on the default time zone, so the benchmarks are run with a fixed
+ * time zone (see the jmh task in build.gradle).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DateTimeBenchmark {
+
+    // The inputs are not final, so that the JIT cannot treat them as constants:
+    private Location location = new Location("510P", "Nordstrand");
+    private LocalDate date = LocalDate.of(2022, 10, 9);
+    private LocalDateTime dateTime = LocalDateTime.of(2022, 10, 9, 14, 28);
+    private String dateString = "2022-10-09";
+    private String timeString = "14:28";
+
+    @Benchmark
+    public String formatQueryDate() {
+        return DateTimeHelper.getDateInQueryNotation(date);
+    }
+
+    @Benchmark
+    public LocalDate parseQueryDate() {
+        return DateTimeHelper.parseDate(dateString);
+    }
+
+    @Benchmark
+    public LocalDateTime parseTidesTimeInCET() {
+        return DateTimeHelper.parseTidesTimeInCET(dateString, timeString);
+    }
+
+    @Benchmark
+    public String formatTidesTime() {
+        return DateTimeHelper.getFormattedTidesTime(dateTime);
+    }
+
+    @Benchmark
+    public String formatGermanDate() {
+        return DateTimeHelper.getDateInGermanFormatting(date);
+    }
+
+    /**
+     * Builds the tides of a day from strings, i.e. parses four dates and times.
+     */
+    @Benchmark
+    public TidesInfo buildTidesInfoFromStrings() {
+        TidesInfoBuilder builder = new TidesInfoBuilder(location, dateString);
+        builder.addTideTime(dateString, "02:13", "H");
+        builder.addTideTime(dateString, "08:22", "N");
+        builder.addTideTime(dateString, timeString, "H");
+        builder.addTideTime(dateString, "21:04", "N");
+        return builder.build();
+    }
+}
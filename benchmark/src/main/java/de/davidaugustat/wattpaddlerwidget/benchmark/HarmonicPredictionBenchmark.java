@@ -0,0 +1,56 @@
+package de.davidaugustat.wattpaddlerwidget.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import de.davidaugustat.wattpaddlerwidget.data.Location;
+import de.davidaugustat.wattpaddlerwidget.data.TidesInfo;
+import de.davidaugustat.wattpaddlerwidget.logic.HarmonicTidePredictor;
+import de.davidaugustat.wattpaddlerwidget.logic.StationHarmonicsParser;
+import okio.Buffer;
+
+/**
+ * Offline tide prediction with the {@link HarmonicTidePredictor}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HarmonicPredictionBenchmark {
+
+    private final Location location = new Location("synthetic", "Synthetic");
+    private final ZoneId zone = ZoneId.of("Europe/Berlin");
+    private HarmonicTidePredictor predictor;
+    private LocalDate firstDate = LocalDate.of(2022, 1, 1);
+
+    @Setup
+    public void loadCorpus() throws IOException {
+        predictor = new HarmonicTidePredictor(StationHarmonicsParser.parse(location.getId(),
+                new Buffer().write(Corpus.loadHarmonics("synthetic"))));
+    }
+
+    @Benchmark
+    public TidesInfo predictDay() {
+        return predictor.predictDay(location, firstDate, zone);
+    }
+
+    @Benchmark
+    public List<TidesInfo> predictWeek() {
+        return predictor.predictDays(location, firstDate, firstDate.plusDays(6), zone);
+    }
+
+    @Benchmark
+    public List<TidesInfo> predictYear() {
+        return predictor.predictDays(location, firstDate, firstDate.plusYears(1).minusDays(1), zone);
+    }
+}
@@ -0,0 +1,56 @@
+package de.davidaugustat.wattpaddlerwidget.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import de.davidaugustat.wattpaddlerwidget.data.Location;
+import de.davidaugustat.wattpaddlerwidget.logic.LocationSearchIndex;
+import de.davidaugustat.wattpaddlerwidget.logic.LocationsCsvParser;
+import okio.Buffer;
+
+/**
+ * Latency of the location search in the configuration screen. One operation of {@link #type()}
+ * runs the queries of typing a location name character by character.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LocationSearchBenchmark {
+
+    private static final String[] TYPED_NAMES = {"Büsum", "Norderney", "Cuxhafen", "St. Peter"};
+
+    private List<Location> locations;
+    private LocationSearchIndex index;
+
+    @Setup
+    public void loadCorpus() throws IOException {
+        locations = LocationsCsvParser.parse(new Buffer().write(Corpus.loadLocationsCsv()),
+                StandardCharsets.ISO_8859_1);
+        index = new LocationSearchIndex(locations);
+    }
+
+    @Benchmark
+    public LocationSearchIndex build() {
+        return new LocationSearchIndex(locations);
+    }
+
+    @Benchmark
+    public void type(Blackhole blackhole) {
+        for (String name : TYPED_NAMES) {
+            for (int length = 1; length <= name.length(); length++) {
+                blackhole.consume(index.search(name.substring(0, length)));
+            }
+        }
+    }
+}
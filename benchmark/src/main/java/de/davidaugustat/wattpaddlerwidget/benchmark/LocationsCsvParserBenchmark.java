@@ -0,0 +1,39 @@
+package de.davidaugustat.wattpaddlerwidget.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import de.davidaugustat.wattpaddlerwidget.data.Location;
+import de.davidaugustat.wattpaddlerwidget.logic.LocationsCsvParser;
+import okio.Buffer;
+
+/**
+ * Parse throughput of the locations API response. One operation parses the whole CSV.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class LocationsCsvParserBenchmark {
+
+    private byte[] locationsCsv;
+
+    @Setup
+    public void loadCorpus() throws IOException {
+        locationsCsv = Corpus.loadLocationsCsv();
+    }
+
+    @Benchmark
+    public List<Location> parse() throws IOException {
+        return LocationsCsvParser.parse(new Buffer().write(locationsCsv), StandardCharsets.ISO_8859_1);
+    }
+}
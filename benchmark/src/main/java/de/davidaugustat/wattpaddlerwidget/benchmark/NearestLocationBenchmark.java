@@ -0,0 +1,76 @@
+package de.davidaugustat.wattpaddlerwidget.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import de.davidaugustat.wattpaddlerwidget.data.Location;
+import de.davidaugustat.wattpaddlerwidget.logic.LocationsCsvParser;
+import de.davidaugustat.wattpaddlerwidget.logic.NearestLocationIndex;
+import okio.Buffer;
+
+/**
+ * Build and query time of the nearest station lookup. The corpus does not contain coordinates, so
+ * its stations are placed at random positions along the German coast; they are repeated to reach
+ * the given number of stations. One operation of {@link #query(Blackhole)} runs
+ * {@link #QUERY_COUNT} queries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NearestLocationBenchmark {
+
+    private static final int QUERY_COUNT = 100;
+
+    @Param({"1000", "10000"})
+    public int stationCount;
+
+    private List<Location> locations;
+    private NearestLocationIndex index;
+    private double[] queries;
+
+    @Setup
+    public void loadCorpus() throws IOException {
+        List<Location> corpusLocations = LocationsCsvParser.parse(
+                new Buffer().write(Corpus.loadLocationsCsv()), StandardCharsets.ISO_8859_1);
+        Random random = new Random(42);
+        locations = new ArrayList<>(stationCount);
+        for (int i = 0; i < stationCount; i++) {
+            Location location = corpusLocations.get(i % corpusLocations.size());
+            locations.add(new Location(location.getId() + "_" + i, location.getName(),
+                    53 + random.nextDouble() * 2, 6.5 + random.nextDouble() * 7));
+        }
+        index = new NearestLocationIndex(locations);
+
+        queries = new double[QUERY_COUNT * 2];
+        for (int i = 0; i < queries.length; i += 2) {
+            queries[i] = 52.5 + random.nextDouble() * 3;
+            queries[i + 1] = 6 + random.nextDouble() * 8;
+        }
+    }
+
+    @Benchmark
+    public NearestLocationIndex build() {
+        return new NearestLocationIndex(locations);
+    }
+
+    @Benchmark
+    public void query(Blackhole blackhole) {
+        for (int i = 0; i < queries.length; i += 2) {
+            blackhole.consume(index.findNearest(queries[i], queries[i + 1], 10));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package de.davidaugustat.wattpaddlerwidget.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import de.davidaugustat.wattpaddlerwidget.logic.TidesResponseParser;
+import okio.Buffer;
+
+/**
+ * Parse throughput of the widget API responses. One operation parses every response of the
+ * corpus once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TidesParserBenchmark {
+
+    private List<Corpus.TidesResponse> responses;
+
+    @Setup
+    public void loadCorpus() throws IOException {
+        responses = Corpus.loadTidesResponses();
+    }
+
+    /**
+     * Parses the day that was queried, like a widget update does.
+     */
+    @Benchmark
+    public void parseTargetDay(Blackhole blackhole) {
+        for (Corpus.TidesResponse response : responses) {
+            blackhole.consume(TidesResponseParser.parse(response.location, response.date,
+                    response.body, response.body.length));
+        }
+    }
+
+    /**
+     * Same as {@link #parseTargetDay(Blackhole)}, but reads the responses from an Okio source
+     * like the app does with the response body.
+     */
+    @Benchmark
+    public void parseTargetDayFromSource(Blackhole blackhole) throws IOException {
+        for (Corpus.TidesResponse response : responses) {
+            Buffer source = new Buffer().write(response.body);
+            blackhole.consume(TidesResponseParser.parse(response.location, response.date, source));
+        }
+    }
+
+    /**
+     * Parses every day that occurs in the responses.
+     */
+    @Benchmark
+    public void parseAllDays(Blackhole blackhole) {
+        for (Corpus.TidesResponse response : responses) {
+            blackhole.consume(TidesResponseParser.parseAllDays(response.location,
+                    response.body, response.body.length));
+        }
+    }
+}
@@ -7,9 +7,21 @@ public class Location {
     private final String id;
     private final String name;
 
+    /**
+     * Coordinates of the station in degrees (WGS 84), or NaN if they are unknown.
+     */
+    private final double latitude;
+    private final double longitude;
+
     public Location(String id, String name) {
+        this(id, name, Double.NaN, Double.NaN);
+    }
+
+    public Location(String id, String name, double latitude, double longitude) {
         this.id = id;
         this.name = name;
+        this.latitude = latitude;
+        this.longitude = longitude;
     }
 
     public String getId() {
@@ -20,11 +32,24 @@ public class Location {
         return name;
     }
 
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public boolean hasCoordinates() {
+        return !Double.isNaN(latitude) && !Double.isNaN(longitude);
+    }
+
     @Override
     public String toString() {
         return "Location{" +
                 "id='" + id + '\'' +
                 ", name='" + name + '\'' +
+                (hasCoordinates() ? ", latitude=" + latitude + ", longitude=" + longitude : "") +
                 '}';
     }
 
@@ -0,0 +1,64 @@
+package de.davidaugustat.wattpaddlerwidget.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import de.davidaugustat.wattpaddlerwidget.logic.TidalConstituent;
+
+/**
+ * Harmonic constants of a station: the mean water level and the amplitude and phase of every
+ * tidal constituent. The phases are Greenwich phase lags (relative to UTC) in degrees. Heights
+ * may be given in any unit, as long as the mean level and all amplitudes use the same one.
+ */
+public class StationHarmonics {
+
+    private final String locationId;
+    private final double meanLevel;
+    private final List<Constituent> constituents;
+
+    public StationHarmonics(String locationId, double meanLevel, List<Constituent> constituents) {
+        this.locationId = locationId;
+        this.meanLevel = meanLevel;
+        this.constituents = Collections.unmodifiableList(new ArrayList<>(constituents));
+    }
+
+    public String getLocationId() {
+        return locationId;
+    }
+
+    public double getMeanLevel() {
+        return meanLevel;
+    }
+
+    public List<Constituent> getConstituents() {
+        return constituents;
+    }
+
+    /**
+     * Amplitude and phase of a single constituent at the station.
+     */
+    public static class Constituent {
+        private final TidalConstituent constituent;
+        private final double amplitude;
+        private final double phaseDegrees;
+
+        public Constituent(TidalConstituent constituent, double amplitude, double phaseDegrees) {
+            this.constituent = constituent;
+            this.amplitude = amplitude;
+            this.phaseDegrees = phaseDegrees;
+        }
+
+        public TidalConstituent getConstituent() {
+            return constituent;
+        }
+
+        public double getAmplitude() {
+            return amplitude;
+        }
+
+        public double getPhaseDegrees() {
+            return phaseDegrees;
+        }
+    }
+}
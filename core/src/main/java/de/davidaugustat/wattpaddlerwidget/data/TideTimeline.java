@@ -0,0 +1,317 @@
+package de.davidaugustat.wattpaddlerwidget.data;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+/**
+ * Compact, immutable timeline of the tide events of one location over any number of days.
+ * <p>
+ * Every event is stored as two primitives in flat arrays that are sorted by time:
+ * <ul>
+ * <li>the local date and time as minutes since 1970-01-01T00:00 (epoch minute)</li>
+ * <li>a tag describing the kind of the event (see the TAG_* constants)</li>
+ * </ul>
+ * Every day contained in the timeline has exactly two high tide slots and two low tide slots.
+ * Slots that do not hold a real tide are stored as placeholder events (shifted or non-existent)
+ * at the start of their day. This way a day with no tides is distinguishable from a day that is
+ * not contained in the timeline at all.
+ * <p>
+ * Lookups by time or date use binary search. A week of data for one location takes 28 events,
+ * i.e. about 140 bytes.
+ */
+public class TideTimeline {
+
+    public static final byte TAG_HIGH = 1;
+    public static final byte TAG_LOW = 2;
+    public static final byte TAG_HIGH_SHIFTED = 3;
+    public static final byte TAG_LOW_SHIFTED = 4;
+    public static final byte TAG_HIGH_NON_EXISTENT = 5;
+    public static final byte TAG_LOW_NON_EXISTENT = 6;
+
+    public static final int SLOT_HIGH_1 = 0;
+    public static final int SLOT_HIGH_2 = 1;
+    public static final int SLOT_LOW_1 = 2;
+    public static final int SLOT_LOW_2 = 3;
+
+    public static final int MINUTES_PER_DAY = 24 * 60;
+
+    private static final TideTimeline EMPTY = new TideTimeline(new int[0], new byte[0]);
+
+    private final int[] epochMinutes;
+    private final byte[] tags;
+
+    private TideTimeline(int[] epochMinutes, byte[] tags) {
+        this.epochMinutes = epochMinutes;
+        this.tags = tags;
+    }
+
+    public static TideTimeline empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Returns the number of events (including placeholders).
+     */
+    public int size() {
+        return epochMinutes.length;
+    }
+
+    public int getEpochMinute(int index) {
+        return epochMinutes[index];
+    }
+
+    public byte getTag(int index) {
+        return tags[index];
+    }
+
+    /**
+     * Returns true iff the event with the given index is a real high or low tide and not a
+     * placeholder.
+     */
+    public boolean isRealTide(int index) {
+        return tags[index] == TAG_HIGH || tags[index] == TAG_LOW;
+    }
+
+    /**
+     * Returns true iff the tides of the given day are contained in the timeline.
+     */
+    public boolean containsDate(LocalDate date) {
+        long epochDay = date.toEpochDay();
+        return getDayStartIndex(epochDay) < getDayEndIndex(epochDay);
+    }
+
+    /**
+     * Returns the index of the first event on the given date. Together with
+     * {@link #getDayEndIndex(long)} this describes the events of that date.
+     */
+    public int getDayStartIndex(long epochDay) {
+        return lowerBound((int) (epochDay * MINUTES_PER_DAY));
+    }
+
+    /**
+     * Returns the index after the last event on the given date.
+     */
+    public int getDayEndIndex(long epochDay) {
+        return lowerBound((int) ((epochDay + 1) * MINUTES_PER_DAY));
+    }
+
+    /**
+     * Returns the index of the first real tide of the requested kind strictly after the given
+     * time, or -1 if there is none in the timeline. For example, this answers "when is the next
+     * high tide after now?".
+     *
+     * @param epochMinute Reference time, see {@link #toEpochMinute(LocalDateTime)}
+     * @param highTide    true to search for high tides, false for low tides
+     */
+    public int indexOfNextTide(int epochMinute, boolean highTide) {
+        byte wantedTag = highTide ? TAG_HIGH : TAG_LOW;
+        for (int i = lowerBound(epochMinute + 1); i < epochMinutes.length; i++) {
+            if (tags[i] == wantedTag) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the tide in the given slot of a day as TideTime object.
+     *
+     * @param epochDay Day, see {@link LocalDate#toEpochDay()}
+     * @param slot     One of the SLOT_* constants
+     * @return The tide. If the day is not contained in the timeline, a NonExistentTideTime is
+     * returned.
+     */
+    public TideTime getTideTime(long epochDay, int slot) {
+        boolean highTide = slot == SLOT_HIGH_1 || slot == SLOT_HIGH_2;
+        int position = (slot == SLOT_HIGH_1 || slot == SLOT_LOW_1) ? 0 : 1;
+        byte realTag = highTide ? TAG_HIGH : TAG_LOW;
+        byte shiftedTag = highTide ? TAG_HIGH_SHIFTED : TAG_LOW_SHIFTED;
+        byte nonExistentTag = highTide ? TAG_HIGH_NON_EXISTENT : TAG_LOW_NON_EXISTENT;
+
+        int start = getDayStartIndex(epochDay);
+        int end = getDayEndIndex(epochDay);
+
+        // Real tides occupy the first slots of their kind, placeholders the remaining ones:
+        int realCount = 0;
+        for (int i = start; i < end; i++) {
+            if (tags[i] == realTag) {
+                if (realCount == position) {
+                    return new NormalTideTime(toLocalDateTime(epochMinutes[i]));
+                }
+                realCount++;
+            }
+        }
+        int placeholderPosition = position - realCount;
+        for (int i = start; i < end; i++) {
+            if (tags[i] == shiftedTag || tags[i] == nonExistentTag) {
+                if (placeholderPosition == 0) {
+                    return tags[i] == shiftedTag ? new ShiftedTideTime() : new NonExistentTideTime();
+                }
+                placeholderPosition--;
+            }
+        }
+        return new NonExistentTideTime();
+    }
+
+    /**
+     * Returns a new timeline that contains all days of this timeline and of the other timeline.
+     * Days that are contained in both timelines are taken from the other timeline.
+     */
+    public TideTimeline merge(TideTimeline other) {
+        Builder builder = new Builder();
+        for (int i = 0; i < epochMinutes.length; i++) {
+            long epochDay = Math.floorDiv(epochMinutes[i], MINUTES_PER_DAY);
+            if (!other.containsDate(LocalDate.ofEpochDay(epochDay))) {
+                builder.addEvent(epochMinutes[i], tags[i]);
+            }
+        }
+        for (int i = 0; i < other.epochMinutes.length; i++) {
+            builder.addEvent(other.epochMinutes[i], other.tags[i]);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns a new timeline without the days before the given date.
+     */
+    public TideTimeline withoutDaysBefore(LocalDate firstDateToKeep) {
+        int start = getDayStartIndex(firstDateToKeep.toEpochDay());
+        return new TideTimeline(Arrays.copyOfRange(epochMinutes, start, epochMinutes.length),
+                Arrays.copyOfRange(tags, start, tags.length));
+    }
+
+    /**
+     * Returns the index of the first event at or after the given epoch minute.
+     */
+    private int lowerBound(int epochMinute) {
+        int low = 0;
+        int high = epochMinutes.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (epochMinutes[mid] < epochMinute) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Converts a local date and time into minutes since 1970-01-01T00:00. No time zone is applied.
+     */
+    public static int toEpochMinute(LocalDateTime dateTime) {
+        return (int) (dateTime.toLocalDate().toEpochDay() * MINUTES_PER_DAY
+                + dateTime.getHour() * 60 + dateTime.getMinute());
+    }
+
+    public static LocalDateTime toLocalDateTime(int epochMinute) {
+        long epochDay = Math.floorDiv(epochMinute, MINUTES_PER_DAY);
+        int minuteOfDay = Math.floorMod(epochMinute, MINUTES_PER_DAY);
+        return LocalDate.ofEpochDay(epochDay).atTime(minuteOfDay / 60, minuteOfDay % 60);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("TideTimeline{");
+        for (int i = 0; i < epochMinutes.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(toLocalDateTime(epochMinutes[i])).append('/').append(tags[i]);
+        }
+        return builder.append('}').toString();
+    }
+
+    /**
+     * Collects events in any order and builds a sorted timeline.
+     */
+    public static class Builder {
+        private long[] packedEvents = new long[16];
+        private int size = 0;
+
+        /**
+         * Adds the tides of a whole day. The tides beyond the second of each kind are ignored.
+         * Missing tides are filled up with placeholders: if there is one tide of a kind, the
+         * second one has shifted to the next day, if there is none, the tides of that kind do not
+         * exist on this day.
+         *
+         * @param epochDay          Day, see {@link LocalDate#toEpochDay()}
+         * @param highTideMinutes   Minutes of day of the high tides in chronological order
+         * @param highTideCount     Number of valid entries in highTideMinutes
+         * @param lowTideMinutes    Minutes of day of the low tides in chronological order
+         * @param lowTideCount      Number of valid entries in lowTideMinutes
+         */
+        public Builder addDay(long epochDay, int[] highTideMinutes, int highTideCount,
+                              int[] lowTideMinutes, int lowTideCount) {
+            int dayStart = (int) (epochDay * MINUTES_PER_DAY);
+            addSlots(dayStart, highTideMinutes, highTideCount,
+                    TAG_HIGH, TAG_HIGH_SHIFTED, TAG_HIGH_NON_EXISTENT);
+            addSlots(dayStart, lowTideMinutes, lowTideCount,
+                    TAG_LOW, TAG_LOW_SHIFTED, TAG_LOW_NON_EXISTENT);
+            return this;
+        }
+
+        /**
+         * Adds a day from its four TideTime slots.
+         */
+        public Builder addDay(LocalDate date, TideTime highTide1, TideTime highTide2,
+                              TideTime lowTide1, TideTime lowTide2) {
+            int dayStart = (int) (date.toEpochDay() * MINUTES_PER_DAY);
+            addSlot(dayStart, highTide1, TAG_HIGH, TAG_HIGH_SHIFTED, TAG_HIGH_NON_EXISTENT);
+            addSlot(dayStart, highTide2, TAG_HIGH, TAG_HIGH_SHIFTED, TAG_HIGH_NON_EXISTENT);
+            addSlot(dayStart, lowTide1, TAG_LOW, TAG_LOW_SHIFTED, TAG_LOW_NON_EXISTENT);
+            addSlot(dayStart, lowTide2, TAG_LOW, TAG_LOW_SHIFTED, TAG_LOW_NON_EXISTENT);
+            return this;
+        }
+
+        /**
+         * Adds a single raw event.
+         */
+        public Builder addEvent(int epochMinute, byte tag) {
+            if (size == packedEvents.length) {
+                packedEvents = Arrays.copyOf(packedEvents, size * 2);
+            }
+            packedEvents[size++] = ((long) epochMinute << 8) | (tag & 0xFF);
+            return this;
+        }
+
+        public TideTimeline build() {
+            long[] sortedEvents = Arrays.copyOf(packedEvents, size);
+            Arrays.sort(sortedEvents);
+            int[] epochMinutes = new int[size];
+            byte[] tags = new byte[size];
+            for (int i = 0; i < size; i++) {
+                epochMinutes[i] = (int) (sortedEvents[i] >> 8);
+                tags[i] = (byte) (sortedEvents[i] & 0xFF);
+            }
+            return new TideTimeline(epochMinutes, tags);
+        }
+
+        private void addSlots(int dayStart, int[] minutes, int count,
+                              byte realTag, byte shiftedTag, byte nonExistentTag) {
+            int realCount = Math.min(count, 2);
+            for (int i = 0; i < realCount; i++) {
+                addEvent(dayStart + minutes[i], realTag);
+            }
+            if (realCount == 0) {
+                addEvent(dayStart, nonExistentTag);
+                addEvent(dayStart, nonExistentTag);
+            } else if (realCount == 1) {
+                addEvent(dayStart, shiftedTag);
+            }
+        }
+
+        private void addSlot(int dayStart, TideTime tideTime,
+                             byte realTag, byte shiftedTag, byte nonExistentTag) {
+            if (tideTime instanceof NormalTideTime) {
+                addEvent(toEpochMinute(((NormalTideTime) tideTime).getDateTime()), realTag);
+            } else if (tideTime instanceof ShiftedTideTime) {
+                addEvent(dayStart, shiftedTag);
+            } else {
+                addEvent(dayStart, nonExistentTag);
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package de.davidaugustat.wattpaddlerwidget.data;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import de.davidaugustat.wattpaddlerwidget.logic.DateTimeHelper;
+
+/**
+ * Stores the information that is displayed on the widget.
+ * <p>
+ * The tide times are not stored as objects but looked up in a {@link TideTimeline}, so this
+ * class is a lightweight view on a single day of a timeline.
+ */
+public class TidesInfo {
+    private final String locationId;
+    private final String locationName;
+    private final TideTimeline timeline;
+    private final long epochDay;
+    private final LocalDateTime updatedTime;
+
+    public TidesInfo(Location location, TideTimeline timeline, LocalDate date,
+                     LocalDateTime updatedTime) {
+        this(location.getId(), location.getName(), timeline, date, updatedTime);
+    }
+
+    /**
+     * Creates a view on the given day of a timeline.
+     *
+     * @param timeline Timeline that contains the tides of the date.
+     */
+    public TidesInfo(String locationId, String locationName, TideTimeline timeline, LocalDate date,
+                     LocalDateTime updatedTime) {
+        this.locationId = locationId;
+        this.locationName = locationName;
+        this.timeline = timeline;
+        this.epochDay = date.toEpochDay();
+        this.updatedTime = updatedTime;
+    }
+
+    /**
+     * Internal constructor used for creating a TidesInfo object with all fields specified.
+     * This is especially useful for restoring a TidesInfo object from cache.
+     */
+    public TidesInfo(String locationId, String locationName, LocalDate date,
+                     TideTime lowTide1, TideTime lowTide2,
+                     TideTime highTide1, TideTime highTide2,
+                     LocalDateTime updatedTime) {
+        this(locationId, locationName,
+                new TideTimeline.Builder()
+                        .addDay(date, highTide1, highTide2, lowTide1, lowTide2)
+                        .build(),
+                date, updatedTime);
+    }
+
+    public String getLocationId() {
+        return locationId;
+    }
+
+    public String getLocationName() {
+        return locationName;
+    }
+
+    public LocalDate getDate() {
+        return LocalDate.ofEpochDay(epochDay);
+    }
+
+    /**
+     * Returns the timeline this object is a view on. It may contain further days.
+     */
+    public TideTimeline getTimeline() {
+        return timeline;
+    }
+
+    public String getHighTidesFormatted(String formatString){
+        return String.format(formatString,
+                getHighTide1().getHumanReadableString(),
+                getHighTide2().getHumanReadableString());
+    }
+
+    public String getLowTidesFormatted(String formatString){
+        return String.format(formatString,
+                getLowTide1().getHumanReadableString(),
+                getLowTide2().getHumanReadableString());
+    }
+
+    public TideTime getHighTide1() {
+        return timeline.getTideTime(epochDay, TideTimeline.SLOT_HIGH_1);
+    }
+
+    public TideTime getHighTide2() {
+        return timeline.getTideTime(epochDay, TideTimeline.SLOT_HIGH_2);
+    }
+
+    public TideTime getLowTide1() {
+        return timeline.getTideTime(epochDay, TideTimeline.SLOT_LOW_1);
+    }
+
+    public TideTime getLowTide2() {
+        return timeline.getTideTime(epochDay, TideTimeline.SLOT_LOW_2);
+    }
+
+    public LocalDateTime getUpdatedTime() {
+        return updatedTime;
+    }
+
+    public String getDateFormatted(){
+        return DateTimeHelper.getDateInGermanFormatting(getDate());
+    }
+
+    public String getLastUpdatedTimeFormatted(){
+        return DateTimeHelper.getFormattedPreciseDateTime(updatedTime);
+    }
+
+    @Override
+    public String toString() {
+        return "TidesInfo{" +
+                "locationId='" + locationId + '\'' +
+                ", locationName='" + locationName + '\'' +
+                ", date=" + getDate() +
+                ", highTide1='" + getHighTide1() + '\'' +
+                ", highTide2='" + getHighTide2() + '\'' +
+                ", lowTide1='" + getLowTide1() + '\'' +
+                ", lowTide2='" + getLowTide2() + '\'' +
+                ", updatedTime=" + updatedTime +
+                '}';
+    }
+}
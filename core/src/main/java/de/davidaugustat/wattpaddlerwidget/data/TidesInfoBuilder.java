@@ -0,0 +1,106 @@
+package de.davidaugustat.wattpaddlerwidget.data;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import de.davidaugustat.wattpaddlerwidget.logic.DateTimeHelper;
+
+/**
+ * Helps to build a TidesInfo object step by step.
+ */
+public class TidesInfoBuilder {
+
+    private final Location location;
+    private final LocalDate targetDate;
+    private final int[] lowTideMinutes = new int[2];
+    private final int[] highTideMinutes = new int[2];
+    private int lowTideCount = 0;
+    private int highTideCount = 0;
+
+    public TidesInfoBuilder(Location location, String targetDateString){
+        this.location = location;
+        this.targetDate = DateTimeHelper.parseDate(targetDateString);
+    }
+
+    /**
+     * Adds a tide time to the list of times for low or high times depending on the
+     * tideCategoryString.
+     *
+     * Note that if the dateString is not equal to the targetDateString of this object, nothing
+     * will happen.
+     *
+     * @param dateString Date of the tide in format YYYY-MM-DD
+     * @param timeString Time of the tide in format HH:mm
+     * @param tideCategoryString Category of the tide, either 'H' for high or 'N' for low.
+     */
+    public void addTideTime(String dateString, String timeString, String tideCategoryString){
+        LocalDateTime dateTime = DateTimeHelper.parseLocalDateTime(dateString, timeString);
+        boolean isHighTide;
+        switch(tideCategoryString){
+            case "N":
+                isHighTide = false;
+                break;
+            case "H":
+                isHighTide = true;
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid tide category. Must be 'H' or 'N'");
+        }
+        addTideTime(dateTime.getYear(), dateTime.getMonthValue(), dateTime.getDayOfMonth(),
+                dateTime.getHour() * 60 + dateTime.getMinute(), isHighTide);
+    }
+
+    /**
+     * Adds a tide time that has already been parsed into its numeric fields.
+     * <p>
+     * Note that if the date is not equal to the target date of this object, nothing will happen.
+     * Only the first two tides of each kind are kept.
+     *
+     * @param year        Year of the tide
+     * @param month       Month of the tide (1-12)
+     * @param day         Day of month of the tide
+     * @param minuteOfDay Time of the tide in minutes after midnight
+     * @param isHighTide  true for a high tide, false for a low tide
+     */
+    public void addTideTime(int year, int month, int day, int minuteOfDay, boolean isHighTide){
+        if(year != targetDate.getYear() || month != targetDate.getMonthValue()
+                || day != targetDate.getDayOfMonth()){
+            return;
+        }
+        if(isHighTide){
+            if(highTideCount < highTideMinutes.length){
+                highTideMinutes[highTideCount++] = minuteOfDay;
+            }
+        } else {
+            if(lowTideCount < lowTideMinutes.length){
+                lowTideMinutes[lowTideCount++] = minuteOfDay;
+            }
+        }
+    }
+
+    /**
+     * Builds a TidesInfo object from the data that has been provided to the builder object.
+     * <p>
+     * The tide times of the day are turned into the four slots of a {@link TideTimeline} day:
+     * <ul>
+     * <li>If both tide times are missing, both slots are non-existent.
+     * This is the case when tides are not possible, e.g. because a harbor has run dry.</li>
+     * <li>If one tide time is present, the second slot is shifted because the second tide time
+     * has shifted to the next day.</li>
+     * <li>If both tide times are present, both slots hold normal tides.</li>
+     * </ul>
+     */
+    public TidesInfo build(){
+        return new TidesInfo(location, buildTimeline(), targetDate, LocalDateTime.now());
+    }
+
+    /**
+     * Builds a timeline that contains only the target day.
+     */
+    public TideTimeline buildTimeline(){
+        return new TideTimeline.Builder()
+                .addDay(targetDate.toEpochDay(), highTideMinutes, highTideCount,
+                        lowTideMinutes, lowTideCount)
+                .build();
+    }
+}
@@ -11,43 +11,47 @@ public class DateTimeHelper {
 
     private final static ZoneOffset CET_OFFSET = ZoneOffset.ofHours(+1);
 
+    // Formatters are immutable and thread-safe, so the numeric ones are created only once:
+    private final static DateTimeFormatter QUERY_DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private final static DateTimeFormatter TIDES_DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd H:mm");
+    private final static DateTimeFormatter TIDES_TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
+    private final static DateTimeFormatter PRECISE_DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss");
+
     public static String getCurrentDateInQueryNotation(){
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-        return LocalDate.now().format(formatter);
+        return getDateInQueryNotation(LocalDate.now());
+    }
+
+    public static String getDateInQueryNotation(LocalDate date){
+        return date.format(QUERY_DATE_FORMATTER);
     }
 
     public static LocalDateTime parseTidesTimeInCET(String date, String timeCET){
         if(date == null || timeCET == null){
             return null;
         }
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd H:mm");
-        LocalDateTime dateTimeCET = LocalDateTime.parse(date + " " + timeCET, formatter);
+        LocalDateTime dateTimeCET = LocalDateTime.parse(date + " " + timeCET, TIDES_DATE_TIME_FORMATTER);
         return OffsetDateTime.of(dateTimeCET, CET_OFFSET)
                 .atZoneSameInstant(ZoneId.systemDefault())
                 .toLocalDateTime();
     }
 
     public static LocalDateTime parseLocalDateTime(String date, String time){
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd H:mm");
-        return LocalDateTime.parse(date + " " + time, formatter);
+        return LocalDateTime.parse(date + " " + time, TIDES_DATE_TIME_FORMATTER);
     }
 
     public static String getFormattedTidesTime(LocalDateTime time){
         if(time == null){
             return null;
         }
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm");
-        return time.format(formatter);
+        return time.format(TIDES_TIME_FORMATTER);
     }
 
     public static String getFormattedPreciseDateTime(LocalDateTime dateTime){
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss");
-        return dateTime.format(formatter);
+        return dateTime.format(PRECISE_DATE_TIME_FORMATTER);
     }
 
     public static LocalDate parseDate(String dateString){
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-        return LocalDate.parse(dateString, formatter);
+        return LocalDate.parse(dateString, QUERY_DATE_FORMATTER);
     }
 
     public static String getDateInGermanFormatting(LocalDate date){
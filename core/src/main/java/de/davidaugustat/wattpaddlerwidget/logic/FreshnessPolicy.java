@@ -0,0 +1,96 @@
+package de.davidaugustat.wattpaddlerwidget.logic;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import de.davidaugustat.wattpaddlerwidget.data.TidesInfo;
+
+/**
+ * Decides whether locally stored data of a source can be displayed or has to be fetched again.
+ * <p>
+ * Local data that is younger than the time to live of its source is fresh and displayed without
+ * any network access. Older data is still displayed, but fetched again in the background, until it
+ * exceeds the maximum staleness of its source. Then, and if there is no local data at all, the data
+ * has to be fetched before it can be displayed. Data of sources that never change once they were
+ * fetched is fresh regardless of its age. Manual refreshes always fetch.
+ */
+public class FreshnessPolicy {
+
+    public enum Decision {
+        /** The local data is fresh. No network access is needed. */
+        SERVE_LOCAL,
+        /** The local data is displayed and fetched again in the background. */
+        SERVE_AND_REVALIDATE,
+        /** There is no usable local data. The data has to be fetched before it is displayed. */
+        FETCH
+    }
+
+    /**
+     * Time to live of data that does not change once it was fetched.
+     */
+    public static final long FOREVER = Long.MAX_VALUE;
+
+    /**
+     * Tides of a day. The predictions of a day do not change, so stored tides of the requested
+     * date are fresh no matter how long ago they were prefetched. Only data of the requested date
+     * is usable.
+     */
+    public static final FreshnessPolicy TIDES = new FreshnessPolicy(FOREVER, FOREVER);
+
+    /**
+     * List of all locations. Locations are added or removed very rarely.
+     */
+    public static final FreshnessPolicy LOCATIONS =
+            new FreshnessPolicy(TimeUnit.DAYS.toMillis(7), TimeUnit.DAYS.toMillis(90));
+
+    private final long timeToLiveMillis;
+    private final long maxStaleMillis;
+
+    /**
+     * @param timeToLiveMillis Age up to which local data is fresh or {@link #FOREVER}
+     * @param maxStaleMillis   Age up to which stale local data is still displayed
+     */
+    public FreshnessPolicy(long timeToLiveMillis, long maxStaleMillis) {
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.maxStaleMillis = maxStaleMillis;
+    }
+
+    /**
+     * Decides how to get the tides of the given date.
+     *
+     * @param localTides Locally stored tides or null if there are none. Tides of another date
+     *                   than the requested date are not usable.
+     * @param now        Current local time
+     * @param isManual   true iff the user explicitly requested a refresh
+     */
+    public Decision decide(TidesInfo localTides, LocalDate date, LocalDateTime now, boolean isManual) {
+        if (localTides == null || !localTides.getDate().equals(date)) {
+            return decide(false, 0, isManual);
+        }
+        return decide(true, Duration.between(localTides.getUpdatedTime(), now).toMillis(), isManual);
+    }
+
+    /**
+     * @param hasLocalData true iff there is local data
+     * @param ageMillis    Time since the local data was fetched
+     * @param isManual     true iff the user explicitly requested a refresh
+     */
+    public Decision decide(boolean hasLocalData, long ageMillis, boolean isManual) {
+        if (isManual || !hasLocalData) {
+            return Decision.FETCH;
+        }
+        if (timeToLiveMillis == FOREVER) {
+            return Decision.SERVE_LOCAL;
+        }
+        if (ageMillis < 0) {
+            // The clock has been set back since the data was fetched, so its age is unknown:
+            return Decision.SERVE_AND_REVALIDATE;
+        }
+        if (ageMillis < timeToLiveMillis) {
+            return Decision.SERVE_LOCAL;
+        }
+        return ageMillis < maxStaleMillis ? Decision.SERVE_AND_REVALIDATE : Decision.FETCH;
+    }
+}
@@ -0,0 +1,341 @@
+package de.davidaugustat.wattpaddlerwidget.logic;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.davidaugustat.wattpaddlerwidget.data.Location;
+import de.davidaugustat.wattpaddlerwidget.data.StationHarmonics;
+import de.davidaugustat.wattpaddlerwidget.data.TidesInfo;
+import de.davidaugustat.wattpaddlerwidget.data.TidesInfoBuilder;
+
+/**
+ * Predicts the high and low tides of a station from its harmonic constants, without any network
+ * access.
+ * <p>
+ * The water level is the sum of the constituents:
+ * h(t) = Z0 + sum of f * H * cos(V(t) + u - G)
+ * where H and G are the amplitude and phase lag of the station, V the astronomical argument and
+ * f and u the nodal corrections. V, f and u are computed once per day from the mean longitudes of
+ * moon and sun; within the day the arguments advance linearly with the constituent speeds.
+ * <p>
+ * Extrema are found where the slope of the water level changes its sign. The slope is sampled on
+ * a grid of ten minutes. Between grid points every constituent is advanced by rotating its
+ * cosine and sine with a precomputed step, so that the grid does not need any trigonometric
+ * functions. Every sign change is then refined by bisection to better than ten seconds, so the
+ * reported times (rounded to the minute) are within one minute of the exact extrema of the
+ * harmonic sum. A year of extrema takes a few milliseconds.
+ * <p>
+ * The predicted tides are passed through the same {@link TidesResponseParser.RowHandler} and
+ * {@link TidesInfoBuilder} as the tides of the API, so they are handled exactly like downloaded
+ * data.
+ * <p>
+ * This class is immutable and thread-safe.
+ */
+public class HarmonicTidePredictor {
+
+    /**
+     * Receives the predicted extrema in the order of their time.
+     */
+    public interface ExtremumHandler {
+        /**
+         * @param epochSecond Time of the extremum in seconds since 1970-01-01T00:00Z
+         * @param height      Water level in the unit of the harmonic constants
+         * @param isHighTide  true for a high tide, false for a low tide
+         */
+        void onExtremum(long epochSecond, double height, boolean isHighTide);
+    }
+
+    private static final long J2000_EPOCH_SECOND = 946728000L; // 2000-01-01T12:00Z
+    private static final double DAYS_PER_JULIAN_CENTURY = 36525;
+    private static final long SECONDS_PER_DAY = 86400;
+
+    private static final int STEP_SECONDS = 600;
+    private static final int STEPS_PER_SEGMENT = (int) (SECONDS_PER_DAY / STEP_SECONDS);
+    private static final int REFINE_ITERATIONS = 6;
+
+    private final double meanLevel;
+    private final TidalConstituent[] constituents;
+    private final double[] amplitudes;
+    private final double[] phaseLagsRadians;
+    private final double[] speedsPerSecond;
+    private final double[] stepCos;
+    private final double[] stepSin;
+
+    public HarmonicTidePredictor(StationHarmonics harmonics) {
+        List<StationHarmonics.Constituent> stationConstituents = harmonics.getConstituents();
+        int count = stationConstituents.size();
+        meanLevel = harmonics.getMeanLevel();
+        constituents = new TidalConstituent[count];
+        amplitudes = new double[count];
+        phaseLagsRadians = new double[count];
+        speedsPerSecond = new double[count];
+        stepCos = new double[count];
+        stepSin = new double[count];
+        for (int i = 0; i < count; i++) {
+            StationHarmonics.Constituent constituent = stationConstituents.get(i);
+            constituents[i] = constituent.getConstituent();
+            amplitudes[i] = constituent.getAmplitude();
+            phaseLagsRadians[i] = Math.toRadians(constituent.getPhaseDegrees());
+            speedsPerSecond[i] = Math.toRadians(constituent.getConstituent().getSpeed()) / 3600;
+            stepCos[i] = Math.cos(speedsPerSecond[i] * STEP_SECONDS);
+            stepSin[i] = Math.sin(speedsPerSecond[i] * STEP_SECONDS);
+        }
+    }
+
+    /**
+     * Returns the water level at the given time in the unit of the harmonic constants.
+     */
+    public double getHeight(long epochSecond) {
+        return new Segment(epochSecond).getHeight(0);
+    }
+
+    /**
+     * Predicts all extrema in the time range [fromEpochSecond, toEpochSecond).
+     */
+    public void predictExtrema(long fromEpochSecond, long toEpochSecond, ExtremumHandler handler) {
+        double previousSlope = Double.NaN;
+        // The grid starts one step early, so that an extremum right at the start is found.
+        for (long segmentStart = fromEpochSecond - STEP_SECONDS;
+             segmentStart - STEP_SECONDS <= toEpochSecond;
+             segmentStart += SECONDS_PER_DAY) {
+            Segment segment = new Segment(segmentStart);
+            double[] cos = segment.cos;
+            double[] sin = segment.sin;
+            double[] slopeFactors = segment.slopeFactors;
+
+            for (int step = 0; step < STEPS_PER_SEGMENT; step++) {
+                if (segmentStart + (long) (step - 1) * STEP_SECONDS > toEpochSecond) {
+                    // All extrema before the end of the range have been found.
+                    return;
+                }
+                double slope = 0;
+                for (int i = 0; i < cos.length; i++) {
+                    slope -= slopeFactors[i] * sin[i];
+                    double rotatedCos = cos[i] * stepCos[i] - sin[i] * stepSin[i];
+                    sin[i] = sin[i] * stepCos[i] + cos[i] * stepSin[i];
+                    cos[i] = rotatedCos;
+                }
+
+                boolean isHigh = previousSlope > 0 && slope <= 0;
+                boolean isLow = previousSlope < 0 && slope >= 0;
+                if (isHigh || isLow) {
+                    double offset = segment.findExtremum((step - 1) * STEP_SECONDS,
+                            step * STEP_SECONDS, isHigh);
+                    long epochSecond = segmentStart + Math.round(offset);
+                    if (epochSecond >= fromEpochSecond && epochSecond < toEpochSecond) {
+                        handler.onExtremum(epochSecond, segment.getHeight(offset), isHigh);
+                    }
+                }
+                previousSlope = slope;
+            }
+        }
+    }
+
+    /**
+     * Predicts the tides of the dates from firstDate to lastDate (inclusive) and passes them to
+     * the handler, like {@link TidesResponseParser#parseRows(byte[], int,
+     * TidesResponseParser.RowHandler)} does with the rows of a response.
+     *
+     * @param zone Time zone of the passed dates and times. The API uses German local time.
+     */
+    public void predictRows(LocalDate firstDate, LocalDate lastDate, ZoneId zone,
+                            TidesResponseParser.RowHandler handler) {
+        long from = firstDate.atStartOfDay(zone).toEpochSecond();
+        long to = lastDate.plusDays(1).atStartOfDay(zone).toEpochSecond();
+        predictExtrema(from, to, (epochSecond, height, isHighTide) -> {
+            long roundedEpochSecond = Math.floorDiv(epochSecond + 30, 60) * 60;
+            LocalDateTime time = Instant.ofEpochSecond(roundedEpochSecond).atZone(zone).toLocalDateTime();
+            LocalDate date = time.toLocalDate();
+            if (date.isBefore(firstDate) || date.isAfter(lastDate)) {
+                return;
+            }
+            handler.onRow(date.getYear(), date.getMonthValue(), date.getDayOfMonth(),
+                    time.getHour() * 60 + time.getMinute(), isHighTide);
+        });
+    }
+
+    /**
+     * Predicts the tides of a single day.
+     *
+     * @param zone Time zone of the tide times. The API uses German local time.
+     */
+    public TidesInfo predictDay(Location location, LocalDate date, ZoneId zone) {
+        TidesInfoBuilder builder = new TidesInfoBuilder(location, DateTimeHelper.getDateInQueryNotation(date));
+        predictRows(date, date, zone, builder::addTideTime);
+        return builder.build();
+    }
+
+    /**
+     * Predicts the tides of the dates from firstDate to lastDate (inclusive).
+     *
+     * @param zone Time zone of the tide times. The API uses German local time.
+     * @return One TidesInfo object per date, ordered by date
+     */
+    public List<TidesInfo> predictDays(Location location, LocalDate firstDate, LocalDate lastDate,
+                                       ZoneId zone) {
+        List<TidesInfoBuilder> builders = new ArrayList<>();
+        for (LocalDate date = firstDate; !date.isAfter(lastDate); date = date.plusDays(1)) {
+            builders.add(new TidesInfoBuilder(location, DateTimeHelper.getDateInQueryNotation(date)));
+        }
+        long firstEpochDay = firstDate.toEpochDay();
+        predictRows(firstDate, lastDate, zone, (year, month, day, minuteOfDay, isHighTide) ->
+                builders.get((int) (LocalDate.of(year, month, day).toEpochDay() - firstEpochDay))
+                        .addTideTime(year, month, day, minuteOfDay, isHighTide));
+
+        List<TidesInfo> tidesInfos = new ArrayList<>(builders.size());
+        for (TidesInfoBuilder builder : builders) {
+            tidesInfos.add(builder.build());
+        }
+        return tidesInfos;
+    }
+
+    /**
+     * Arguments of all constituents at the start of a segment of the time axis, including the
+     * nodal corrections. Offsets are given in seconds after the start of the segment.
+     */
+    private class Segment {
+        /** Corrected amplitudes f * H. */
+        final double[] correctedAmplitudes = new double[constituents.length];
+        /** Phases V + u - G at the start of the segment in radians. */
+        final double[] phases = new double[constituents.length];
+        /** Factors of the slope, f * H * speed. */
+        final double[] slopeFactors = new double[constituents.length];
+        /** Cosine and sine of the phases, advanced step by step by predictExtrema(). */
+        final double[] cos = new double[constituents.length];
+        final double[] sin = new double[constituents.length];
+
+        Segment(long startEpochSecond) {
+            double days = (startEpochSecond - J2000_EPOCH_SECOND) / (double) SECONDS_PER_DAY;
+            double centuries = days / DAYS_PER_JULIAN_CENTURY;
+            // Mean longitudes of moon, sun, lunar perigee, lunar node and solar perigee in degrees:
+            double s = 218.3164477 + 481267.88123421 * centuries;
+            double h = 280.46646 + 36000.76983 * centuries;
+            double p = 83.3532465 + 4069.0137287 * centuries;
+            double n = 125.04452 - 1934.136261 * centuries;
+            double p1 = 282.93735 + 1.71946 * centuries;
+            double universalTimeHours = Math.floorMod(startEpochSecond, SECONDS_PER_DAY) / 3600.0;
+            double tau = 180 + 15 * universalTimeHours + h - s;
+
+            NodalCorrections nodal = new NodalCorrections(Math.toRadians(n));
+            for (int i = 0; i < constituents.length; i++) {
+                TidalConstituent constituent = constituents[i];
+                double argument = constituent.tau * tau + constituent.s * s + constituent.h * h
+                        + constituent.p * p - constituent.nPrime * n + constituent.p1 * p1
+                        + constituent.quarterCycles * 90;
+                correctedAmplitudes[i] = nodal.getFactor(constituent.nodal) * amplitudes[i];
+                phases[i] = Math.toRadians(argument + nodal.getPhaseDegrees(constituent.nodal))
+                        - phaseLagsRadians[i];
+                slopeFactors[i] = correctedAmplitudes[i] * speedsPerSecond[i];
+                cos[i] = Math.cos(phases[i]);
+                sin[i] = Math.sin(phases[i]);
+            }
+        }
+
+        double getHeight(double offsetSeconds) {
+            double height = meanLevel;
+            for (int i = 0; i < phases.length; i++) {
+                height += correctedAmplitudes[i] * Math.cos(phases[i] + speedsPerSecond[i] * offsetSeconds);
+            }
+            return height;
+        }
+
+        double getSlope(double offsetSeconds) {
+            double slope = 0;
+            for (int i = 0; i < phases.length; i++) {
+                slope -= slopeFactors[i] * Math.sin(phases[i] + speedsPerSecond[i] * offsetSeconds);
+            }
+            return slope;
+        }
+
+        /**
+         * Finds the extremum between two offsets at which the slope has different signs.
+         */
+        double findExtremum(double lowerOffset, double upperOffset, boolean isHigh) {
+            for (int i = 0; i < REFINE_ITERATIONS; i++) {
+                double middle = (lowerOffset + upperOffset) / 2;
+                double slope = getSlope(middle);
+                if (isHigh ? slope > 0 : slope < 0) {
+                    lowerOffset = middle;
+                } else {
+                    upperOffset = middle;
+                }
+            }
+            return (lowerOffset + upperOffset) / 2;
+        }
+    }
+
+    /**
+     * Nodal amplitude factors f and phase corrections u of the constituent families for a given
+     * longitude of the lunar node (Schureman's approximations).
+     */
+    private static class NodalCorrections {
+        private final double fM2, uM2, fK1, uK1, fO1, uO1, fK2, uK2, fMm, fMf, uMf;
+
+        NodalCorrections(double n) {
+            double cos1 = Math.cos(n), cos2 = Math.cos(2 * n), cos3 = Math.cos(3 * n);
+            double sin1 = Math.sin(n), sin2 = Math.sin(2 * n), sin3 = Math.sin(3 * n);
+            fM2 = 1.0004 - 0.0373 * cos1 + 0.0002 * cos2;
+            uM2 = -2.14 * sin1;
+            fK1 = 1.0060 + 0.1150 * cos1 - 0.0088 * cos2 + 0.0006 * cos3;
+            uK1 = -8.86 * sin1 + 0.68 * sin2 - 0.07 * sin3;
+            fO1 = 1.0089 + 0.1871 * cos1 - 0.0147 * cos2 + 0.0014 * cos3;
+            uO1 = 10.80 * sin1 - 1.34 * sin2 + 0.19 * sin3;
+            fK2 = 1.0241 + 0.2863 * cos1 + 0.0083 * cos2 - 0.0015 * cos3;
+            uK2 = -17.74 * sin1 + 0.68 * sin2 - 0.04 * sin3;
+            fMm = 1.0000 - 0.1300 * cos1 + 0.0013 * cos2;
+            fMf = 1.0429 + 0.4135 * cos1 - 0.0040 * cos2;
+            uMf = -23.74 * sin1 + 2.68 * sin2 - 0.38 * sin3;
+        }
+
+        double getFactor(TidalConstituent.Nodal nodal) {
+            switch (nodal) {
+                case M2:
+                case MSF:
+                    return fM2;
+                case M2_SQUARED:
+                    return fM2 * fM2;
+                case M2_CUBED:
+                    return fM2 * fM2 * fM2;
+                case K1:
+                    return fK1;
+                case O1:
+                    return fO1;
+                case K2:
+                    return fK2;
+                case MM:
+                    return fMm;
+                case MF:
+                    return fMf;
+                default:
+                    return 1;
+            }
+        }
+
+        double getPhaseDegrees(TidalConstituent.Nodal nodal) {
+            switch (nodal) {
+                case M2:
+                    return uM2;
+                case MSF:
+                    return -uM2;
+                case M2_SQUARED:
+                    return 2 * uM2;
+                case M2_CUBED:
+                    return 3 * uM2;
+                case K1:
+                    return uK1;
+                case O1:
+                    return uO1;
+                case K2:
+                    return uK2;
+                case MF:
+                    return uMf;
+                default:
+                    return 0;
+            }
+        }
+    }
+}
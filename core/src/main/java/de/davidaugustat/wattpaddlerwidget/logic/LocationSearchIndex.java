@@ -0,0 +1,349 @@
+package de.davidaugustat.wattpaddlerwidget.logic;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import de.davidaugustat.wattpaddlerwidget.data.Location;
+
+/**
+ * In-memory search index over the names of a list of locations.
+ * <p>
+ * Names and queries are folded before they are compared: they are converted to lower case,
+ * accents are removed and German umlauts and "ß" are matched both in their transcribed form
+ * ("ü" = "ue") and without the dots ("ü" = "u"). So "Buesum" and "Busum" both find "Büsum".
+ * <p>
+ * A query consists of one or more words. A location matches if every query word matches a word of
+ * its name, in the following order of preference:
+ * <ol>
+ *     <li>the first word of the name starts with the query word,</li>
+ *     <li>any word of the name starts with the query word,</li>
+ *     <li>the name contains the query word,</li>
+ *     <li>a word of the name starts with a string that differs from the query word by at most one
+ *     typo (two for query words with at least {@link #TWO_TYPOS_MIN_LENGTH} characters). A typo is
+ *     an inserted, deleted, replaced or swapped character.</li>
+ * </ol>
+ * Prefix matches are found by binary search in the sorted words of all names, substring matches
+ * via an index of the trigrams of all names. Only the typo tolerant matching checks all distinct
+ * words.
+ * <p>
+ * The index is immutable and can be queried from any thread. Building it takes a few milliseconds
+ * for thousands of locations, so it should be built on a background thread.
+ */
+public class LocationSearchIndex {
+
+    private static final int SCORE_FIRST_WORD_PREFIX = 4;
+    private static final int SCORE_WORD_PREFIX = 3;
+    private static final int SCORE_SUBSTRING = 2;
+    private static final int SCORE_TYPO = 1;
+
+    private static final int TYPO_MIN_LENGTH = 3;
+    static final int TWO_TYPOS_MIN_LENGTH = 6;
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern WORD_SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final int locationCount;
+    private final Map<String, Integer> indicesById;
+
+    /**
+     * Folded forms of the name of every location, without separators between the words. The forms
+     * are separated by a null character, so that substrings cannot span two of them.
+     */
+    private final String[] foldedNames;
+
+    /**
+     * Distinct folded words of all names in ascending order, and for each of them the indices of
+     * the locations whose name contains the word. Negative indices mark the first word of a name
+     * (index i is stored as -i - 1).
+     */
+    private final String[] words;
+    private final int[][] wordPostings;
+
+    /**
+     * Ascending indices of the locations whose folded name contains the trigram.
+     */
+    private final Map<String, int[]> trigramPostings;
+
+    public LocationSearchIndex(List<Location> locations) {
+        locationCount = locations.size();
+        indicesById = new HashMap<>(locationCount * 2);
+        foldedNames = new String[locationCount];
+        TreeMap<String, List<Integer>> wordLocations = new TreeMap<>();
+        Map<String, List<Integer>> trigramLocations = new HashMap<>();
+
+        for (int i = 0; i < locationCount; i++) {
+            Location location = locations.get(i);
+            indicesById.put(location.getId(), i);
+
+            String[] nameWords = splitWords(location.getName());
+            for (int w = 0; w < nameWords.length; w++) {
+                for (String variant : foldVariants(nameWords[w])) {
+                    addPosting(wordLocations, variant, w == 0 ? -i - 1 : i);
+                }
+            }
+
+            StringBuilder foldedName = new StringBuilder();
+            for (String variant : foldVariants(location.getName())) {
+                String joinedVariant = WORD_SEPARATORS.matcher(variant).replaceAll("");
+                if (foldedName.length() > 0) {
+                    foldedName.append('\0');
+                }
+                foldedName.append(joinedVariant);
+                for (int t = 0; t + 3 <= joinedVariant.length(); t++) {
+                    List<Integer> postings = addPosting(trigramLocations, joinedVariant.substring(t, t + 3), i);
+                    // Postings are ascending. Remove a duplicate of the same location:
+                    int size = postings.size();
+                    if (size > 1 && postings.get(size - 2) == i) {
+                        postings.remove(size - 1);
+                    }
+                }
+            }
+            foldedNames[i] = foldedName.toString();
+        }
+
+        words = wordLocations.keySet().toArray(new String[0]);
+        wordPostings = new int[words.length][];
+        for (int w = 0; w < words.length; w++) {
+            wordPostings[w] = toArray(wordLocations.get(words[w]));
+        }
+        trigramPostings = new HashMap<>(trigramLocations.size() * 2);
+        for (Map.Entry<String, List<Integer>> entry : trigramLocations.entrySet()) {
+            trigramPostings.put(entry.getKey(), toArray(entry.getValue()));
+        }
+    }
+
+    /**
+     * Returns the index of the location with the given ID in the list this index was built from,
+     * or -1 if the list does not contain it.
+     */
+    public int indexOfId(String locationId) {
+        Integer index = indicesById.get(locationId);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * Returns the indices of the locations that match the query, best matches first. Locations
+     * with equally good matches keep their order in the list. An empty query matches all
+     * locations.
+     */
+    public int[] search(String query) {
+        String[] queryWords = splitWords(query);
+        if (queryWords.length == 0) {
+            int[] all = new int[locationCount];
+            for (int i = 0; i < locationCount; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+
+        // Sum of the scores of all query words. Locations that miss a query word are set to -1.
+        int[] scores = new int[locationCount];
+        int[] wordScores = new int[locationCount];
+        for (String queryWord : queryWords) {
+            Arrays.fill(wordScores, 0);
+            String folded = fold(queryWord);
+            scorePrefixMatches(folded, wordScores);
+            scoreSubstringMatches(folded, wordScores);
+            if (folded.length() >= TYPO_MIN_LENGTH) {
+                scoreTypoMatches(folded, wordScores);
+            }
+            for (int i = 0; i < locationCount; i++) {
+                scores[i] = wordScores[i] == 0 || scores[i] < 0 ? -1 : scores[i] + wordScores[i];
+            }
+        }
+
+        // Sort by descending score and ascending index:
+        int maxScore = SCORE_FIRST_WORD_PREFIX * queryWords.length;
+        int[] countsByScore = new int[maxScore + 2];
+        int matchCount = 0;
+        for (int score : scores) {
+            if (score > 0) {
+                countsByScore[maxScore - score + 1]++;
+                matchCount++;
+            }
+        }
+        for (int s = 1; s < countsByScore.length; s++) {
+            countsByScore[s] += countsByScore[s - 1];
+        }
+        int[] results = new int[matchCount];
+        for (int i = 0; i < locationCount; i++) {
+            if (scores[i] > 0) {
+                results[countsByScore[maxScore - scores[i]]++] = i;
+            }
+        }
+        return results;
+    }
+
+    private void scorePrefixMatches(String prefix, int[] wordScores) {
+        int start = lowerBound(prefix);
+        for (int w = start; w < words.length && words[w].startsWith(prefix); w++) {
+            for (int posting : wordPostings[w]) {
+                if (posting < 0) {
+                    raise(wordScores, -posting - 1, SCORE_FIRST_WORD_PREFIX);
+                } else {
+                    raise(wordScores, posting, SCORE_WORD_PREFIX);
+                }
+            }
+        }
+    }
+
+    private void scoreSubstringMatches(String substring, int[] wordScores) {
+        if (substring.length() < 3) {
+            // Too short for the trigram index. Prefix matches are sufficient for such queries.
+            return;
+        }
+        // The candidates are the locations that contain the rarest trigram of the substring:
+        int[] candidates = null;
+        for (int t = 0; t + 3 <= substring.length(); t++) {
+            int[] postings = trigramPostings.get(substring.substring(t, t + 3));
+            if (postings == null) {
+                return;
+            }
+            if (candidates == null || postings.length < candidates.length) {
+                candidates = postings;
+            }
+        }
+        for (int candidate : candidates) {
+            if (foldedNames[candidate].contains(substring)) {
+                raise(wordScores, candidate, SCORE_SUBSTRING);
+            }
+        }
+    }
+
+    private void scoreTypoMatches(String queryWord, int[] wordScores) {
+        int maxTypos = queryWord.length() >= TWO_TYPOS_MIN_LENGTH ? 2 : 1;
+        for (int w = 0; w < words.length; w++) {
+            if (isPrefixWithinTypos(queryWord, words[w], maxTypos)) {
+                for (int posting : wordPostings[w]) {
+                    raise(wordScores, posting < 0 ? -posting - 1 : posting, SCORE_TYPO);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true iff a prefix of the word can be turned into the query word with at most the
+     * given number of typos (optimal string alignment distance).
+     */
+    static boolean isPrefixWithinTypos(String queryWord, String word, int maxTypos) {
+        int n = queryWord.length();
+        int m = Math.min(word.length(), n + maxTypos);
+        if (m < n - maxTypos) {
+            return false;
+        }
+        // distances[i][j] = distance between the first i characters of the query word and the
+        // first j characters of the word.
+        int[][] distances = new int[n + 1][m + 1];
+        for (int j = 0; j <= m; j++) {
+            distances[0][j] = j;
+        }
+        for (int i = 1; i <= n; i++) {
+            distances[i][0] = i;
+            int rowMin = i;
+            for (int j = 1; j <= m; j++) {
+                int cost = queryWord.charAt(i - 1) == word.charAt(j - 1) ? 0 : 1;
+                int distance = Math.min(Math.min(distances[i - 1][j] + 1, distances[i][j - 1] + 1),
+                        distances[i - 1][j - 1] + cost);
+                if (i > 1 && j > 1 && queryWord.charAt(i - 1) == word.charAt(j - 2)
+                        && queryWord.charAt(i - 2) == word.charAt(j - 1)) {
+                    distance = Math.min(distance, distances[i - 2][j - 2] + 1);
+                }
+                distances[i][j] = distance;
+                rowMin = Math.min(rowMin, distance);
+            }
+            if (rowMin > maxTypos) {
+                return false;
+            }
+        }
+        for (int j = 0; j <= m; j++) {
+            if (distances[n][j] <= maxTypos) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void raise(int[] wordScores, int index, int score) {
+        if (wordScores[index] < score) {
+            wordScores[index] = score;
+        }
+    }
+
+    /**
+     * Returns the index of the first word that is not less than the given string.
+     */
+    private int lowerBound(String string) {
+        int low = 0;
+        int high = words.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (words[mid].compareTo(string) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static String[] splitWords(String text) {
+        String trimmed = WORD_SEPARATORS.matcher(text).replaceAll(" ").trim();
+        return trimmed.isEmpty() ? new String[0] : trimmed.split(" ");
+    }
+
+    /**
+     * Folds the text with umlauts transcribed, e.g. "Büsum" to "buesum".
+     */
+    static String fold(String text) {
+        return removeDiacritics(text.toLowerCase(Locale.ROOT)
+                .replace("ä", "ae").replace("ö", "oe").replace("ü", "ue").replace("ß", "ss"));
+    }
+
+    /**
+     * Returns the folded forms of the text: with umlauts transcribed and, if the text contains
+     * umlauts, with their dots removed, e.g. "buesum" and "busum" for "Büsum".
+     */
+    static List<String> foldVariants(String text) {
+        List<String> variants = new ArrayList<>(2);
+        variants.add(fold(text));
+        String withoutDots = removeDiacritics(text.toLowerCase(Locale.ROOT).replace("ß", "ss"));
+        if (!withoutDots.equals(variants.get(0))) {
+            variants.add(withoutDots);
+        }
+        return variants;
+    }
+
+    private static String removeDiacritics(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > 0x7F) {
+                return DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+            }
+        }
+        return text;
+    }
+
+    private static <K> List<Integer> addPosting(Map<K, List<Integer>> postings, K key, int index) {
+        List<Integer> list = postings.get(key);
+        if (list == null) {
+            list = new ArrayList<>();
+            postings.put(key, list);
+        }
+        list.add(index);
+        return list;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,128 @@
+package de.davidaugustat.wattpaddlerwidget.logic;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import de.davidaugustat.wattpaddlerwidget.data.Location;
+import okio.BufferedSource;
+
+/**
+ * Streaming parser for the semicolon-separated locations CSV of the locations API:
+ * <p>
+ * Alte Weser, Leuchtturm;734P<br>
+ * Altengamme;732A<br>
+ * ...
+ * <p>
+ * A line may continue with the latitude and longitude of the station in decimal degrees, e.g.
+ * "Büsum;505P;54.1214;8.8586". A decimal comma is accepted as well. Coordinates that are missing,
+ * malformed or out of range are treated as unknown, so the list stays usable without them.
+ * <p>
+ * The parser reads the CSV directly from an Okio source and emits one Location object per line.
+ * Only the current line is buffered, so the memory used while parsing does not grow with the size
+ * of the file. The name and ID are decoded straight from the buffered bytes without creating
+ * intermediate line strings or split arrays.
+ */
+public class LocationsCsvParser {
+
+    private static final byte NEWLINE = '\n';
+    private static final byte SEPARATOR = ';';
+
+    /**
+     * Parses all locations from the source and returns them as a list.
+     *
+     * @param source  Source containing the CSV data
+     * @param charset Charset of the CSV data. The line and column separators must be single ASCII
+     *                bytes in this charset (true for ISO-8859-1 and UTF-8).
+     * @throws IllegalArgumentException If a line does not contain at least two columns.
+     */
+    public static List<Location> parse(BufferedSource source, Charset charset) throws IOException {
+        List<Location> locations = new ArrayList<>();
+        parse(source, charset, locations::add);
+        return locations;
+    }
+
+    /**
+     * Parses the locations from the source and passes every location to the consumer as soon as
+     * its line has been read. Empty lines are skipped. The third and fourth column are parsed as
+     * coordinates, further columns are ignored.
+     *
+     * @param source           Source containing the CSV data
+     * @param charset          Charset of the CSV data
+     * @param locationConsumer Receives the locations in the order in which they occur.
+     * @throws IllegalArgumentException If a line does not contain at least two columns.
+     */
+    public static void parse(BufferedSource source, Charset charset,
+                             Consumer<Location> locationConsumer) throws IOException {
+        int lineNumber = 0;
+        while (!source.exhausted()) {
+            lineNumber++;
+            long lineEnd = source.indexOf(NEWLINE);
+            boolean isLastLine = lineEnd == -1;
+            // If there is no newline anymore, indexOf() has buffered the rest of the source.
+            long lineLength = isLastLine ? source.getBuffer().size() : lineEnd;
+            long contentLength = lineLength;
+            if (contentLength > 0 && source.getBuffer().getByte(contentLength - 1) == '\r') {
+                contentLength--;
+            }
+
+            if (contentLength == 0) {
+                source.skip(isLastLine ? lineLength : lineLength + 1);
+                continue;
+            }
+
+            long separatorIndex = source.indexOf(SEPARATOR, 0, contentLength);
+            if (separatorIndex == -1) {
+                throw new IllegalArgumentException("Invalid CSV line " + lineNumber + ": "
+                        + source.readString(contentLength, charset));
+            }
+            String locationName = source.readString(separatorIndex, charset);
+            source.skip(1);
+
+            long remainingLength = contentLength - separatorIndex - 1;
+            long idEnd = source.indexOf(SEPARATOR, 0, remainingLength);
+            long idLength = idEnd == -1 ? remainingLength : idEnd;
+            String locationId = source.readString(idLength, charset);
+
+            double latitude = Double.NaN;
+            double longitude = Double.NaN;
+            long restLength = remainingLength - idLength;
+            if (idEnd != -1) {
+                source.skip(1);
+                String[] columns = source.readString(restLength - 1, charset).split(";", 3);
+                restLength = 0;
+                if (columns.length >= 2) {
+                    latitude = parseCoordinate(columns[0], 90);
+                    longitude = parseCoordinate(columns[1], 180);
+                }
+                if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+                    latitude = Double.NaN;
+                    longitude = Double.NaN;
+                }
+            }
+
+            // Skip the line break and a possible carriage return:
+            long skipLength = lineLength - contentLength + restLength;
+            source.skip(isLastLine ? skipLength : skipLength + 1);
+
+            locationConsumer.accept(new Location(locationId, locationName, latitude, longitude));
+        }
+    }
+
+    /**
+     * Parses a coordinate in decimal degrees.
+     *
+     * @param limit Maximum absolute value of the coordinate
+     * @return The coordinate or NaN if the column is not a valid coordinate.
+     */
+    private static double parseCoordinate(String column, double limit) {
+        try {
+            double coordinate = Double.parseDouble(column.trim().replace(',', '.'));
+            return Math.abs(coordinate) <= limit ? coordinate : Double.NaN;
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+}
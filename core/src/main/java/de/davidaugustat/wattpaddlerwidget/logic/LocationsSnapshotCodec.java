@@ -0,0 +1,91 @@
+package de.davidaugustat.wattpaddlerwidget.logic;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.davidaugustat.wattpaddlerwidget.data.Location;
+
+/**
+ * Binary format of the locations snapshot that is stored by the app.
+ * <p>
+ * Snapshot layout (big endian):
+ * <pre>
+ * int    magic number
+ * int    format version
+ * int    number of locations
+ * per location: modified UTF-8 id, modified UTF-8 name, double latitude, double longitude
+ * </pre>
+ * Unknown coordinates are stored as NaN. Version 1 snapshots did not contain coordinates; they
+ * are rejected like any other unknown version, so the list gets fetched again.
+ */
+public class LocationsSnapshotCodec {
+
+    private static final int MAGIC = 0x57504C53; // "WPLS"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 12;
+
+    /**
+     * Size of a location with empty id and name: two UTF length prefixes and two doubles.
+     */
+    private static final int MIN_LOCATION_SIZE = 2 + 2 + 8 + 8;
+
+    /**
+     * Encodes the locations into the binary snapshot format.
+     */
+    public static byte[] encode(List<Location> locations) {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream(locations.size() * 48);
+        try (DataOutputStream out = new DataOutputStream(byteStream)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(locations.size());
+            for (Location location : locations) {
+                out.writeUTF(location.getId());
+                out.writeUTF(location.getName());
+                out.writeDouble(location.getLatitude());
+                out.writeDouble(location.getLongitude());
+            }
+        } catch (IOException e) {
+            // Cannot happen when writing to a byte array.
+            throw new IllegalStateException(e);
+        }
+        return byteStream.toByteArray();
+    }
+
+    /**
+     * Decodes a binary snapshot.
+     *
+     * @throws IOException If the data is not a snapshot of the current version, is truncated or
+     *                     announces more locations than it can contain.
+     */
+    public static List<Location> decode(byte[] data) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a locations snapshot");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            int count = in.readInt();
+            // Bounding the count by the size of the data keeps a corrupt count from allocating a
+            // huge list:
+            if (count < 0 || count > (data.length - HEADER_SIZE) / MIN_LOCATION_SIZE) {
+                throw new IOException("Invalid number of locations: " + count);
+            }
+            List<Location> locations = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String id = in.readUTF();
+                String name = in.readUTF();
+                double latitude = in.readDouble();
+                double longitude = in.readDouble();
+                locations.add(new Location(id, name, latitude, longitude));
+            }
+            return locations;
+        }
+    }
+}
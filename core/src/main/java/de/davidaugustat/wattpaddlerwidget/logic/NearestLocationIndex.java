@@ -0,0 +1,310 @@
+package de.davidaugustat.wattpaddlerwidget.logic;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import de.davidaugustat.wattpaddlerwidget.data.Location;
+
+/**
+ * Spatial index that finds the locations closest to a coordinate.
+ * <p>
+ * The locations are stored as points on the unit sphere in a balanced k-d tree. The straight-line
+ * distance between two such points grows with the distance on the surface of the earth, so the
+ * nearest points are the nearest stations, also across the poles and the antimeridian. A query
+ * for the k nearest locations takes O(k log n) time on average.
+ * <p>
+ * The tree is stored implicitly in arrays: the node of the range [from, to) is the median at
+ * (from + to) / 2, its children are the ranges left and right of it. Locations without
+ * coordinates are not included.
+ * <p>
+ * The index is immutable and can be queried from any thread. It should be built on a background
+ * thread.
+ */
+public class NearestLocationIndex {
+
+    /**
+     * Mean radius of the earth in kilometers.
+     */
+    public static final double EARTH_RADIUS_KM = 6371.0;
+
+    private static final Pattern COORDINATES = Pattern.compile(
+            "\\s*([+-]?\\d{1,3}(?:\\.\\d+)?)\\s*[,;\\s]\\s*([+-]?\\d{1,3}(?:\\.\\d+)?)\\s*");
+
+    /**
+     * Indices of the locations in the list this index was built from, in tree order.
+     */
+    private final int[] locationIndices;
+
+    /**
+     * x, y and z of the point of each location on the unit sphere, in tree order.
+     */
+    private final double[] points;
+
+    public NearestLocationIndex(List<Location> locations) {
+        int count = 0;
+        for (Location location : locations) {
+            if (location.hasCoordinates()) {
+                count++;
+            }
+        }
+        locationIndices = new int[count];
+        points = new double[count * 3];
+        int node = 0;
+        for (int i = 0; i < locations.size(); i++) {
+            Location location = locations.get(i);
+            if (location.hasCoordinates()) {
+                locationIndices[node] = i;
+                toPoint(location.getLatitude(), location.getLongitude(), points, node * 3);
+                node++;
+            }
+        }
+        build(0, count, 0);
+    }
+
+    /**
+     * Returns the number of locations with coordinates, i.e. the locations that can be found.
+     */
+    public int size() {
+        return locationIndices.length;
+    }
+
+    /**
+     * Returns the index of the location closest to the coordinate in the list this index was
+     * built from, or -1 if no location has coordinates.
+     */
+    public int findNearest(double latitude, double longitude) {
+        int[] nearest = findNearest(latitude, longitude, 1);
+        return nearest.length > 0 ? nearest[0] : -1;
+    }
+
+    /**
+     * Returns the indices of the k locations closest to the coordinate in the list this index
+     * was built from, closest first. Fewer indices are returned if fewer locations have
+     * coordinates.
+     */
+    public int[] findNearest(double latitude, double longitude, int k) {
+        k = Math.min(k, locationIndices.length);
+        if (k <= 0) {
+            return new int[0];
+        }
+        double[] query = new double[3];
+        toPoint(latitude, longitude, query, 0);
+
+        // Max-heap of the k closest nodes found so far, by squared distance:
+        Candidates candidates = new Candidates(k);
+        search(0, locationIndices.length, 0, query, candidates);
+
+        int[] results = new int[candidates.size];
+        for (int i = results.length - 1; i >= 0; i--) {
+            results[i] = locationIndices[candidates.nodes[0]];
+            candidates.removeMax();
+        }
+        return results;
+    }
+
+    /**
+     * Returns the great-circle distance between two coordinates in kilometers.
+     */
+    public static double getDistanceKm(double latitude1, double longitude1,
+                                       double latitude2, double longitude2) {
+        double[] points = new double[6];
+        toPoint(latitude1, longitude1, points, 0);
+        toPoint(latitude2, longitude2, points, 3);
+        double chord = Math.sqrt(squaredDistance(points, 0, points, 3));
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, chord / 2));
+    }
+
+    /**
+     * Parses a coordinate in decimal degrees as entered by the user, e.g. "54.12, 8.86" or
+     * "54.12 8.86".
+     *
+     * @return Latitude and longitude or null if the text is not a valid coordinate.
+     */
+    public static double[] parseCoordinates(String text) {
+        Matcher matcher = COORDINATES.matcher(text);
+        if (!matcher.matches()) {
+            return null;
+        }
+        double latitude = Double.parseDouble(matcher.group(1));
+        double longitude = Double.parseDouble(matcher.group(2));
+        if (Math.abs(latitude) > 90 || Math.abs(longitude) > 180) {
+            return null;
+        }
+        return new double[]{latitude, longitude};
+    }
+
+    private void build(int from, int to, int axis) {
+        if (to - from <= 1) {
+            return;
+        }
+        int median = (from + to) >>> 1;
+        select(from, to - 1, median, axis);
+        build(from, median, (axis + 1) % 3);
+        build(median + 1, to, (axis + 1) % 3);
+    }
+
+    /**
+     * Reorders the nodes in [left, right] so that the node at index k has the k-th smallest
+     * coordinate on the axis, with smaller or equal coordinates before it and greater or equal
+     * ones after it (quickselect).
+     */
+    private void select(int left, int right, int k, int axis) {
+        while (left < right) {
+            double pivot = points[((left + right) >>> 1) * 3 + axis];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (points[i * 3 + axis] < pivot) {
+                    i++;
+                }
+                while (points[j * 3 + axis] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        int index = locationIndices[i];
+        locationIndices[i] = locationIndices[j];
+        locationIndices[j] = index;
+        for (int axis = 0; axis < 3; axis++) {
+            double coordinate = points[i * 3 + axis];
+            points[i * 3 + axis] = points[j * 3 + axis];
+            points[j * 3 + axis] = coordinate;
+        }
+    }
+
+    private void search(int from, int to, int axis, double[] query, Candidates candidates) {
+        if (from >= to) {
+            return;
+        }
+        int median = (from + to) >>> 1;
+        candidates.offer(median, squaredDistance(points, median * 3, query, 0));
+
+        double offset = query[axis] - points[median * 3 + axis];
+        int nextAxis = (axis + 1) % 3;
+        // Search the side of the query point first, then the other side only if it can contain
+        // a closer node than the farthest candidate:
+        if (offset < 0) {
+            search(from, median, nextAxis, query, candidates);
+            if (!candidates.isFull() || offset * offset < candidates.maxDistance()) {
+                search(median + 1, to, nextAxis, query, candidates);
+            }
+        } else {
+            search(median + 1, to, nextAxis, query, candidates);
+            if (!candidates.isFull() || offset * offset < candidates.maxDistance()) {
+                search(from, median, nextAxis, query, candidates);
+            }
+        }
+    }
+
+    private static void toPoint(double latitude, double longitude, double[] points, int offset) {
+        double latitudeRadians = Math.toRadians(latitude);
+        double longitudeRadians = Math.toRadians(longitude);
+        double cosLatitude = Math.cos(latitudeRadians);
+        points[offset] = cosLatitude * Math.cos(longitudeRadians);
+        points[offset + 1] = cosLatitude * Math.sin(longitudeRadians);
+        points[offset + 2] = Math.sin(latitudeRadians);
+    }
+
+    private static double squaredDistance(double[] a, int aOffset, double[] b, int bOffset) {
+        double dx = a[aOffset] - b[bOffset];
+        double dy = a[aOffset + 1] - b[bOffset + 1];
+        double dz = a[aOffset + 2] - b[bOffset + 2];
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Bounded binary max-heap of nodes, ordered by their squared distance to the query point.
+     */
+    private static class Candidates {
+        private final int[] nodes;
+        private final double[] distances;
+        private int size;
+
+        Candidates(int capacity) {
+            nodes = new int[capacity];
+            distances = new double[capacity];
+        }
+
+        boolean isFull() {
+            return size == nodes.length;
+        }
+
+        double maxDistance() {
+            return distances[0];
+        }
+
+        void offer(int node, double distance) {
+            if (!isFull()) {
+                nodes[size] = node;
+                distances[size] = distance;
+                siftUp(size++);
+            } else if (distance < distances[0]) {
+                nodes[0] = node;
+                distances[0] = distance;
+                siftDown(0);
+            }
+        }
+
+        void removeMax() {
+            size--;
+            nodes[0] = nodes[size];
+            distances[0] = distances[size];
+            siftDown(0);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (distances[parent] >= distances[i]) {
+                    return;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int largest = i;
+                int left = 2 * i + 1;
+                int right = left + 1;
+                if (left < size && distances[left] > distances[largest]) {
+                    largest = left;
+                }
+                if (right < size && distances[right] > distances[largest]) {
+                    largest = right;
+                }
+                if (largest == i) {
+                    return;
+                }
+                swap(i, largest);
+                i = largest;
+            }
+        }
+
+        private void swap(int i, int j) {
+            int node = nodes[i];
+            nodes[i] = nodes[j];
+            nodes[j] = node;
+            double distance = distances[i];
+            distances[i] = distances[j];
+            distances[j] = distance;
+        }
+    }
+}
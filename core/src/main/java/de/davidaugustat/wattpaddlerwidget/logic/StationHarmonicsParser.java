@@ -0,0 +1,68 @@
+package de.davidaugustat.wattpaddlerwidget.logic;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.davidaugustat.wattpaddlerwidget.data.StationHarmonics;
+import okio.BufferedSource;
+
+/**
+ * Parser for the harmonic constants of a station. The format is a semicolon-separated table
+ * like the other APIs use (example):
+ * <p>
+ * # Comment<br>
+ * Z0;5.01<br>
+ * M2;1.512;318.4<br>
+ * S2;0.405;22.7<br>
+ * ...
+ * <p>
+ * The Z0 line holds the mean water level. Every other line holds the common name of a
+ * constituent (see {@link TidalConstituent}), its amplitude and its Greenwich phase lag in
+ * degrees. Empty lines and lines starting with '#' are ignored.
+ */
+public class StationHarmonicsParser {
+
+    private static final String MEAN_LEVEL_NAME = "Z0";
+
+    /**
+     * @param locationId ID of the station the constants belong to
+     * @param source     Source of the UTF-8 encoded table
+     * @throws IllegalArgumentException If a line is malformed or contains an unsupported
+     *                                  constituent, or if there is no constituent at all.
+     */
+    public static StationHarmonics parse(String locationId, BufferedSource source) throws IOException {
+        double meanLevel = 0;
+        List<StationHarmonics.Constituent> constituents = new ArrayList<>();
+        int lineNumber = 0;
+        String line;
+        while ((line = source.readUtf8Line()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] columns = line.split(";");
+            try {
+                if (columns[0].trim().equals(MEAN_LEVEL_NAME) && columns.length == 2) {
+                    meanLevel = Double.parseDouble(columns[1].trim());
+                } else if (columns.length == 3) {
+                    constituents.add(new StationHarmonics.Constituent(
+                            TidalConstituent.fromDisplayName(columns[0].trim()),
+                            Double.parseDouble(columns[1].trim()),
+                            Double.parseDouble(columns[2].trim())));
+                } else {
+                    throw new IllegalArgumentException("Wrong number of columns");
+                }
+            } catch (IllegalArgumentException e) {
+                // NumberFormatException is an IllegalArgumentException as well.
+                throw new IllegalArgumentException("Invalid harmonics line " + lineNumber + ": "
+                        + line + " (" + e.getMessage() + ")", e);
+            }
+        }
+        if (constituents.isEmpty()) {
+            throw new IllegalArgumentException("No constituents for station " + locationId);
+        }
+        return new StationHarmonics(locationId, meanLevel, constituents);
+    }
+}
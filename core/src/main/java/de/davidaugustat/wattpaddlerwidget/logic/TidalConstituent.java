@@ -0,0 +1,106 @@
+package de.davidaugustat.wattpaddlerwidget.logic;
+
+/**
+ * Tidal constituents supported by the {@link HarmonicTidePredictor}.
+ * <p>
+ * Every constituent is defined by its Doodson numbers, i.e. the multiples of the astronomical
+ * arguments (mean lunar time, mean longitudes of moon and sun, lunar perigee, negated lunar node,
+ * solar perigee) its argument is made of, plus a phase offset in multiples of 90°. The angular
+ * speed follows from these numbers. The nodal corrections (amplitude factor f and phase
+ * correction u) that account for the 18.6 year cycle of the lunar node are taken from Schureman's
+ * formulas of the constituent's family.
+ */
+public enum TidalConstituent {
+    // Long period
+    SA(0, 0, 1, 0, 0, 0, 0, Nodal.NONE),
+    SSA(0, 0, 2, 0, 0, 0, 0, Nodal.NONE),
+    MM(0, 1, 0, -1, 0, 0, 0, Nodal.MM),
+    MSF(0, 2, -2, 0, 0, 0, 0, Nodal.MSF),
+    MF(0, 2, 0, 0, 0, 0, 0, Nodal.MF),
+    // Diurnal
+    Q1(1, -2, 0, 1, 0, 0, -1, Nodal.O1),
+    O1(1, -1, 0, 0, 0, 0, -1, Nodal.O1),
+    P1(1, 1, -2, 0, 0, 0, -1, Nodal.NONE),
+    K1(1, 1, 0, 0, 0, 0, 1, Nodal.K1),
+    // Semidiurnal
+    _2N2(2, -2, 0, 2, 0, 0, 0, Nodal.M2),
+    MU2(2, -2, 2, 0, 0, 0, 0, Nodal.M2),
+    N2(2, -1, 0, 1, 0, 0, 0, Nodal.M2),
+    NU2(2, -1, 2, -1, 0, 0, 0, Nodal.M2),
+    M2(2, 0, 0, 0, 0, 0, 0, Nodal.M2),
+    // L2 has a more complex correction; the one of M2 is a good approximation.
+    L2(2, 1, 0, -1, 0, 0, 2, Nodal.M2),
+    T2(2, 2, -3, 0, 0, 1, 0, Nodal.NONE),
+    S2(2, 2, -2, 0, 0, 0, 0, Nodal.NONE),
+    K2(2, 2, 0, 0, 0, 0, 0, Nodal.K2),
+    // Shallow water
+    MN4(4, -1, 0, 1, 0, 0, 0, Nodal.M2_SQUARED),
+    M4(4, 0, 0, 0, 0, 0, 0, Nodal.M2_SQUARED),
+    MS4(4, 2, -2, 0, 0, 0, 0, Nodal.M2),
+    M6(6, 0, 0, 0, 0, 0, 0, Nodal.M2_CUBED);
+
+    /**
+     * Families of nodal corrections.
+     */
+    enum Nodal {
+        NONE, M2, M2_SQUARED, M2_CUBED, K1, O1, K2, MM, MF, MSF
+    }
+
+    // Speeds of the astronomical arguments in degrees per hour:
+    static final double TAU_SPEED = 14.4920521070;
+    static final double S_SPEED = 0.5490165321;
+    static final double H_SPEED = 0.0410686387;
+    static final double P_SPEED = 0.0046418360;
+    static final double N_PRIME_SPEED = 0.0022064100;
+    static final double P1_SPEED = 0.0000019610;
+
+    final int tau;
+    final int s;
+    final int h;
+    final int p;
+    final int nPrime;
+    final int p1;
+    final int quarterCycles;
+    final Nodal nodal;
+
+    TidalConstituent(int tau, int s, int h, int p, int nPrime, int p1, int quarterCycles,
+                     Nodal nodal) {
+        this.tau = tau;
+        this.s = s;
+        this.h = h;
+        this.p = p;
+        this.nPrime = nPrime;
+        this.p1 = p1;
+        this.quarterCycles = quarterCycles;
+        this.nodal = nodal;
+    }
+
+    /**
+     * Returns the angular speed in degrees per hour.
+     */
+    public double getSpeed() {
+        return tau * TAU_SPEED + s * S_SPEED + h * H_SPEED + p * P_SPEED
+                + nPrime * N_PRIME_SPEED + p1 * P1_SPEED;
+    }
+
+    /**
+     * Returns the common name of the constituent, e.g. "M2" or "2N2".
+     */
+    public String getDisplayName() {
+        return name().startsWith("_") ? name().substring(1) : name();
+    }
+
+    /**
+     * Returns the constituent with the given common name (case-insensitive).
+     *
+     * @throws IllegalArgumentException If the constituent is not supported.
+     */
+    public static TidalConstituent fromDisplayName(String displayName) {
+        for (TidalConstituent constituent : values()) {
+            if (constituent.getDisplayName().equalsIgnoreCase(displayName)) {
+                return constituent;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported tidal constituent: " + displayName);
+    }
+}
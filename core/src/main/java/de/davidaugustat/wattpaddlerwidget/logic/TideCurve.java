@@ -0,0 +1,129 @@
+package de.davidaugustat.wattpaddlerwidget.logic;
+
+import java.util.Arrays;
+
+import de.davidaugustat.wattpaddlerwidget.data.TideTimeline;
+
+/**
+ * Water level curve between the tides of a timeline.
+ * <p>
+ * The API only provides the times of the tides, not the water levels. So the curve is normalized:
+ * every high tide has the level 1 and every low tide the level 0. Between two tides, the level
+ * follows half a cosine wave, which is the usual approximation of the tidal curve. Before the
+ * first and after the last tide of the timeline the curve is continued with the mean duration of
+ * half a tide ({@link #MEAN_HALF_TIDE_MINUTES}).
+ * <p>
+ * Objects of this class are immutable. Curves with the same tides are equal.
+ */
+public class TideCurve {
+
+    /**
+     * Mean time between a high and a low tide (half of the M2 period).
+     */
+    public static final int MEAN_HALF_TIDE_MINUTES = 373;
+
+    private final int[] tideMinutes;
+    private final boolean[] highTides;
+
+    private TideCurve(int[] tideMinutes, boolean[] highTides) {
+        this.tideMinutes = tideMinutes;
+        this.highTides = highTides;
+    }
+
+    /**
+     * Creates the curve of the real tides of the timeline. Placeholders of shifted or
+     * non-existent tides are ignored.
+     *
+     * @return The curve or null if the timeline does not contain any real tide.
+     */
+    public static TideCurve fromTimeline(TideTimeline timeline) {
+        int count = 0;
+        for (int i = 0; i < timeline.size(); i++) {
+            if (timeline.isRealTide(i)) {
+                count++;
+            }
+        }
+        if (count == 0) {
+            return null;
+        }
+        int[] tideMinutes = new int[count];
+        boolean[] highTides = new boolean[count];
+        int index = 0;
+        for (int i = 0; i < timeline.size(); i++) {
+            if (timeline.isRealTide(i)) {
+                tideMinutes[index] = timeline.getEpochMinute(i);
+                highTides[index] = timeline.getTag(i) == TideTimeline.TAG_HIGH;
+                index++;
+            }
+        }
+        return new TideCurve(tideMinutes, highTides);
+    }
+
+    /**
+     * Returns the normalized water level (0 = low tide, 1 = high tide) at the given time.
+     *
+     * @param epochMinute Local time in minutes since 1970-01-01T00:00
+     */
+    public double getLevel(double epochMinute) {
+        int next = Arrays.binarySearch(tideMinutes, (int) Math.ceil(epochMinute));
+        if (next < 0) {
+            next = -next - 1;
+        }
+        double startMinute, endMinute;
+        boolean startIsHigh;
+        if (next == 0) {
+            // Before the first tide:
+            endMinute = tideMinutes[0];
+            startMinute = endMinute - MEAN_HALF_TIDE_MINUTES;
+            startIsHigh = !highTides[0];
+        } else if (next == tideMinutes.length) {
+            // After the last tide:
+            startMinute = tideMinutes[next - 1];
+            endMinute = startMinute + MEAN_HALF_TIDE_MINUTES;
+            startIsHigh = highTides[next - 1];
+        } else {
+            startMinute = tideMinutes[next - 1];
+            endMinute = tideMinutes[next];
+            startIsHigh = highTides[next - 1];
+        }
+        if (epochMinute < startMinute || epochMinute > endMinute) {
+            // Further away from the known tides than half a tide: continue the mean oscillation.
+            double phase = (epochMinute - startMinute) / MEAN_HALF_TIDE_MINUTES * Math.PI;
+            double level = (1 + Math.cos(phase)) / 2;
+            return startIsHigh ? level : 1 - level;
+        }
+        if (startMinute == endMinute) {
+            return startIsHigh ? 1 : 0;
+        }
+        double progress = (epochMinute - startMinute) / (endMinute - startMinute);
+        double level = (1 + Math.cos(progress * Math.PI)) / 2;
+        return startIsHigh ? level : 1 - level;
+    }
+
+    /**
+     * Samples the curve at equidistant times.
+     *
+     * @param startEpochMinute   Time of the first sample
+     * @param minutesPerSample   Time between two samples
+     * @param levels             Receives the levels. Its length is the number of samples.
+     */
+    public void sample(double startEpochMinute, double minutesPerSample, float[] levels) {
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = (float) getLevel(startEpochMinute + i * minutesPerSample);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TideCurve tideCurve = (TideCurve) o;
+        return Arrays.equals(tideMinutes, tideCurve.tideMinutes)
+                && Arrays.equals(highTides, tideCurve.highTides);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(tideMinutes) + Arrays.hashCode(highTides);
+    }
+}
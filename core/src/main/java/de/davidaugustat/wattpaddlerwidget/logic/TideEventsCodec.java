@@ -0,0 +1,44 @@
+package de.davidaugustat.wattpaddlerwidget.logic;
+
+import java.nio.ByteBuffer;
+
+import de.davidaugustat.wattpaddlerwidget.data.TideTimeline;
+import de.davidaugustat.wattpaddlerwidget.data.TidesInfo;
+
+/**
+ * Binary format of the tide events of a single day as they are stored by the app: a sequence of
+ * (int epoch minute, byte tag) pairs in big endian, see {@link TideTimeline}.
+ */
+public class TideEventsCodec {
+
+    private static final int EVENT_SIZE = 5;
+
+    /**
+     * Encodes the events of the TidesInfo's date. Events of neighbouring days are not included.
+     */
+    public static byte[] encode(TidesInfo tidesInfo) {
+        TideTimeline timeline = tidesInfo.getTimeline();
+        long epochDay = tidesInfo.getDate().toEpochDay();
+        int start = timeline.getDayStartIndex(epochDay);
+        int end = timeline.getDayEndIndex(epochDay);
+
+        ByteBuffer buffer = ByteBuffer.allocate((end - start) * EVENT_SIZE);
+        for (int i = start; i < end; i++) {
+            buffer.putInt(timeline.getEpochMinute(i));
+            buffer.put(timeline.getTag(i));
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Decodes the events. An incomplete trailing event is ignored.
+     */
+    public static TideTimeline decode(byte[] events) {
+        ByteBuffer buffer = ByteBuffer.wrap(events);
+        TideTimeline.Builder builder = new TideTimeline.Builder();
+        while (buffer.remaining() >= EVENT_SIZE) {
+            builder.addEvent(buffer.getInt(), buffer.get());
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,109 @@
+package de.davidaugustat.wattpaddlerwidget.logic;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import de.davidaugustat.wattpaddlerwidget.data.TidesInfo;
+
+/**
+ * Binary format of the records of the tides write journal. The journal is a sequence of records
+ * that are appended one by one, so a crash can leave an incomplete record at its end.
+ * <p>
+ * Record layout (big endian):
+ * <pre>
+ * int    length of the payload
+ * int    CRC-32 of the payload
+ * payload: modified UTF-8 location id, modified UTF-8 location name, long epoch day,
+ *          long updated time (epoch seconds, UTC), int length of the events, events in the
+ *          format of {@link TideEventsCodec}
+ * </pre>
+ */
+public class TidesJournalCodec {
+
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * Encodes the tides of a single day into a record.
+     */
+    public static byte[] encodeRecord(TidesInfo tidesInfo) {
+        byte[] events = TideEventsCodec.encode(tidesInfo);
+        ByteArrayOutputStream payloadStream = new ByteArrayOutputStream(64 + events.length);
+        try (DataOutputStream out = new DataOutputStream(payloadStream)) {
+            out.writeUTF(tidesInfo.getLocationId());
+            out.writeUTF(tidesInfo.getLocationName());
+            out.writeLong(tidesInfo.getDate().toEpochDay());
+            out.writeLong(tidesInfo.getUpdatedTime().toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(events.length);
+            out.write(events);
+        } catch (IOException e) {
+            // Cannot happen when writing to a byte array.
+            throw new IllegalStateException(e);
+        }
+        byte[] payload = payloadStream.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return ByteBuffer.allocate(HEADER_SIZE + payload.length)
+                .putInt(payload.length)
+                .putInt((int) crc.getValue())
+                .put(payload)
+                .array();
+    }
+
+    /**
+     * Decodes the records of a journal in the order in which they were written. Decoding stops at
+     * the first incomplete or corrupt record, as it and everything after it was not completely
+     * written.
+     */
+    public static List<TidesInfo> decodeRecords(byte[] journal) {
+        List<TidesInfo> records = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.wrap(journal);
+        while (buffer.remaining() >= HEADER_SIZE) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                break;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(journal, buffer.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            try {
+                records.add(decodePayload(journal, buffer.position(), length));
+            } catch (IOException e) {
+                break;
+            }
+            buffer.position(buffer.position() + length);
+        }
+        return records;
+    }
+
+    private static TidesInfo decodePayload(byte[] journal, int offset, int length) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(journal, offset, length))) {
+            String locationId = in.readUTF();
+            String locationName = in.readUTF();
+            LocalDate date = LocalDate.ofEpochDay(in.readLong());
+            LocalDateTime updatedTime = LocalDateTime.ofEpochSecond(in.readLong(), 0, ZoneOffset.UTC);
+            int eventsLength = in.readInt();
+            if (eventsLength < 0 || eventsLength > length) {
+                throw new IOException("Invalid length of events: " + eventsLength);
+            }
+            byte[] events = new byte[eventsLength];
+            in.readFully(events);
+            return new TidesInfo(locationId, locationName, TideEventsCodec.decode(events), date,
+                    updatedTime);
+        }
+    }
+}
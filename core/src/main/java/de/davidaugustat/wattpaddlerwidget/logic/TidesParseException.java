@@ -0,0 +1,29 @@
+package de.davidaugustat.wattpaddlerwidget.logic;
+
+/**
+ * Thrown when a response of the widget API does not have the expected format.
+ * <p>
+ * The exception states the line (1-based, counted from the start of the response) and the column
+ * (1-based) at which parsing failed.
+ */
+public class TidesParseException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int lineNumber;
+    private final int column;
+
+    public TidesParseException(String message, int lineNumber, int column) {
+        super(message + " (line " + lineNumber + ", column " + column + ")");
+        this.lineNumber = lineNumber;
+        this.column = column;
+    }
+
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+}
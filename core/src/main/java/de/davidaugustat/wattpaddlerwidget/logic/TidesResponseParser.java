@@ -0,0 +1,314 @@
+package de.davidaugustat.wattpaddlerwidget.logic;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import de.davidaugustat.wattpaddlerwidget.data.Location;
+import de.davidaugustat.wattpaddlerwidget.data.TidesInfo;
+import de.davidaugustat.wattpaddlerwidget.data.TidesInfoBuilder;
+import okio.BufferedSource;
+
+/**
+ * Single-pass parser for responses of the widget API.
+ * <p>
+ * The response must have the following structure (example):
+ * <p>
+ * STARTDATA+<br>
+ * 2022-07-07; 0:38;N<br>
+ * 2022-07-07; 6:55;H<br>
+ * 2022-07-07;12:39;N<br>
+ * 2022-07-07;19:04;H<br>
+ * ENDDATA+<br>
+ * Pegel/Date 510P at 2022-07-07
+ * <p>
+ * Every line between the STARTDATA+ and ENDDATA+ markers contains a date (yyyy-MM-dd), a time
+ * (H:mm or HH:mm) and a tide category ('H' for high and 'N' for low tide). Spaces around the
+ * fields and empty lines are allowed. The rows may belong to several days.
+ * <p>
+ * The parser works directly on the raw bytes of the response (the format is pure ASCII) and
+ * converts the date and time fields into numbers without creating any intermediate strings.
+ */
+public class TidesResponseParser {
+
+    private static final byte[] START_MARKER = {'S', 'T', 'A', 'R', 'T', 'D', 'A', 'T', 'A', '+'};
+    private static final byte[] END_MARKER = {'E', 'N', 'D', 'D', 'A', 'T', 'A', '+'};
+
+    /**
+     * Receives the rows of a response in the order in which they occur.
+     */
+    public interface RowHandler {
+        /**
+         * @param year        Year of the tide
+         * @param month       Month of the tide (1-12)
+         * @param day         Day of month of the tide (1-31)
+         * @param minuteOfDay Time of the tide in minutes after midnight
+         * @param isHighTide  true for a high tide ('H'), false for a low tide ('N')
+         */
+        void onRow(int year, int month, int day, int minuteOfDay, boolean isHighTide);
+    }
+
+    /**
+     * Parses the response and builds a TidesInfo object of the target date. Rows of other dates
+     * are ignored.
+     *
+     * @param location   Location for which the data was queried.
+     * @param targetDate Date for which the data was queried. Format: yyyy-MM-dd
+     * @param source     Source providing the raw response
+     * @throws TidesParseException If the response is malformed.
+     */
+    public static TidesInfo parse(Location location, String targetDate, BufferedSource source)
+            throws IOException {
+        byte[] response = source.readByteArray();
+        return parse(location, targetDate, response, response.length);
+    }
+
+    /**
+     * Parses the response and builds a TidesInfo object of the target date. Rows of other dates
+     * are ignored.
+     *
+     * @throws TidesParseException If the response is malformed.
+     */
+    public static TidesInfo parse(Location location, String targetDate, byte[] response, int length) {
+        TidesInfoBuilder builder = new TidesInfoBuilder(location, targetDate);
+        int rowCount = parseRows(response, length, builder::addTideTime);
+        if (rowCount == 0) {
+            throw new TidesParseException("Response does not contain any tide data", 1, 1);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Parses the response and builds one TidesInfo object for every date that occurs in it.
+     * <p>
+     * Note that the API only guarantees complete data for the queried date. Neighbouring dates
+     * may be contained partially.
+     *
+     * @return TidesInfo objects ordered by date
+     * @throws TidesParseException If the response is malformed.
+     */
+    public static List<TidesInfo> parseAllDays(Location location, byte[] response, int length) {
+        Map<LocalDate, TidesInfoBuilder> builders = new TreeMap<>();
+        parseRows(response, length, (year, month, day, minuteOfDay, isHighTide) -> {
+            LocalDate date = LocalDate.of(year, month, day);
+            TidesInfoBuilder builder = builders.get(date);
+            if (builder == null) {
+                builder = new TidesInfoBuilder(location, DateTimeHelper.getDateInQueryNotation(date));
+                builders.put(date, builder);
+            }
+            builder.addTideTime(year, month, day, minuteOfDay, isHighTide);
+        });
+
+        List<TidesInfo> tidesInfos = new ArrayList<>(builders.size());
+        for (TidesInfoBuilder builder : builders.values()) {
+            tidesInfos.add(builder.build());
+        }
+        return tidesInfos;
+    }
+
+    /**
+     * Scans the response and passes every row between the STARTDATA+ and ENDDATA+ markers to the
+     * handler.
+     *
+     * @param response Raw response bytes
+     * @param length   Number of valid bytes in the response array
+     * @return Number of rows that have been passed to the handler
+     * @throws TidesParseException If a marker is missing or a row is malformed.
+     */
+    public static int parseRows(byte[] response, int length, RowHandler handler) {
+        int rowCount = 0;
+        int lineNumber = 0;
+        int lineStart = 0;
+        boolean inData = false;
+
+        while (lineStart < length) {
+            lineNumber++;
+            int lineEnd = indexOf(response, (byte) '\n', lineStart, length);
+            int contentEnd = lineEnd;
+            if (contentEnd > lineStart && response[contentEnd - 1] == '\r') {
+                contentEnd--;
+            }
+
+            int trimmedStart = skipSpaces(response, lineStart, contentEnd);
+            int trimmedEnd = contentEnd;
+            while (trimmedEnd > trimmedStart && response[trimmedEnd - 1] == ' ') {
+                trimmedEnd--;
+            }
+
+            if (!inData) {
+                inData = equalsMarker(response, trimmedStart, trimmedEnd, START_MARKER);
+            } else if (equalsMarker(response, trimmedStart, trimmedEnd, END_MARKER)) {
+                return rowCount;
+            } else if (trimmedStart < trimmedEnd) {
+                parseRow(response, lineStart, trimmedStart, trimmedEnd, lineNumber, handler);
+                rowCount++;
+            }
+            lineStart = lineEnd + 1;
+        }
+
+        if (!inData) {
+            throw new TidesParseException("Missing STARTDATA+ marker", lineNumber, 1);
+        }
+        throw new TidesParseException("Missing ENDDATA+ marker", lineNumber, 1);
+    }
+
+    /**
+     * Parses a single row of the form "yyyy-MM-dd;H:mm;C".
+     */
+    private static void parseRow(byte[] bytes, int lineStart, int start, int end, int lineNumber,
+                                 RowHandler handler) {
+        Cursor cursor = new Cursor(bytes, lineStart, start, end, lineNumber);
+
+        int year = cursor.readNumber(4, 4, "year");
+        cursor.expect('-');
+        int month = cursor.readNumber(2, 2, "month");
+        cursor.expect('-');
+        int day = cursor.readNumber(2, 2, "day");
+        if (month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            throw cursor.error("Invalid date " + year + "-" + month + "-" + day);
+        }
+        cursor.skipSpaces();
+        cursor.expect(';');
+        cursor.skipSpaces();
+
+        int hour = cursor.readNumber(1, 2, "hour");
+        cursor.expect(':');
+        int minute = cursor.readNumber(2, 2, "minute");
+        if (hour > 23 || minute > 59) {
+            throw cursor.error("Invalid time " + hour + ":" + minute);
+        }
+        cursor.skipSpaces();
+        cursor.expect(';');
+        cursor.skipSpaces();
+
+        boolean isHighTide;
+        byte category = cursor.next("tide category");
+        if (category == 'H') {
+            isHighTide = true;
+        } else if (category == 'N') {
+            isHighTide = false;
+        } else {
+            throw cursor.errorAtPrevious("Invalid tide category '" + (char) category
+                    + "'. Must be 'H' or 'N'");
+        }
+        cursor.skipSpaces();
+        if (!cursor.isAtEnd()) {
+            throw cursor.error("Unexpected trailing characters");
+        }
+
+        handler.onRow(year, month, day, hour * 60 + minute, isHighTide);
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean isLeapYear = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return isLeapYear ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static int indexOf(byte[] bytes, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    private static int skipSpaces(byte[] bytes, int from, int to) {
+        while (from < to && bytes[from] == ' ') {
+            from++;
+        }
+        return from;
+    }
+
+    private static boolean equalsMarker(byte[] bytes, int start, int end, byte[] marker) {
+        if (end - start != marker.length) {
+            return false;
+        }
+        for (int i = 0; i < marker.length; i++) {
+            if (bytes[start + i] != marker[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reading position within a single row. Keeps track of the position for error messages.
+     */
+    private static class Cursor {
+        private final byte[] bytes;
+        private final int lineStart;
+        private final int end;
+        private final int lineNumber;
+        private int position;
+
+        Cursor(byte[] bytes, int lineStart, int start, int end, int lineNumber) {
+            this.bytes = bytes;
+            this.lineStart = lineStart;
+            this.position = start;
+            this.end = end;
+            this.lineNumber = lineNumber;
+        }
+
+        /**
+         * Reads an unsigned decimal number with at least minDigits and at most maxDigits digits.
+         */
+        int readNumber(int minDigits, int maxDigits, String fieldName) {
+            int value = 0;
+            int digits = 0;
+            while (position < end && digits < maxDigits
+                    && bytes[position] >= '0' && bytes[position] <= '9') {
+                value = value * 10 + (bytes[position] - '0');
+                position++;
+                digits++;
+            }
+            if (digits < minDigits) {
+                throw error("Expected " + fieldName);
+            }
+            return value;
+        }
+
+        void expect(char expected) {
+            if (position >= end || bytes[position] != expected) {
+                throw error("Expected '" + expected + "'");
+            }
+            position++;
+        }
+
+        byte next(String fieldName) {
+            if (position >= end) {
+                throw error("Expected " + fieldName);
+            }
+            return bytes[position++];
+        }
+
+        void skipSpaces() {
+            position = TidesResponseParser.skipSpaces(bytes, position, end);
+        }
+
+        boolean isAtEnd() {
+            return position >= end;
+        }
+
+        TidesParseException error(String message) {
+            return new TidesParseException(message, lineNumber, position - lineStart + 1);
+        }
+
+        TidesParseException errorAtPrevious(String message) {
+            return new TidesParseException(message, lineNumber, position - lineStart);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package de.davidaugustat.wattpaddlerwidget;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import de.davidaugustat.wattpaddlerwidget.data.Location;
+import de.davidaugustat.wattpaddlerwidget.data.TideTimeline;
+import de.davidaugustat.wattpaddlerwidget.data.TidesInfo;
+import de.davidaugustat.wattpaddlerwidget.logic.FreshnessPolicy;
+import de.davidaugustat.wattpaddlerwidget.logic.FreshnessPolicy.Decision;
+
+public class FreshnessPolicyTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2022, 8, 2);
+    private static final LocalDateTime NOW = TODAY.atTime(15, 0);
+
+    @Test
+    public void testTidesOfToday(){
+        assertEquals(Decision.SERVE_LOCAL, decideTides(TODAY, NOW.minusHours(2), false));
+        assertEquals(Decision.SERVE_LOCAL, decideTides(TODAY, NOW.plusHours(1), false));
+        // Manual refreshes override the policy:
+        assertEquals(Decision.FETCH, decideTides(TODAY, NOW.minusMinutes(1), true));
+    }
+
+    @Test
+    public void testPrefetchedTides(){
+        // Days of the prefetch window are stored long before they become today:
+        assertEquals(Decision.SERVE_LOCAL, decideTides(TODAY, NOW.minusDays(5), false));
+        assertEquals(Decision.SERVE_LOCAL, decideTides(TODAY, NOW.minusDays(60), false));
+        assertEquals(Decision.FETCH, decideTides(TODAY, NOW.minusDays(5), true));
+    }
+
+    @Test
+    public void testTidesOfOtherDate(){
+        assertEquals(Decision.FETCH, decideTides(TODAY.minusDays(1), NOW.minusHours(2), false));
+        assertEquals(Decision.FETCH, FreshnessPolicy.TIDES.decide(null, TODAY, NOW, false));
+    }
+
+    @Test
+    public void testLocations(){
+        assertEquals(Decision.FETCH, FreshnessPolicy.LOCATIONS.decide(false, 0, false));
+        assertEquals(Decision.SERVE_LOCAL,
+                FreshnessPolicy.LOCATIONS.decide(true, TimeUnit.DAYS.toMillis(6), false));
+        assertEquals(Decision.SERVE_AND_REVALIDATE,
+                FreshnessPolicy.LOCATIONS.decide(true, TimeUnit.DAYS.toMillis(8), false));
+    }
+
+    private static Decision decideTides(LocalDate date, LocalDateTime updatedTime, boolean isManual) {
+        TidesInfo tidesInfo = new TidesInfo(new Location("510P", "Norderney"), TideTimeline.empty(),
+                date, updatedTime);
+        return FreshnessPolicy.TIDES.decide(tidesInfo, TODAY, NOW, isManual);
+    }
+}
@@ -0,0 +1,200 @@
+package de.davidaugustat.wattpaddlerwidget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import de.davidaugustat.wattpaddlerwidget.data.Location;
+import de.davidaugustat.wattpaddlerwidget.data.StationHarmonics;
+import de.davidaugustat.wattpaddlerwidget.data.TidesInfo;
+import de.davidaugustat.wattpaddlerwidget.logic.HarmonicTidePredictor;
+import de.davidaugustat.wattpaddlerwidget.logic.StationHarmonicsParser;
+import de.davidaugustat.wattpaddlerwidget.logic.TidalConstituent;
+import okio.Buffer;
+
+public class HarmonicTidePredictorTest {
+
+    // Synthetic constants with a North Sea like mix of constituents:
+    private static final String HARMONICS = "# Test station\n"
+            + "Z0;0.0\n"
+            + "M2;1.50;310\n"
+            + "S2;0.40;20\n"
+            + "N2;0.25;290\n"
+            + "K2;0.10;20\n"
+            + "K1;0.08;200\n"
+            + "O1;0.10;50\n"
+            + "M4;0.10;40\n"
+            + "MS4;0.06;100\n"
+            + "M6;0.02;60\n";
+
+    private static final Location LOCATION = new Location("TEST", "Test");
+    private static final ZoneId BERLIN = ZoneId.of("Europe/Berlin");
+
+    /**
+     * Allowed deviation of the predicted high waters from the reference station.
+     */
+    private static final double REFERENCE_TOLERANCE_MINUTES = 2;
+
+    @Test
+    public void testMatchesBruteForceSearch() throws IOException {
+        HarmonicTidePredictor predictor = new HarmonicTidePredictor(parse(HARMONICS));
+        long from = LocalDate.of(2022, 8, 1).atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+        long to = LocalDate.of(2022, 9, 1).atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+
+        List<Long> times = new ArrayList<>();
+        List<Boolean> kinds = new ArrayList<>();
+        predictor.predictExtrema(from, to, (epochSecond, height, isHighTide) -> {
+            times.add(epochSecond);
+            kinds.add(isHighTide);
+        });
+
+        // Local extrema of the water level sampled every minute:
+        List<Long> expectedTimes = new ArrayList<>();
+        List<Boolean> expectedKinds = new ArrayList<>();
+        double previous = predictor.getHeight(from - 60);
+        double current = predictor.getHeight(from);
+        for (long t = from; t < to; t += 60) {
+            double next = predictor.getHeight(t + 60);
+            if (previous < current && current >= next) {
+                expectedTimes.add(t);
+                expectedKinds.add(true);
+            } else if (previous > current && current <= next) {
+                expectedTimes.add(t);
+                expectedKinds.add(false);
+            }
+            previous = current;
+            current = next;
+        }
+
+        assertEquals(expectedKinds, kinds);
+        for (int i = 0; i < times.size(); i++) {
+            assertTrue("Extremum " + i + " deviates by " + (times.get(i) - expectedTimes.get(i)) + "s",
+                    Math.abs(times.get(i) - expectedTimes.get(i)) <= 60);
+        }
+    }
+
+    @Test
+    public void testSemidiurnalPeriod() {
+        StationHarmonics harmonics = new StationHarmonics("M2", 0, Collections.singletonList(
+                new StationHarmonics.Constituent(TidalConstituent.M2, 1, 0)));
+        HarmonicTidePredictor predictor = new HarmonicTidePredictor(harmonics);
+        long from = LocalDate.of(2022, 1, 1).atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+        long to = LocalDate.of(2023, 1, 1).atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+
+        List<Long> highTides = new ArrayList<>();
+        predictor.predictExtrema(from, to, (epochSecond, height, isHighTide) -> {
+            if (isHighTide) {
+                highTides.add(epochSecond);
+            }
+        });
+
+        long periodSeconds = Math.round(360 / TidalConstituent.M2.getSpeed() * 3600);
+        // A year has 705.3 M2 periods:
+        assertTrue(highTides.size() == 705 || highTides.size() == 706);
+        for (int i = 1; i < highTides.size(); i++) {
+            assertEquals(periodSeconds, highTides.get(i) - highTides.get(i - 1), 30);
+        }
+    }
+
+    /**
+     * Reference station: the equilibrium tide at Greenwich, i.e. phase lags of 0°. Its high
+     * waters are known independently of the predictor: the S2 tide is high when the mean sun
+     * crosses the meridian or the anti-meridian of Greenwich, i.e. at 00:00 and 12:00 UT. The M2
+     * tide is high at the upper and lower transits of the mean moon, shifted by the nodal phase
+     * correction u = -2.14° sin(N). The mean moon's hour angle is computed from the mean
+     * elongation of the moon (Meeus, Astronomical Algorithms, 47.2).
+     * <p>
+     * Tolerance: every predicted high water lies within {@link #REFERENCE_TOLERANCE_MINUTES} of
+     * the reference time over a whole year.
+     */
+    @Test
+    public void testEquilibriumReferenceStation() {
+        long from = LocalDate.of(2022, 1, 1).atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+        long to = LocalDate.of(2023, 1, 1).atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+
+        List<Long> solarHighTides = predictHighTides(TidalConstituent.S2, from, to);
+        assertEquals(730, solarHighTides.size());
+        for (long highTide : solarHighTides) {
+            long secondsFromNoonOrMidnight = Math.floorMod(highTide + 6 * 3600, 12 * 3600) - 6 * 3600;
+            assertDeviation(secondsFromNoonOrMidnight / 60.0, highTide);
+        }
+
+        List<Long> lunarHighTides = predictHighTides(TidalConstituent.M2, from, to);
+        assertTrue(lunarHighTides.size() == 705 || lunarHighTides.size() == 706);
+        for (long highTide : lunarHighTides) {
+            double centuries = (highTide - 946728000L) / 86400.0 / 36525;
+            double meanElongation = 297.8501921 + 445267.1114034 * centuries;
+            double node = Math.toRadians(125.0445479 - 1934.1362891 * centuries);
+            double universalTimeHours = Math.floorMod(highTide, 86400L) / 3600.0;
+            double lunarHourAngle = 15 * universalTimeHours - 180 - meanElongation;
+            double phase = 2 * lunarHourAngle - 2.14 * Math.sin(node);
+            double phaseFromHighWater = Math.floorMod(Math.round(phase * 1000), 360_000) / 1000.0;
+            if (phaseFromHighWater > 180) {
+                phaseFromHighWater -= 360;
+            }
+            assertDeviation(phaseFromHighWater / TidalConstituent.M2.getSpeed() * 60, highTide);
+        }
+    }
+
+    @Test
+    public void testPredictedDaysMatchSingleDays() throws IOException {
+        HarmonicTidePredictor predictor = new HarmonicTidePredictor(parse(HARMONICS));
+        // Includes the switch from summer to winter time:
+        LocalDate firstDate = LocalDate.of(2022, 10, 29);
+        List<TidesInfo> days = predictor.predictDays(LOCATION, firstDate, firstDate.plusDays(2), BERLIN);
+
+        assertEquals(3, days.size());
+        for (int i = 0; i < days.size(); i++) {
+            TidesInfo day = predictor.predictDay(LOCATION, firstDate.plusDays(i), BERLIN);
+            assertEquals(firstDate.plusDays(i), days.get(i).getDate());
+            assertEquals(day.getHighTidesFormatted("%s / %s"), days.get(i).getHighTidesFormatted("%s / %s"));
+            assertEquals(day.getLowTidesFormatted("%s / %s"), days.get(i).getLowTidesFormatted("%s / %s"));
+        }
+    }
+
+    @Test
+    public void testInvalidHarmonics() throws IOException {
+        for (String harmonics : Arrays.asList("Z0;1.0\n", "XY9;1.0;20\n", "M2;1.0\n", "M2;a;20\n")) {
+            try {
+                parse(harmonics);
+                fail("Expected IllegalArgumentException for " + harmonics);
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+    private static List<Long> predictHighTides(TidalConstituent constituent, long from, long to) {
+        StationHarmonics harmonics = new StationHarmonics("Greenwich", 0, Collections.singletonList(
+                new StationHarmonics.Constituent(constituent, 1, 0)));
+        List<Long> highTides = new ArrayList<>();
+        new HarmonicTidePredictor(harmonics).predictExtrema(from, to, (epochSecond, height, isHighTide) -> {
+            if (isHighTide) {
+                highTides.add(epochSecond);
+            }
+        });
+        return highTides;
+    }
+
+    private static void assertDeviation(double deviationMinutes, long epochSecond) {
+        assertTrue("High water at " + Instant.ofEpochSecond(epochSecond) + " deviates by "
+                        + deviationMinutes + " min from the reference",
+                Math.abs(deviationMinutes) <= REFERENCE_TOLERANCE_MINUTES);
+    }
+
+    private static StationHarmonics parse(String harmonics) throws IOException {
+        return StationHarmonicsParser.parse(LOCATION.getId(), new Buffer().writeUtf8(harmonics));
+    }
+}
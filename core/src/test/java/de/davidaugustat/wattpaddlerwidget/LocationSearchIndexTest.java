@@ -0,0 +1,62 @@
+package de.davidaugustat.wattpaddlerwidget;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import de.davidaugustat.wattpaddlerwidget.data.Location;
+import de.davidaugustat.wattpaddlerwidget.logic.LocationSearchIndex;
+
+public class LocationSearchIndexTest {
+
+    private static final List<Location> LOCATIONS = Arrays.asList(
+            new Location("101P", "Borkum, Fischerbalje"),
+            new Location("510P", "Büsum"),
+            new Location("631P", "Cuxhaven, Steubenhöft"),
+            new Location("646P", "Großenbrode"),
+            new Location("727P", "Norddeich, Hafen"),
+            new Location("729P", "Norderney, Riffgat"),
+            new Location("937P", "Sankt Peter-Ording"));
+
+    private final LocationSearchIndex index = new LocationSearchIndex(LOCATIONS);
+
+    @Test
+    public void testUmlautFolding(){
+        assertArrayEquals(new int[]{1}, index.search("Buesum"));
+        assertArrayEquals(new int[]{1}, index.search("busum"));
+        assertArrayEquals(new int[]{1}, index.search("BÜS"));
+        assertArrayEquals(new int[]{3}, index.search("grossen"));
+        assertArrayEquals(new int[]{2}, index.search("steubenhoeft"));
+    }
+
+    @Test
+    public void testRanking(){
+        // First word prefix before other word prefix before substring before typo ("Ording"):
+        assertArrayEquals(new int[]{4, 5, 6}, index.search("nord"));
+        // Short queries only match prefixes:
+        assertArrayEquals(new int[]{4}, index.search("ha"));
+        assertArrayEquals(new int[]{2, 4}, index.search("haven"));
+        assertArrayEquals(new int[]{6}, index.search("peter ording"));
+        assertArrayEquals(new int[]{6}, index.search("erordi"));
+        assertEquals(LOCATIONS.size(), index.search(" ").length);
+        assertEquals(0, index.search("helgoland").length);
+    }
+
+    @Test
+    public void testTypos(){
+        assertArrayEquals(new int[]{5}, index.search("Norderny"));
+        assertArrayEquals(new int[]{5}, index.search("Nordreney"));
+        assertArrayEquals(new int[]{2}, index.search("Cuxhafen"));
+        assertArrayEquals(new int[]{0}, index.search("brokum"));
+    }
+
+    @Test
+    public void testIndexOfId(){
+        assertEquals(5, index.indexOfId("729P"));
+        assertEquals(-1, index.indexOfId("999P"));
+    }
+}
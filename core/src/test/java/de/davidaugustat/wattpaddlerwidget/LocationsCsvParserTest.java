@@ -0,0 +1,66 @@
+package de.davidaugustat.wattpaddlerwidget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import de.davidaugustat.wattpaddlerwidget.data.Location;
+import de.davidaugustat.wattpaddlerwidget.logic.LocationsCsvParser;
+import okio.Buffer;
+
+public class LocationsCsvParserTest {
+
+    @Test
+    public void testParseLatin1() throws IOException {
+        String csv = "Alte Weser, Leuchtturm;734P\nAmrum, Hafen (Wittdünn);631P\nBarßel;816B\n";
+        Buffer buffer = new Buffer().writeString(csv, StandardCharsets.ISO_8859_1);
+
+        List<Location> locations = LocationsCsvParser.parse(buffer, StandardCharsets.ISO_8859_1);
+
+        assertEquals(3, locations.size());
+        assertEquals("Alte Weser, Leuchtturm", locations.get(0).getName());
+        assertEquals("734P", locations.get(0).getId());
+        assertEquals("Amrum, Hafen (Wittdünn)", locations.get(1).getName());
+        assertEquals("Barßel", locations.get(2).getName());
+        assertEquals("816B", locations.get(2).getId());
+    }
+
+    @Test
+    public void testParseWithoutTrailingNewlineAndCrLf() throws IOException {
+        Buffer buffer = new Buffer().writeUtf8("Belum;683P\r\n\r\nBensersiel;782P;extra");
+
+        List<Location> locations = LocationsCsvParser.parse(buffer, StandardCharsets.UTF_8);
+
+        assertEquals(2, locations.size());
+        assertEquals("683P", locations.get(0).getId());
+        assertEquals("Bensersiel", locations.get(1).getName());
+        assertEquals("782P", locations.get(1).getId());
+        assertFalse(locations.get(1).hasCoordinates());
+    }
+
+    @Test
+    public void testParseCoordinates() throws IOException {
+        Buffer buffer = new Buffer().writeUtf8(
+                "Büsum;505P;54.1214;8.8586\nBelum;683P;53,8333;8,9833;extra\nHusum;502P;54.47\n");
+
+        List<Location> locations = LocationsCsvParser.parse(buffer, StandardCharsets.UTF_8);
+
+        assertEquals(3, locations.size());
+        assertEquals(54.1214, locations.get(0).getLatitude(), 0);
+        assertEquals(8.8586, locations.get(0).getLongitude(), 0);
+        assertEquals(8.9833, locations.get(1).getLongitude(), 0);
+        assertEquals("502P", locations.get(2).getId());
+        assertFalse(locations.get(2).hasCoordinates());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingColumn() throws IOException {
+        Buffer buffer = new Buffer().writeUtf8("Belum;683P\nBensersiel\n");
+        LocationsCsvParser.parse(buffer, StandardCharsets.UTF_8);
+    }
+}
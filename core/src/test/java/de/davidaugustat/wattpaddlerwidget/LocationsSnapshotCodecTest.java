@@ -0,0 +1,47 @@
+package de.davidaugustat.wattpaddlerwidget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import de.davidaugustat.wattpaddlerwidget.data.Location;
+import de.davidaugustat.wattpaddlerwidget.logic.LocationsSnapshotCodec;
+
+public class LocationsSnapshotCodecTest {
+
+    private final List<Location> locations = Arrays.asList(
+            new Location("510P", "Büsum", 54.12, 8.86),
+            new Location("631P", "Cuxhaven"));
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        List<Location> decoded = LocationsSnapshotCodec.decode(LocationsSnapshotCodec.encode(locations));
+
+        assertEquals(2, decoded.size());
+        assertEquals("Büsum", decoded.get(0).getName());
+        assertEquals(8.86, decoded.get(0).getLongitude(), 0);
+        assertEquals("631P", decoded.get(1).getId());
+        assertFalse(decoded.get(1).hasCoordinates());
+    }
+
+    @Test
+    public void testCorruptCountIsRejected() {
+        byte[] snapshot = LocationsSnapshotCodec.encode(locations);
+        // The count follows the magic number and the version:
+        ByteBuffer.wrap(snapshot).putInt(8, Integer.MAX_VALUE);
+
+        try {
+            LocationsSnapshotCodec.decode(snapshot);
+            fail("Snapshot with a corrupt count was decoded");
+        } catch (IOException e) {
+            assertEquals("Invalid number of locations: " + Integer.MAX_VALUE, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package de.davidaugustat.wattpaddlerwidget;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import de.davidaugustat.wattpaddlerwidget.data.Location;
+import de.davidaugustat.wattpaddlerwidget.logic.NearestLocationIndex;
+
+public class NearestLocationIndexTest {
+
+    private static final List<Location> LOCATIONS = Arrays.asList(
+            new Location("101P", "Borkum, Fischerbalje", 53.5558, 6.7481),
+            new Location("510P", "Büsum", 54.1214, 8.8586),
+            new Location("631P", "Cuxhaven, Steubenhöft", 53.8678, 8.7175),
+            new Location("999X", "Ohne Koordinaten"),
+            new Location("729P", "Norderney, Riffgat", 53.6964, 7.1583),
+            new Location("937P", "Sankt Peter-Ording", 54.3, 8.6333));
+
+    @Test
+    public void testFindNearest() {
+        NearestLocationIndex index = new NearestLocationIndex(LOCATIONS);
+
+        assertEquals(5, index.size());
+        // Helgoland:
+        assertEquals(5, index.findNearest(54.18, 7.89));
+        // Juist:
+        assertArrayEquals(new int[]{4, 0, 2}, index.findNearest(53.68, 7.0, 3));
+        assertEquals(5, index.findNearest(54.17, 8.8, 10).length);
+    }
+
+    @Test
+    public void testEmpty() {
+        NearestLocationIndex index = new NearestLocationIndex(
+                Arrays.asList(new Location("999X", "Ohne Koordinaten")));
+
+        assertEquals(-1, index.findNearest(54, 8));
+        assertEquals(0, index.findNearest(54, 8, 3).length);
+    }
+
+    @Test
+    public void testMatchesLinearSearch() {
+        Random random = new Random(42);
+        List<Location> locations = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            locations.add(new Location(Integer.toString(i), "Station " + i,
+                    random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180));
+        }
+        NearestLocationIndex index = new NearestLocationIndex(locations);
+
+        for (int query = 0; query < 200; query++) {
+            double latitude = random.nextDouble() * 180 - 90;
+            double longitude = random.nextDouble() * 360 - 180;
+            Integer[] expected = new Integer[locations.size()];
+            for (int i = 0; i < expected.length; i++) {
+                expected[i] = i;
+            }
+            Arrays.sort(expected, Comparator.comparingDouble(i -> NearestLocationIndex.getDistanceKm(
+                    latitude, longitude, locations.get(i).getLatitude(), locations.get(i).getLongitude())));
+
+            int[] nearest = index.findNearest(latitude, longitude, 5);
+            for (int i = 0; i < nearest.length; i++) {
+                assertEquals((int) expected[i], nearest[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testGetDistanceKm() {
+        // Büsum to Cuxhaven:
+        assertEquals(30.0, NearestLocationIndex.getDistanceKm(54.1214, 8.8586, 53.8678, 8.7175), 1.0);
+        // Across the antimeridian:
+        assertEquals(111.2, NearestLocationIndex.getDistanceKm(0, 179.5, 0, -179.5), 0.1);
+    }
+
+    @Test
+    public void testParseCoordinates() {
+        assertArrayEquals(new double[]{54.12, 8.86}, NearestLocationIndex.parseCoordinates("54.12, 8.86"), 0);
+        assertArrayEquals(new double[]{-33.9, 151}, NearestLocationIndex.parseCoordinates(" -33.9 151 "), 0);
+        assertNull(NearestLocationIndex.parseCoordinates("Büsum"));
+        assertNull(NearestLocationIndex.parseCoordinates("54.12"));
+        assertNull(NearestLocationIndex.parseCoordinates("91, 8"));
+    }
+}
@@ -0,0 +1,60 @@
+package de.davidaugustat.wattpaddlerwidget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+
+import de.davidaugustat.wattpaddlerwidget.data.TideTimeline;
+import de.davidaugustat.wattpaddlerwidget.logic.TideCurve;
+
+public class TideCurveTest {
+
+    private static final LocalDate DAY = LocalDate.of(2022, 8, 2);
+
+    private final TideTimeline timeline = new TideTimeline.Builder()
+            .addDay(DAY.toEpochDay(), new int[]{5 * 60, 17 * 60 + 30}, 2,
+                    new int[]{11 * 60 + 20}, 1)
+            .build();
+
+    @Test
+    public void testLevelsAtTides() {
+        TideCurve curve = TideCurve.fromTimeline(timeline);
+        assertEquals(1, curve.getLevel(minute(5, 0)), 1e-9);
+        assertEquals(0, curve.getLevel(minute(11, 20)), 1e-9);
+        assertEquals(1, curve.getLevel(minute(17, 30)), 1e-9);
+        // Halfway between high and low tide:
+        assertEquals(0.5, curve.getLevel(minute(8, 10)), 1e-9);
+    }
+
+    @Test
+    public void testContinuedBeyondTides() {
+        TideCurve curve = TideCurve.fromTimeline(timeline);
+        // Half a tide before the first high tide and after the last high tide are low tides:
+        assertEquals(0, curve.getLevel(minute(5, 0) - TideCurve.MEAN_HALF_TIDE_MINUTES), 1e-9);
+        assertEquals(0, curve.getLevel(minute(17, 30) + TideCurve.MEAN_HALF_TIDE_MINUTES), 1e-9);
+        assertEquals(1, curve.getLevel(minute(17, 30) + 2 * TideCurve.MEAN_HALF_TIDE_MINUTES), 1e-9);
+
+        float[] levels = new float[24 * 4];
+        curve.sample(minute(0, 0), 15, levels);
+        for (float level : levels) {
+            assertTrue(level >= 0 && level <= 1);
+        }
+    }
+
+    @Test
+    public void testWithoutTides() {
+        TideTimeline noTides = new TideTimeline.Builder()
+                .addDay(DAY.toEpochDay(), new int[0], 0, new int[0], 0)
+                .build();
+        assertNull(TideCurve.fromTimeline(noTides));
+        assertEquals(TideCurve.fromTimeline(timeline), TideCurve.fromTimeline(timeline.merge(noTides.merge(timeline))));
+    }
+
+    private static int minute(int hour, int minute) {
+        return TideTimeline.toEpochMinute(DAY.atTime(hour, minute));
+    }
+}
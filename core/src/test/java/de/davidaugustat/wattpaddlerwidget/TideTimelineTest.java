@@ -0,0 +1,74 @@
+package de.davidaugustat.wattpaddlerwidget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import de.davidaugustat.wattpaddlerwidget.data.NonExistentTideTime;
+import de.davidaugustat.wattpaddlerwidget.data.ShiftedTideTime;
+import de.davidaugustat.wattpaddlerwidget.data.TideTimeline;
+
+public class TideTimelineTest {
+
+    private static final LocalDate DAY_1 = LocalDate.of(2022, 8, 2);
+    private static final LocalDate DAY_2 = LocalDate.of(2022, 8, 3);
+
+    private final TideTimeline timeline = new TideTimeline.Builder()
+            .addDay(DAY_2.toEpochDay(), new int[]{5 * 60 + 38, 17 * 60 + 51}, 2,
+                    new int[]{1, 12 * 60 + 8}, 2)
+            .addDay(DAY_1.toEpochDay(), new int[]{5 * 60 + 1, 17 * 60 + 13}, 2,
+                    new int[]{11 * 60 + 30}, 1)
+            .build();
+
+    @Test
+    public void testEventsOnDate(){
+        assertTrue(timeline.containsDate(DAY_1));
+        assertFalse(timeline.containsDate(DAY_2.plusDays(1)));
+        assertEquals(4, timeline.getDayEndIndex(DAY_1.toEpochDay())
+                - timeline.getDayStartIndex(DAY_1.toEpochDay()));
+        assertEquals("17:13", timeline.getTideTime(DAY_1.toEpochDay(), TideTimeline.SLOT_HIGH_2)
+                .getHumanReadableString());
+        assertTrue(timeline.getTideTime(DAY_1.toEpochDay(), TideTimeline.SLOT_LOW_2)
+                instanceof ShiftedTideTime);
+        assertTrue(timeline.getTideTime(DAY_2.plusDays(1).toEpochDay(), TideTimeline.SLOT_LOW_1)
+                instanceof NonExistentTideTime);
+    }
+
+    @Test
+    public void testNextHighTide(){
+        int now = TideTimeline.toEpochMinute(DAY_1.atTime(18, 0));
+        int index = timeline.indexOfNextTide(now, true);
+        assertEquals(DAY_2.atTime(5, 38), TideTimeline.toLocalDateTime(timeline.getEpochMinute(index)));
+
+        int index2 = timeline.indexOfNextTide(now, false);
+        assertEquals(DAY_2.atTime(0, 1), TideTimeline.toLocalDateTime(timeline.getEpochMinute(index2)));
+
+        assertEquals(-1, timeline.indexOfNextTide(TideTimeline.toEpochMinute(DAY_2.atTime(18, 0)), true));
+    }
+
+    @Test
+    public void testMergeAndPrune(){
+        TideTimeline replacement = new TideTimeline.Builder()
+                .addDay(DAY_2.toEpochDay(), new int[0], 0, new int[0], 0)
+                .build();
+        TideTimeline merged = timeline.merge(replacement);
+        assertEquals(8, merged.size());
+        assertTrue(merged.getTideTime(DAY_2.toEpochDay(), TideTimeline.SLOT_HIGH_1)
+                instanceof NonExistentTideTime);
+
+        TideTimeline pruned = merged.withoutDaysBefore(DAY_2);
+        assertFalse(pruned.containsDate(DAY_1));
+        assertTrue(pruned.containsDate(DAY_2));
+    }
+
+    @Test
+    public void testEpochMinuteRoundTrip(){
+        LocalDateTime dateTime = LocalDateTime.of(2022, 12, 31, 23, 59);
+        assertEquals(dateTime, TideTimeline.toLocalDateTime(TideTimeline.toEpochMinute(dateTime)));
+    }
+}
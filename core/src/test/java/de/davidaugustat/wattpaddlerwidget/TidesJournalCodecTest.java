@@ -0,0 +1,75 @@
+package de.davidaugustat.wattpaddlerwidget;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import de.davidaugustat.wattpaddlerwidget.data.TideTimeline;
+import de.davidaugustat.wattpaddlerwidget.data.TidesInfo;
+import de.davidaugustat.wattpaddlerwidget.logic.TideEventsCodec;
+import de.davidaugustat.wattpaddlerwidget.logic.TidesJournalCodec;
+
+public class TidesJournalCodecTest {
+
+    private static final LocalDate DAY = LocalDate.of(2022, 8, 2);
+
+    private final TidesInfo day1 = createTidesInfo("510P", "Büsum", DAY);
+    private final TidesInfo day2 = createTidesInfo("631P", "Cuxhaven", DAY.plusDays(1));
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        List<TidesInfo> records = TidesJournalCodec.decodeRecords(journal(day1, day2));
+
+        assertEquals(2, records.size());
+        assertEquals("510P", records.get(0).getLocationId());
+        assertEquals("Büsum", records.get(0).getLocationName());
+        assertEquals(DAY, records.get(0).getDate());
+        assertEquals(day1.getUpdatedTime(), records.get(0).getUpdatedTime());
+        assertArrayEquals(TideEventsCodec.encode(day1), TideEventsCodec.encode(records.get(0)));
+        assertEquals(DAY.plusDays(1), records.get(1).getDate());
+    }
+
+    @Test
+    public void testTornRecordIsIgnored() throws IOException {
+        byte[] journal = journal(day1, day2);
+
+        for (int length = journal.length - 1; length > TidesJournalCodec.encodeRecord(day1).length; length--) {
+            List<TidesInfo> records = TidesJournalCodec.decodeRecords(Arrays.copyOf(journal, length));
+            assertEquals(1, records.size());
+        }
+    }
+
+    @Test
+    public void testCorruptRecordStopsDecoding() throws IOException {
+        byte[] journal = journal(day1, day2, day1);
+        // Flip a byte in the payload of the second record:
+        journal[TidesJournalCodec.encodeRecord(day1).length + 12] ^= 0x10;
+
+        assertEquals(1, TidesJournalCodec.decodeRecords(journal).size());
+    }
+
+    private static byte[] journal(TidesInfo... records) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (TidesInfo record : records) {
+            out.write(TidesJournalCodec.encodeRecord(record));
+        }
+        return out.toByteArray();
+    }
+
+    private static TidesInfo createTidesInfo(String locationId, String locationName, LocalDate date) {
+        TideTimeline timeline = new TideTimeline.Builder()
+                .addDay(date.toEpochDay(), new int[]{5 * 60, 17 * 60 + 30}, 2,
+                        new int[]{11 * 60 + 20}, 1)
+                .build();
+        return new TidesInfo(locationId, locationName, timeline, date,
+                LocalDateTime.of(2022, 8, 1, 12, 30));
+    }
+}
@@ -0,0 +1,87 @@
+package de.davidaugustat.wattpaddlerwidget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+
+import de.davidaugustat.wattpaddlerwidget.data.Location;
+import de.davidaugustat.wattpaddlerwidget.data.TidesInfo;
+import de.davidaugustat.wattpaddlerwidget.logic.TidesParseException;
+import de.davidaugustat.wattpaddlerwidget.logic.TidesResponseParser;
+
+public class TidesResponseParserTest {
+
+    private final Location location = new Location("631P", "Test");
+
+    @Test
+    public void testFourTides(){
+        TidesInfo tidesInfo = parse("2022-08-03", "STARTDATA+\n"
+                + "2022-08-03; 0:01;N\n"
+                + "2022-08-03; 5:38;H\n"
+                + "2022-08-03;12:08;N\n"
+                + "2022-08-03;17:51;H\n"
+                + "ENDDATA+\n"
+                + "Pegel/Date 631P at 2022-08-03\n");
+        assertEquals("05:38 / 17:51", tidesInfo.getHighTidesFormatted("%s / %s"));
+        assertEquals("00:01 / 12:08", tidesInfo.getLowTidesFormatted("%s / %s"));
+        assertEquals(LocalDate.of(2022, 8, 3), tidesInfo.getDate());
+    }
+
+    @Test
+    public void testShiftedAndNonExistentTides(){
+        TidesInfo tidesInfo = parse("2022-08-02", "STARTDATA+\r\n"
+                + "2022-08-01;23:41;N\r\n"
+                + "2022-08-02; 5:01;H\r\n"
+                + "2022-08-02;17:13;H\r\n"
+                + "ENDDATA+\r\n");
+        assertEquals("05:01 / 17:13", tidesInfo.getHighTidesFormatted("%s / %s"));
+        assertEquals("* / *", tidesInfo.getLowTidesFormatted("%s / %s"));
+
+        tidesInfo = parse("2022-08-02", "STARTDATA+\n2022-08-02;11:30;N\nENDDATA+\n");
+        assertEquals("11:30 /  ", tidesInfo.getLowTidesFormatted("%s / %s"));
+    }
+
+    @Test
+    public void testAllDays(){
+        byte[] response = ("STARTDATA+\n"
+                + "2022-08-02;11:30;N\n"
+                + "2022-08-03; 0:01;N\n"
+                + "2022-08-03; 5:38;H\n"
+                + "ENDDATA+\n").getBytes(StandardCharsets.US_ASCII);
+        List<TidesInfo> tidesInfos = TidesResponseParser.parseAllDays(location, response, response.length);
+        assertEquals(2, tidesInfos.size());
+        assertEquals(LocalDate.of(2022, 8, 2), tidesInfos.get(0).getDate());
+        assertEquals(LocalDate.of(2022, 8, 3), tidesInfos.get(1).getDate());
+    }
+
+    @Test
+    public void testMalformedLineDiagnostics(){
+        try {
+            parse("2022-08-03", "STARTDATA+\n2022-08-03; 5:38;H\n2022-08-03;5-38;H\nENDDATA+\n");
+            fail("Expected TidesParseException");
+        } catch (TidesParseException e) {
+            assertEquals(3, e.getLineNumber());
+            assertEquals(13, e.getColumn());
+        }
+    }
+
+    @Test(expected = TidesParseException.class)
+    public void testInvalidCategory(){
+        parse("2022-08-03", "STARTDATA+\n2022-08-03; 5:38;X\nENDDATA+\n");
+    }
+
+    @Test(expected = TidesParseException.class)
+    public void testMissingEndMarker(){
+        parse("2022-08-03", "STARTDATA+\n2022-08-03; 5:38;H\n");
+    }
+
+    private TidesInfo parse(String targetDate, String response){
+        byte[] bytes = response.getBytes(StandardCharsets.US_ASCII);
+        return TidesResponseParser.parse(location, targetDate, bytes, bytes.length);
+    }
+}